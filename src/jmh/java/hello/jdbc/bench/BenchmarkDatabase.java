@@ -0,0 +1,148 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import lombok.extern.slf4j.Slf4j;
+import org.h2.tools.Server;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static hello.jdbc.connect.ConnectionConst.*;
+
+/**
+ * 벤치마크용 H2 DB
+ *
+ * - open(name, poolSize): 같은 JVM 안의 메모리 DB (JDBC 코드 자체 비용 측정용)
+ * - openServer(poolSize): 벤치마크 JVM 안에서 H2 TCP 서버(9092)를 띄우고 ConnectionConst.URL로 연결
+ *   -> 네트워크 왕복 포함, DBConnectionUtil(V0)도 같은 서버를 사용
+ *   이미 9092 포트에 H2 서버가 떠 있으면 그 서버를 사용한다.
+ *
+ * 벤치마크 회원 id는 bench0 ~ bench{n-1} (기존 데이터와 섞이지 않도록)
+ */
+@Slf4j
+public final class BenchmarkDatabase {
+
+    private static final String MEMBER_ID_PREFIX = "bench";
+    private static Server server;
+
+    private BenchmarkDatabase() {
+    }
+
+    public static HikariDataSource open(String name, int poolSize) {
+        return createSchema(dataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", poolSize), true);
+    }
+
+    public static HikariDataSource openServer(int poolSize) {
+        return openServer(poolSize, null);
+    }
+
+    /**
+     * @param connectionInitSql 커넥션마다 처음 실행할 sql (ex: SET LOCK_TIMEOUT 1000)
+     */
+    public static HikariDataSource openServer(int poolSize, String connectionInitSql) {
+        return openServer(poolSize, connectionInitSql, null);
+    }
+
+    /**
+     * @param transactionIsolation 커넥션 기본 격리 수준 (ex: TRANSACTION_SERIALIZABLE), null이면 드라이버 기본값
+     */
+    public static HikariDataSource openServer(int poolSize, String connectionInitSql, String transactionIsolation) {
+        startServer();
+        HikariDataSource dataSource = dataSource(URL, poolSize);
+        dataSource.setConnectionInitSql(connectionInitSql);
+        dataSource.setTransactionIsolation(transactionIsolation);
+        return createSchema(dataSource, false);
+    }
+
+    public static synchronized void startServer() {
+        if (server != null) {
+            return;
+        }
+        try {
+            server = Server.createTcpServer("-tcp", "-tcpPort", "9092", "-ifNotExists").start();
+            log.warn("h2 tcp server started url={}", server.getURL());
+        } catch (SQLException e) {
+            //포트 사용중 -> 이미 떠 있는 서버 사용
+            log.warn("h2 tcp server not started, use running server: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * bench0 ~ bench{count-1} 를 money 로 저장 (기존 벤치마크 회원은 먼저 삭제)
+     */
+    public static void load(HikariDataSource dataSource, int count, int money) {
+        clear(dataSource);
+        List<Member> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            members.add(new Member(memberId(i), money));
+        }
+        new MemberRepositoryV4_2(dataSource).saveAll(members);
+    }
+
+    public static void load(HikariDataSource dataSource, int count) {
+        load(dataSource, count, 10000);
+    }
+
+    public static void clear(HikariDataSource dataSource) {
+        execute(dataSource, "delete from member_balance_shard where member_id like '" + MEMBER_ID_PREFIX + "%'");
+        execute(dataSource, "delete from member where member_id like '" + MEMBER_ID_PREFIX + "%'");
+    }
+
+    /**
+     * 벤치마크 회원 잔액 합계 (shard 잔액 포함)
+     */
+    public static long totalMoney(HikariDataSource dataSource) {
+        String like = " where member_id like '" + MEMBER_ID_PREFIX + "%'";
+        try (Connection con = dataSource.getConnection(); Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("select (select coalesce(sum(money), 0) from member" + like + ")"
+                     + " + (select coalesce(sum(money), 0) from member_balance_shard" + like + ")")) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String memberId(int index) {
+        return MEMBER_ID_PREFIX + index;
+    }
+
+    private static HikariDataSource dataSource(String url, int poolSize) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        dataSource.setMaximumPoolSize(poolSize);
+        return dataSource;
+    }
+
+    private static HikariDataSource createSchema(HikariDataSource dataSource, boolean recreate) {
+        try {
+            if (recreate) {
+                execute(dataSource, "drop table if exists member");
+            }
+            execute(dataSource, "create table if not exists member (member_id varchar(10), money integer not null default 0, version bigint not null default 0, primary key (member_id))");
+            execute(dataSource, "alter table member add column if not exists version bigint not null default 0"); // 버전 컬럼 이전에 만든 테이블
+            execute(dataSource, "create table if not exists member_balance_shard (member_id varchar(10) not null, shard integer not null, " +
+                    "money integer not null default 0, version bigint not null default 0, primary key (member_id, shard))");
+            return dataSource;
+        } catch (RuntimeException e) {
+            dataSource.close();
+            throw e;
+        }
+    }
+
+    private static void execute(HikariDataSource dataSource, String sql) {
+        try (Connection con = dataSource.getConnection(); Statement stmt = con.createStatement()) {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
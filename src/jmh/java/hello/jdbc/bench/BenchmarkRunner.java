@@ -0,0 +1,42 @@
+package hello.jdbc.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * gradle jmh 진입점
+ * JMH 명령행 옵션은 그대로 받고, 항상 추가하는 것
+ * - GC 프로파일러 -> ops/s(또는 us/op)와 함께 gc.alloc.rate.norm(B/op)
+ * - 로그 레벨 WARN (logback-bench.xml) -> 로그 출력 비용 제외
+ *
+ * gradle jmh -PjmhArgs="RepositoryBenchmark -t 8 -p poolSize=10 -p datasetSize=10000"
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        boolean gcProfiler = commandLine.getProfilers().stream()
+                .anyMatch(profiler -> profiler.getKlass().equals("gc") || profiler.getKlass().equals(GCProfiler.class.getName()));
+        if (!gcProfiler) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        builder.jvmArgsAppend("-Dlogback.configurationFile=logback-bench.xml");
+        Options options = builder.build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,81 @@
+package hello.jdbc.bench;
+
+import hello.jdbc.repository.ex.MyDuplicateKeyException;
+import hello.jdbc.repository.support.PrecomputedSQLExceptionTranslator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQLException 하나를 변환하는 비용, 예외 하나당 할당량 (-prof gc 의 gc.alloc.rate.norm)
+ *
+ * - springErrorCodes: SQLErrorCodeSQLExceptionTranslator (MemberRepositoryV4_2 기존 방식)
+ * - precomputed: 미리 만든 에러 코드 표
+ * - precomputedStackless: 미리 만든 표 + 키 중복은 스택 트레이스 없는 예외
+ * - manualErrorCode: ExTranslatorV1Test 처럼 에러 코드를 직접 확인해서 MyDuplicateKeyException 생성
+ *
+ * gradle jmh -PjmhArgs="ExceptionTranslatorBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExceptionTranslatorBenchmark {
+
+    /**
+     * 23505: 키 중복, 50200: 락 타임아웃
+     */
+    @Param({"23505", "50200"})
+    public int errorCode;
+
+    private SQLException sqlException;
+    private SQLErrorCodeSQLExceptionTranslator springTranslator;
+    private PrecomputedSQLExceptionTranslator precomputedTranslator;
+    private PrecomputedSQLExceptionTranslator stacklessTranslator;
+
+    @Setup
+    public void setUp() {
+        sqlException = new SQLException("Unique index or primary key violation", "23505", errorCode);
+        springTranslator = new SQLErrorCodeSQLExceptionTranslator("H2");
+        precomputedTranslator = PrecomputedSQLExceptionTranslator.forDatabase("H2");
+        stacklessTranslator = precomputedTranslator.stacklessExpected();
+    }
+
+    @Benchmark
+    public DataAccessException springErrorCodes() {
+        return springTranslator.translate("save", "insert into member(member_id, money) values(?, ?)", sqlException);
+    }
+
+    @Benchmark
+    public DataAccessException precomputed() {
+        return precomputedTranslator.translate("save", "insert into member(member_id, money) values(?, ?)", sqlException);
+    }
+
+    @Benchmark
+    public DataAccessException precomputedStackless() {
+        return stacklessTranslator.translate("save", "insert into member(member_id, money) values(?, ?)", sqlException);
+    }
+
+    @Benchmark
+    public RuntimeException manualErrorCode() {
+        if (sqlException.getErrorCode() == 23505) {
+            return new MyDuplicateKeyException(sqlException);
+        }
+        return new IllegalStateException(sqlException);
+    }
+}
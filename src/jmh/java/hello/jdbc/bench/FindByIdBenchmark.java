@@ -0,0 +1,144 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import hello.jdbc.repository.MemberRepositoryV5;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * findById(예외로 없음 표시, select *, 컬럼명) vs findByIdOptional / findMoney(예외 없음, 필요한 컬럼, 인덱스)
+ *
+ * hit=false 는 없는 회원 조회 (사기 탐지처럼 없는 경우가 많은 경로)
+ * -> 예외/Member 할당 차이는 -prof gc 로 확인
+ *
+ * gradle jmh -PjmhArgs="FindByIdBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FindByIdBenchmark {
+
+    private static final int MEMBER_COUNT = 10_000;
+
+    @Param({"V3", "V4_2", "V5"})
+    public String version;
+
+    @Param({"true", "false"})
+    public boolean hit;
+
+    private HikariDataSource dataSource;
+    private Lookup lookup;
+    private String memberId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDatabase.open("findById", 4);
+        BenchmarkDatabase.load(dataSource, MEMBER_COUNT);
+        lookup = Lookup.of(version, dataSource);
+        memberId = hit ? BenchmarkDatabase.memberId(MEMBER_COUNT / 2) : "none";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public Member findById() throws SQLException {
+        try {
+            return lookup.findById(memberId);
+        } catch (NoSuchElementException | EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public Optional<Member> findByIdOptional() throws SQLException {
+        return lookup.findByIdOptional(memberId);
+    }
+
+    @Benchmark
+    public OptionalInt findMoney() throws SQLException {
+        return lookup.findMoney(memberId);
+    }
+
+    /**
+     * V3는 MemberRepository를 구현하지 않으므로(체크 예외) 버전별로 맞춰준다.
+     */
+    private interface Lookup {
+
+        Member findById(String memberId) throws SQLException;
+
+        Optional<Member> findByIdOptional(String memberId) throws SQLException;
+
+        OptionalInt findMoney(String memberId) throws SQLException;
+
+        static Lookup of(String version, HikariDataSource dataSource) {
+            switch (version) {
+                case "V3": {
+                    MemberRepositoryV3 repository = new MemberRepositoryV3(dataSource);
+                    return new Lookup() {
+                        public Member findById(String memberId) throws SQLException {
+                            return repository.findById(memberId);
+                        }
+
+                        public Optional<Member> findByIdOptional(String memberId) throws SQLException {
+                            return repository.findByIdOptional(memberId);
+                        }
+
+                        public OptionalInt findMoney(String memberId) throws SQLException {
+                            return repository.findMoney(memberId);
+                        }
+                    };
+                }
+                case "V4_2":
+                    return of(new MemberRepositoryV4_2(dataSource));
+                case "V5":
+                    return of(new MemberRepositoryV5(dataSource));
+                default:
+                    throw new IllegalArgumentException("version=" + version);
+            }
+        }
+
+        private static Lookup of(MemberRepository repository) {
+            return new Lookup() {
+                public Member findById(String memberId) {
+                    return repository.findById(memberId);
+                }
+
+                public Optional<Member> findByIdOptional(String memberId) {
+                    return repository.findByIdOptional(memberId);
+                }
+
+                public OptionalInt findMoney(String memberId) {
+                    return repository.findMoney(memberId);
+                }
+            };
+        }
+    }
+}
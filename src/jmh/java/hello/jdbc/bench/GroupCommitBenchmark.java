@@ -0,0 +1,110 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.service.MemberServiceV4;
+import hello.jdbc.service.TransferBatcher;
+import hello.jdbc.service.TransferMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 요청마다 커밋(maxBatchSize=0) vs TransferBatcher 그룹 커밋
+ *
+ * 호출 스레드는 future가 완료(커밋)될 때까지 기다린다. -> 요청 하나의 응답 시간 기준 처리량
+ * failurePercent: 받는 회원을 "ex"로 보내서 출금 후 검증에서 실패하는 이체 비율
+ *   배치 안에서는 그 이체만 savepoint 까지 롤백되고 나머지는 같이 커밋된다.
+ * netting: 배치를 회원 별 순 증감액으로 합쳐서 반영 -> datasetSize가 작을수록(같은 회원이 자주 나올수록) update 수가 줄어든다.
+ * 배처는 워커 스레드 하나가 커넥션 하나로 커밋하므로 직접 호출(poolSize 커넥션)보다 커넥션을 적게 쓴다.
+ * gradle jmh -PjmhArgs="GroupCommitBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class GroupCommitBenchmark {
+
+    private static final int INITIAL_MONEY = 1_000_000_000;
+
+    @Param({"0", "16", "64"})
+    public int maxBatchSize;
+
+    @Param({"0"})
+    public int maxDelayMs;
+
+    @Param({"0", "5"})
+    public int failurePercent;
+
+    @Param({"false", "true"})
+    public boolean netting;
+
+    @Param({"10"})
+    public int poolSize;
+
+    @Param({"10000"})
+    public int datasetSize;
+
+    private HikariDataSource dataSource;
+    private MemberServiceV4 memberService;
+    private TransferBatcher batcher;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDatabase.openServer(poolSize);
+        BenchmarkDatabase.load(dataSource, datasetSize, INITIAL_MONEY);
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        memberService = TransferServices.serviceV4(TransferMode.DELTA, dataSource, transactionManager);
+        if (maxBatchSize > 0) {
+            batcher = new TransferBatcher(memberService, transactionManager, maxBatchSize, Duration.ofMillis(maxDelayMs), 1024, netting);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (batcher != null) {
+            batcher.close();
+        }
+        BenchmarkDatabase.clear(dataSource);
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void accountTransfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(datasetSize - 1);
+        int to = from + 1 + random.nextInt(datasetSize - 1 - from);
+        String fromId = BenchmarkDatabase.memberId(from);
+        String toId = random.nextInt(100) < failurePercent ? "ex" : BenchmarkDatabase.memberId(to);
+
+        try {
+            if (batcher == null) {
+                memberService.accountTransfer(fromId, toId, 1);
+            } else {
+                batcher.submit(fromId, toId, 1).join();
+            }
+        } catch (IllegalStateException | CompletionException e) {
+            //이체 규칙 위반 -> 이 이체만 롤백
+        }
+    }
+}
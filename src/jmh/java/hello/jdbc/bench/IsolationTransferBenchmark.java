@@ -0,0 +1,125 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.service.support.RetryBudget;
+import hello.jdbc.service.support.RetryExecutor;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 격리 수준 x 이체 방식 x 재시도 별 경합 처리량
+ *
+ * 소수의 계좌(accounts) 사이에서 방향을 가리지 않고 이체 -> A->B, B->A 가 동시에 일어난다.
+ * - V4: findById -> update from -> update to (락 순서가 이체 방향에 따라 다름 -> 데드락/락 타임아웃)
+ * - V4_ORDERED_LOCK: member_id 순서로 select for update 후 update (락 순서 고정)
+ * - V4_DELTA: 조건부 update 2번
+ * - V4_OPTIMISTIC: 락 없이 조회 -> 버전 비교 update 2번, 충돌하면 OptimisticLockingFailureException (retry=true 면 재시도)
+ *
+ * 결과의 ok/failed 는 초당 성공/실패 건수 (@AuxCounters), 실패한 이체는 롤백된 DB 작업
+ * gradle jmh -PjmhArgs="IsolationTransferBenchmark -t 16"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class IsolationTransferBenchmark {
+
+    @Param({"V4", "V4_ORDERED_LOCK", "V4_DELTA", "V4_OPTIMISTIC"})
+    public String service;
+
+    @Param({"TRANSACTION_READ_COMMITTED", "TRANSACTION_REPEATABLE_READ", "TRANSACTION_SERIALIZABLE"})
+    public String isolation;
+
+    @Param({"false", "true"})
+    public boolean retry;
+
+    @Param({"10"})
+    public int poolSize;
+
+    @Param({"10", "1000"}) // 경합 높음 / 낮음
+    public int accounts;
+
+    @Param({"500"})
+    public int lockTimeoutMs;
+
+    private HikariDataSource dataSource;
+    private TransferServices transfer;
+    private RetryExecutor retryExecutor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDatabase.openServer(poolSize, "SET LOCK_TIMEOUT " + lockTimeoutMs, isolation);
+        BenchmarkDatabase.load(dataSource, accounts, 1_000_000_000);
+        transfer = TransferServices.of(service, dataSource);
+        retryExecutor = new RetryExecutor(5, Duration.ofMillis(2), Duration.ofMillis(100), new RetryBudget(0.2, 100));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        transfer.close();
+        BenchmarkDatabase.clear(dataSource);
+        dataSource.close();
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Outcomes {
+        public long ok;
+        public long failed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            ok = 0;
+            failed = 0;
+        }
+    }
+
+    @Benchmark
+    public void accountTransfer(Outcomes outcomes) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(accounts);
+        int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+        String fromId = BenchmarkDatabase.memberId(from);
+        String toId = BenchmarkDatabase.memberId(to);
+
+        try {
+            if (retry) {
+                retryExecutor.run(() -> transferOnce(fromId, toId));
+            } else {
+                transferOnce(fromId, toId);
+            }
+            outcomes.ok++;
+        } catch (RuntimeException e) {
+            outcomes.failed++;
+        }
+    }
+
+    private void transferOnce(String fromId, String toId) {
+        try {
+            transfer.accountTransfer(fromId, toId, 1);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
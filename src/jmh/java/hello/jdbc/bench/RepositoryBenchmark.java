@@ -0,0 +1,184 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV0;
+import hello.jdbc.repository.MemberRepositoryV1;
+import hello.jdbc.repository.MemberRepositoryV2;
+import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.repository.MemberRepositoryV4_1;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import hello.jdbc.repository.MemberRepositoryV5;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MemberRepository V0 ~ V5 연산별 처리량
+ *
+ * - V0: DriverManager(DBConnectionUtil) -> 매번 새 커넥션 (poolSize 무시)
+ * - V1, V2: DataSource + 직접 close
+ * - V3, V4_1, V4_2: DataSourceUtils
+ * - V5: JdbcTemplate
+ *
+ * 벤치마크 안에서 띄운 H2 TCP 서버 사용
+ * 스레드 수는 JMH -t 옵션 -> gradle jmh -PjmhArgs="RepositoryBenchmark -t 8 -p poolSize=10"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+    @Param({"V0", "V1", "V2", "V3", "V4_1", "V4_2", "V5"})
+    public String version;
+
+    @Param({"10"})
+    public int poolSize;
+
+    @Param({"10000"})
+    public int datasetSize;
+
+    private HikariDataSource dataSource;
+    private Repository repository;
+    private final AtomicInteger insertSequence = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDatabase.openServer(poolSize);
+        BenchmarkDatabase.load(dataSource, datasetSize);
+        repository = Repository.of(version, dataSource);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDatabase.clear(dataSource);
+        dataSource.close();
+    }
+
+    @Benchmark
+    public Member findById() throws SQLException {
+        return repository.findById(randomMemberId());
+    }
+
+    @Benchmark
+    public void update() throws SQLException {
+        repository.update(randomMemberId(), ThreadLocalRandom.current().nextInt(10000));
+    }
+
+    /**
+     * 데이터 크기가 변하지 않도록 저장 후 바로 삭제
+     */
+    @Benchmark
+    public void saveAndDelete() throws SQLException {
+        String memberId = BenchmarkDatabase.memberId(datasetSize + insertSequence.getAndIncrement() % 50_000);
+        repository.save(new Member(memberId, 0));
+        repository.delete(memberId);
+    }
+
+    private String randomMemberId() {
+        return BenchmarkDatabase.memberId(ThreadLocalRandom.current().nextInt(datasetSize));
+    }
+
+    /**
+     * 버전마다 다른 시그니처(체크 예외, 인터페이스 유무)를 맞춰준다.
+     */
+    private interface Repository {
+
+        Member save(Member member) throws SQLException;
+
+        Member findById(String memberId) throws SQLException;
+
+        void update(String memberId, int money) throws SQLException;
+
+        void delete(String memberId) throws SQLException;
+
+        static Repository of(String version, HikariDataSource dataSource) {
+            switch (version) {
+                case "V0": {
+                    MemberRepositoryV0 repository = new MemberRepositoryV0();
+                    return of(repository::save, repository::findById, repository::update, repository::delete);
+                }
+                case "V1": {
+                    MemberRepositoryV1 repository = new MemberRepositoryV1(dataSource);
+                    return of(repository::save, repository::findById, repository::update, repository::delete);
+                }
+                case "V2": {
+                    MemberRepositoryV2 repository = new MemberRepositoryV2(dataSource);
+                    return of(repository::save, repository::findById, repository::update, repository::delete);
+                }
+                case "V3": {
+                    MemberRepositoryV3 repository = new MemberRepositoryV3(dataSource);
+                    return of(repository::save, repository::findById, repository::update, repository::delete);
+                }
+                case "V4_1": {
+                    MemberRepositoryV4_1 repository = new MemberRepositoryV4_1(dataSource);
+                    return of(repository::save, repository::findById, repository::update, repository::delete);
+                }
+                case "V4_2": {
+                    MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource);
+                    return of(repository::save, repository::findById, repository::update, repository::delete);
+                }
+                case "V5": {
+                    MemberRepositoryV5 repository = new MemberRepositoryV5(dataSource);
+                    return of(repository::save, repository::findById, repository::update, repository::delete);
+                }
+                default:
+                    throw new IllegalArgumentException("version=" + version);
+            }
+        }
+
+        private static Repository of(SqlFunction<Member, Member> save, SqlFunction<String, Member> findById,
+                                     SqlBiConsumer<String, Integer> update, SqlConsumer<String> delete) {
+            return new Repository() {
+                public Member save(Member member) throws SQLException {
+                    return save.apply(member);
+                }
+
+                public Member findById(String memberId) throws SQLException {
+                    return findById.apply(memberId);
+                }
+
+                public void update(String memberId, int money) throws SQLException {
+                    update.accept(memberId, money);
+                }
+
+                public void delete(String memberId) throws SQLException {
+                    delete.accept(memberId);
+                }
+            };
+        }
+    }
+
+    @FunctionalInterface
+    interface SqlFunction<T, R> {
+        R apply(T t) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface SqlBiConsumer<T, U> {
+        void accept(T t, U u) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface SqlConsumer<T> {
+        void accept(T t) throws SQLException;
+    }
+}
@@ -0,0 +1,92 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import hello.jdbc.repository.ShardedBalanceMemberRepository;
+import hello.jdbc.service.MemberServiceV4;
+import hello.jdbc.service.TransferMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 모든 스레드가 정산 계좌(bench0) 하나로 입금하는 이체 (V4_DELTA)
+ * shards=1: member row 하나에 줄을 선다. shards=K: ShardedBalanceMemberRepository로 K개 row에 나누어 입금
+ * 보내는 회원은 나머지 계좌 중 임의 선택 -> 경합은 받는 계좌에만 있다.
+ *
+ * 종료 후 잔액 합계가 처음과 같은지 확인 (shard 포함)
+ * gradle jmh -PjmhArgs="ShardedBalanceBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class ShardedBalanceBenchmark {
+
+    private static final int INITIAL_MONEY = 1_000_000;
+    private static final String HOT_MEMBER_ID = BenchmarkDatabase.memberId(0);
+
+    @Param({"1", "4", "16"})
+    public int shards;
+
+    @Param({"16"})
+    public int poolSize;
+
+    @Param({"10000"})
+    public int datasetSize;
+
+    private HikariDataSource dataSource;
+    private ShardedBalanceMemberRepository repository;
+    private MemberServiceV4 memberService;
+    private long expectedTotal;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDatabase.openServer(poolSize);
+        BenchmarkDatabase.load(dataSource, datasetSize, INITIAL_MONEY);
+        expectedTotal = (long) datasetSize * INITIAL_MONEY;
+
+        repository = new ShardedBalanceMemberRepository(new MemberRepositoryV4_2(dataSource), dataSource);
+        repository.afterPropertiesSet();
+        if (shards > 1) {
+            repository.promote(HOT_MEMBER_ID, shards);
+        }
+        memberService = TransferServices.transactional(new MemberServiceV4(repository, TransferMode.DELTA),
+                new DataSourceTransactionManager(dataSource));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long total = BenchmarkDatabase.totalMoney(dataSource);
+        if (total != expectedTotal) {
+            throw new IllegalStateException("잔액 합계 불일치 expected=" + expectedTotal + ", actual=" + total);
+        }
+        BenchmarkDatabase.clear(dataSource);
+        repository.refresh();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void transferToHotAccount() {
+        int from = 1 + ThreadLocalRandom.current().nextInt(datasetSize - 1);
+        memberService.accountTransfer(BenchmarkDatabase.memberId(from), HOT_MEMBER_ID, 1);
+    }
+}
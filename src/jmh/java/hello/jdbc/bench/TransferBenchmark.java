@@ -0,0 +1,71 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * accountTransfer 트랜잭션 방식별 처리량 (서비스 종류는 TransferServices)
+ *
+ * 보내는 회원 id < 받는 회원 id 로 고른다. -> 락 순서가 항상 같아서 데드락 없음
+ * 스레드 수는 JMH -t 옵션 -> gradle jmh -PjmhArgs="TransferBenchmark -t 8 -p poolSize=10"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransferBenchmark {
+
+    private static final int INITIAL_MONEY = 1_000_000_000;
+
+    @Param({"V1", "V2", "V3_1", "V3_2", "V3_3", "V4", "V4_DELTA", "V4_BATCHED", "V4_PROCEDURE", "V4_ORDERED_LOCK", "V4_OPTIMISTIC", "LEDGER"})
+    public String service;
+
+    @Param({"10"})
+    public int poolSize;
+
+    @Param({"10000"})
+    public int datasetSize;
+
+    private HikariDataSource dataSource;
+    private TransferServices transfer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDatabase.openServer(poolSize);
+        BenchmarkDatabase.load(dataSource, datasetSize, INITIAL_MONEY);
+        transfer = TransferServices.of(service, dataSource);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        transfer.close();
+        BenchmarkDatabase.clear(dataSource);
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void accountTransfer() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(datasetSize - 1);
+        int to = from + 1 + random.nextInt(datasetSize - 1 - from);
+        transfer.accountTransfer(BenchmarkDatabase.memberId(from), BenchmarkDatabase.memberId(to), 1);
+    }
+}
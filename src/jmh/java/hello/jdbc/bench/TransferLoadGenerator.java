@@ -0,0 +1,361 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.repository.ex.MyInsufficientBalanceException;
+import hello.jdbc.service.support.RetryBudget;
+import hello.jdbc.service.support.RetryExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.PessimisticLockingFailureException;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * accountTransfer 부하 생성기 (핫 계좌 경합 재현용)
+ *
+ * - 받는 계좌는 Zipf 분포(skew) -> 소수의 정산 계좌에 이체가 몰리는 상황, 보내는 계좌는 균등
+ * - rate > 0 이면 open-loop: 초당 rate건을 정해진 시각에 시작 (처리가 밀려도 도착은 계속된다.)
+ *   지연 시간은 "시작했어야 할 시각"부터 잰다. -> 밀린 대기 시간까지 포함 (coordinated omission 보정)
+ * - rate = 0 이면 closed-loop: 스레드마다 끝나자마자 다음 이체
+ * - 결과: 처리량, 지연 시간 백분위(HdrHistogram), 롤백/락 타임아웃/데드락 수, 전체 잔액 불변식
+ *   커넥션 풀 사용량 (10ms 마다 active, 커넥션 대기 스레드 수 샘플링)
+ *
+ * 벤치마크와 같은 H2 TCP 서버(9092) 사용, 없으면 이 JVM 안에서 띄운다.
+ *
+ * --retry=true 면 RetryExecutor로 일시적 실패(락 타임아웃, 데드락)를 재시도 -> 재시도 후에도 실패한 것만 집계
+ *
+ * gradle loadTest -PloadArgs="--service=V4 --threads=32 --accounts=10000 --skew=1.2 --rate=2000 --duration=30"
+ */
+@Slf4j
+public class TransferLoadGenerator {
+
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Options options;
+    private final TransferServices transfer;
+    private final ZipfianDistribution hotAccounts;
+
+    private final Map<Outcome, LongAdder> outcomes = new HashMap<>();
+    private final AtomicLong arrivals = new AtomicLong();
+
+    public TransferLoadGenerator(Options options, TransferServices transfer) {
+        this.options = options;
+        this.transfer = transfer;
+        this.hotAccounts = new ZipfianDistribution(options.accounts(), options.skew());
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Options options = Options.parse(args);
+        String lockTimeoutSql = "SET LOCK_TIMEOUT " + options.lockTimeoutMs();
+
+        try (HikariDataSource dataSource = BenchmarkDatabase.openServer(options.poolSize(), lockTimeoutSql)) {
+            BenchmarkDatabase.load(dataSource, options.accounts(), options.initialMoney());
+            long totalBefore = BenchmarkDatabase.totalMoney(dataSource);
+
+            TransferServices service = TransferServices.of(options.service(), dataSource);
+            TransferServices transfer = service;
+            RetryExecutor retryExecutor = new RetryExecutor(5, Duration.ofMillis(5), Duration.ofMillis(200), new RetryBudget(0.2, 100));
+            if (options.retry()) {
+                TransferServices once = transfer;
+                transfer = (fromId, toId, money) -> retryExecutor.run(() -> {
+                    try {
+                        once.accountTransfer(fromId, toId, money);
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+
+            TransferLoadGenerator generator = new TransferLoadGenerator(options, transfer);
+            PoolSampler poolSampler = PoolSampler.start(dataSource);
+            Result result = generator.run();
+            poolSampler.stop();
+            if (options.retry()) {
+                System.out.printf("%nretries=%d, budget exhausted=%d, gave up=%d",
+                        retryExecutor.getRetryCount(), retryExecutor.getBudgetExhaustedCount(), retryExecutor.getGaveUpCount());
+            }
+
+            service.close(); // LEDGER: 메모리 잔액을 DB에 저장
+            long totalAfter = BenchmarkDatabase.totalMoney(dataSource);
+            result.print(options, generator.hotAccounts, totalBefore, totalAfter);
+            poolSampler.print(options.poolSize());
+
+            BenchmarkDatabase.clear(dataSource);
+        }
+    }
+
+    public Result run() throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds());
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+
+        List<Worker> workers = new ArrayList<>(options.threads());
+        List<Thread> threads = new ArrayList<>(options.threads());
+        for (int i = 0; i < options.threads(); i++) {
+            Worker worker = new Worker(start, measureFrom, end);
+            Thread thread = new Thread(worker, "load-" + i);
+            workers.add(worker);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Histogram latency = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+        for (Worker worker : workers) {
+            latency.add(worker.latency);
+        }
+        Map<Outcome, Long> counts = new HashMap<>();
+        outcomes.forEach((outcome, count) -> counts.put(outcome, count.sum()));
+        return new Result(latency, counts, end - measureFrom);
+    }
+
+    private final class Worker implements Runnable {
+
+        private final long start;
+        private final long measureFrom;
+        private final long end;
+        private final Histogram latency = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+
+        private Worker(long start, long measureFrom, long end) {
+            this.start = start;
+            this.measureFrom = measureFrom;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            boolean openLoop = options.rate() > 0;
+            long intervalNanos = openLoop ? (long) (TimeUnit.SECONDS.toNanos(1) / options.rate()) : 0;
+
+            while (true) {
+                long intendedStart;
+                if (openLoop) {
+                    intendedStart = start + arrivals.getAndIncrement() * intervalNanos;
+                    if (intendedStart >= end) {
+                        return;
+                    }
+                    waitUntil(intendedStart);
+                } else {
+                    intendedStart = System.nanoTime();
+                    if (intendedStart >= end) {
+                        return;
+                    }
+                }
+
+                Outcome outcome = transferOnce();
+                long finished = System.nanoTime();
+
+                if (intendedStart >= measureFrom) {
+                    outcomes.get(outcome).increment();
+                    latency.recordValue(Math.min(HIGHEST_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(finished - intendedStart)));
+                }
+            }
+        }
+
+        private void waitUntil(long deadline) {
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+    }
+
+    private Outcome transferOnce() {
+        int to = hotAccounts.next();
+        int from = ThreadLocalRandom.current().nextInt(options.accounts() - 1);
+        if (from >= to) {
+            from++; // 받는 계좌와 다른 계좌
+        }
+
+        try {
+            transfer.accountTransfer(BenchmarkDatabase.memberId(from), BenchmarkDatabase.memberId(to), options.money());
+            return Outcome.OK;
+        } catch (SQLException | RuntimeException e) {
+            return Outcome.classify(e);
+        }
+    }
+
+    /**
+     * 이체 결과 분류
+     */
+    enum Outcome {
+        OK,
+        LOCK_TIMEOUT,
+        DEADLOCK,
+        CONCURRENT_UPDATE,
+        BUSINESS,
+        OTHER;
+
+        // H2 에러 코드
+        private static final int LOCK_TIMEOUT_CODE = 50200;
+        private static final int DEADLOCK_CODE = 40001;
+        private static final int CONCURRENT_UPDATE_CODE = 90131;
+
+        static Outcome classify(Throwable e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof SQLException sqlEx) {
+                    switch (sqlEx.getErrorCode()) {
+                        case LOCK_TIMEOUT_CODE:
+                            return LOCK_TIMEOUT;
+                        case DEADLOCK_CODE:
+                            return DEADLOCK;
+                        case CONCURRENT_UPDATE_CODE:
+                            return CONCURRENT_UPDATE;
+                        default:
+                    }
+                }
+                if (cause instanceof CannotAcquireLockException) {
+                    return LOCK_TIMEOUT;
+                }
+                if (cause instanceof PessimisticLockingFailureException) {
+                    return DEADLOCK;
+                }
+                if (cause instanceof MyInsufficientBalanceException || cause instanceof NoSuchElementException) {
+                    return BUSINESS;
+                }
+            }
+            log.warn("unclassified transfer failure", e);
+            return OTHER;
+        }
+    }
+
+    record Result(Histogram latency, Map<Outcome, Long> counts, long measuredNanos) {
+
+        void print(Options options, ZipfianDistribution hotAccounts, long totalBefore, long totalAfter) {
+            long completed = counts.values().stream().mapToLong(Long::longValue).sum();
+            long failed = completed - counts.get(Outcome.OK);
+            double seconds = measuredNanos / 1_000_000_000.0;
+            boolean transactional = !options.service().equals("V1");
+
+            System.out.println();
+            System.out.printf("service=%s threads=%d pool=%d accounts=%d skew=%.2f (top10 %.1f%%) rate=%s duration=%ds%n",
+                    options.service(), options.threads(), options.poolSize(), options.accounts(), options.skew(),
+                    hotAccounts.headProbability(10) * 100,
+                    options.rate() > 0 ? String.format("%.0f/s (open-loop)", options.rate()) : "closed-loop",
+                    options.durationSeconds());
+            System.out.printf("throughput      : %.1f ops/s (ok %.1f ops/s)%n", completed / seconds, counts.get(Outcome.OK) / seconds);
+            System.out.printf("latency ms      : p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+                    percentile(50), percentile(90), percentile(99), percentile(99.9), latency.getMaxValue() / 1000.0);
+            System.out.printf("completed       : %d (ok %d, failed %d)%n", completed, counts.get(Outcome.OK), failed);
+            System.out.printf("rollbacks       : %s%n", transactional ? failed : "n/a (no transaction)");
+            System.out.printf("lock timeouts   : %d%n", counts.get(Outcome.LOCK_TIMEOUT));
+            System.out.printf("deadlocks       : %d%n", counts.get(Outcome.DEADLOCK));
+            System.out.printf("concurrent upd. : %d%n", counts.get(Outcome.CONCURRENT_UPDATE));
+            System.out.printf("business errors : %d%n", counts.get(Outcome.BUSINESS));
+            System.out.printf("other errors    : %d%n", counts.get(Outcome.OTHER));
+            System.out.printf("ledger invariant: %s (before=%d, after=%d, diff=%d)%n",
+                    totalBefore == totalAfter ? "OK" : "BROKEN", totalBefore, totalAfter, totalAfter - totalBefore);
+        }
+
+        private double percentile(double percentile) {
+            return latency.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+
+    /**
+     * HikariPoolMXBean 주기 샘플링 -> 커넥션 풀 사용률, 커넥션을 기다린 스레드 수
+     */
+    static final class PoolSampler implements Runnable {
+
+        private final HikariDataSource dataSource;
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private long samples;
+        private long activeSum;
+        private int activeMax;
+        private long waitingSum;
+        private int waitingMax;
+
+        private PoolSampler(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+            this.thread = new Thread(this, "pool-sampler");
+            this.thread.setDaemon(true);
+        }
+
+        static PoolSampler start(HikariDataSource dataSource) {
+            PoolSampler sampler = new PoolSampler(dataSource);
+            sampler.thread.start();
+            return sampler;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                int active = dataSource.getHikariPoolMXBean().getActiveConnections();
+                int waiting = dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection();
+                samples++;
+                activeSum += active;
+                activeMax = Math.max(activeMax, active);
+                waitingSum += waiting;
+                waitingMax = Math.max(waitingMax, waiting);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+        }
+
+        void print(int poolSize) {
+            long count = Math.max(1, samples);
+            System.out.printf("pool active     : avg=%.1f max=%d (%.0f%% of %d)%n",
+                    (double) activeSum / count, activeMax, 100.0 * activeSum / count / poolSize, poolSize);
+            System.out.printf("pool waiting    : avg=%.1f max=%d threads%n", (double) waitingSum / count, waitingMax);
+        }
+    }
+
+    /**
+     * --key=value 형식 명령행 옵션
+     */
+    record Options(String service, int threads, int poolSize, int accounts, double skew, double rate,
+                   int warmupSeconds, int durationSeconds, int money, int initialMoney, int lockTimeoutMs, boolean retry) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("--key=value 형식이어야 합니다. arg=" + arg);
+                }
+                int separator = arg.indexOf('=');
+                values.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+
+            Options options = new Options(
+                    values.getOrDefault("service", "V4"),
+                    Integer.parseInt(values.getOrDefault("threads", "16")),
+                    Integer.parseInt(values.getOrDefault("pool", "10")),
+                    Integer.parseInt(values.getOrDefault("accounts", "10000")),
+                    Double.parseDouble(values.getOrDefault("skew", "1.0")),
+                    Double.parseDouble(values.getOrDefault("rate", "0")),
+                    Integer.parseInt(values.getOrDefault("warmup", "5")),
+                    Integer.parseInt(values.getOrDefault("duration", "30")),
+                    Integer.parseInt(values.getOrDefault("money", "100")),
+                    Integer.parseInt(values.getOrDefault("initialMoney", "1000000")),
+                    Integer.parseInt(values.getOrDefault("lockTimeout", "1000")),
+                    Boolean.parseBoolean(values.getOrDefault("retry", "false")));
+            if (options.accounts() < 2) {
+                throw new IllegalArgumentException("accounts는 2 이상이어야 합니다.");
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.repository.MemberRepositoryV1;
+import hello.jdbc.repository.MemberRepositoryV2;
+import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import hello.jdbc.repository.TransferProcedureRepository;
+import hello.jdbc.service.MemberServiceV1;
+import hello.jdbc.service.MemberServiceV2;
+import hello.jdbc.service.MemberServiceV3_1;
+import hello.jdbc.service.MemberServiceV3_2;
+import hello.jdbc.service.MemberServiceV3_3;
+import hello.jdbc.service.LedgerEngine;
+import hello.jdbc.service.LockingTransferService;
+import hello.jdbc.service.MemberServiceV4;
+import hello.jdbc.service.TransferMode;
+import hello.jdbc.service.support.StripedLockManager;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * 벤치마크/부하 테스트용 accountTransfer 구현 선택
+ *
+ * - V1: 트랜잭션 없음
+ * - V2: 커넥션 직접 전달 + setAutoCommit(false)
+ * - V3_1: 트랜잭션 매니저, V3_2: TransactionTemplate, V3_3: @Transactional(AOP 프록시)
+ * - V4, V4_DELTA, V4_BATCHED, V4_PROCEDURE, V4_ORDERED_LOCK, V4_OPTIMISTIC: @Transactional + MemberRepositoryV4_2, TransferMode 별
+ * - V4_STRIPED: V4_DELTA 앞에서 JVM 계좌 락(StripedLockManager)을 먼저 잡는다.
+ * - LEDGER: 단일 쓰기 스레드 메모리 원장(LedgerEngine), 임시 디렉토리에 저널 -> 사용 후 close() 필요
+ */
+@FunctionalInterface
+public interface TransferServices {
+
+    void accountTransfer(String fromId, String toId, int money) throws SQLException;
+
+    /**
+     * 백그라운드 스레드 등 자원 정리 (LEDGER는 여기서 잔액을 DB에 저장)
+     */
+    default void close() {
+    }
+
+    static TransferServices of(String service, HikariDataSource dataSource) {
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        switch (service) {
+            case "V1":
+                return new MemberServiceV1(new MemberRepositoryV1(dataSource))::accountTransfer;
+            case "V2":
+                return new MemberServiceV2(dataSource, new MemberRepositoryV2(dataSource))::accountTransfer;
+            case "V3_1":
+                return new MemberServiceV3_1(transactionManager, new MemberRepositoryV3(dataSource))::accountTransfer;
+            case "V3_2":
+                return new MemberServiceV3_2(transactionManager, new MemberRepositoryV3(dataSource))::accountTransfer;
+            case "V3_3":
+                return transactional(new MemberServiceV3_3(new MemberRepositoryV3(dataSource)), transactionManager)::accountTransfer;
+            case "V4":
+                return serviceV4(TransferMode.READ_MODIFY_WRITE, dataSource, transactionManager)::accountTransfer;
+            case "V4_DELTA":
+                return serviceV4(TransferMode.DELTA, dataSource, transactionManager)::accountTransfer;
+            case "V4_BATCHED":
+                return serviceV4(TransferMode.BATCHED, dataSource, transactionManager)::accountTransfer;
+            case "V4_PROCEDURE":
+                return serviceV4(TransferMode.PROCEDURE, dataSource, transactionManager)::accountTransfer;
+            case "V4_ORDERED_LOCK":
+                return serviceV4(TransferMode.ORDERED_LOCK, dataSource, transactionManager)::accountTransfer;
+            case "V4_OPTIMISTIC":
+                return serviceV4(TransferMode.OPTIMISTIC, dataSource, transactionManager)::accountTransfer;
+            case "V4_STRIPED":
+                return new LockingTransferService(serviceV4(TransferMode.DELTA, dataSource, transactionManager),
+                        new StripedLockManager(1024), Duration.ofSeconds(5))::accountTransfer;
+            case "LEDGER":
+                return ledger(dataSource);
+            default:
+                throw new IllegalArgumentException("service=" + service);
+        }
+    }
+
+    static MemberServiceV4 serviceV4(TransferMode mode, HikariDataSource dataSource, PlatformTransactionManager transactionManager) {
+        TransferProcedureRepository transferProcedure = new TransferProcedureRepository(dataSource);
+        transferProcedure.afterPropertiesSet();
+        return transactional(new MemberServiceV4(new MemberRepositoryV4_2(dataSource), mode, transferProcedure), transactionManager);
+    }
+
+    static TransferServices ledger(HikariDataSource dataSource) {
+        Path journalDirectory;
+        try {
+            journalDirectory = Files.createTempDirectory("ledger-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        LedgerEngine engine = new LedgerEngine(new MemberRepositoryV4_2(dataSource), dataSource, journalDirectory, 1024, Duration.ofMillis(100));
+        engine.afterPropertiesSet();
+        return new TransferServices() {
+            @Override
+            public void accountTransfer(String fromId, String toId, int money) {
+                engine.accountTransfer(fromId, toId, money);
+            }
+
+            @Override
+            public void close() {
+                engine.close();
+            }
+        };
+    }
+
+    /**
+     * 스프링 컨테이너 없이 @Transactional 프록시 생성
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T transactional(T target, PlatformTransactionManager transactionManager) {
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        TransactionInterceptor transactionInterceptor = new TransactionInterceptor();
+        transactionInterceptor.setTransactionManager(transactionManager);
+        transactionInterceptor.setTransactionAttributeSource(new AnnotationTransactionAttributeSource());
+        proxyFactory.addAdvice(transactionInterceptor);
+        return (T) proxyFactory.getProxy();
+    }
+}
@@ -0,0 +1,118 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import hello.jdbc.repository.WriteBehindMemberRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 적립금 계좌(bench0 ~ bench{hotAccounts-1})로 작은 입금 (트랜잭션 없이 incrementMoney 한 번)
+ * writeBehind=false: 입금마다 update + 커밋, true: WriteBehindMemberRepository (저널 fsync 후 반환, flushIntervalMs 마다 모아서 update)
+ *
+ * 종료 후 close()로 남은 입금까지 반영하고 잔액 합계 확인
+ * gradle jmh -PjmhArgs="WriteBehindBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class WriteBehindBenchmark {
+
+    private static final int INITIAL_MONEY = 0;
+
+    @Param({"false", "true"})
+    public boolean writeBehind;
+
+    @Param({"1", "16"})
+    public int hotAccounts;
+
+    @Param({"100"})
+    public int flushIntervalMs;
+
+    @Param({"16"})
+    public int poolSize;
+
+    private HikariDataSource dataSource;
+    private MemberRepository repository;
+    private Path journalDirectory;
+    private String[] memberIds;
+    private final LongAdder credited = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataSource = BenchmarkDatabase.openServer(poolSize);
+        BenchmarkDatabase.load(dataSource, hotAccounts, INITIAL_MONEY);
+        memberIds = new String[hotAccounts];
+        for (int i = 0; i < hotAccounts; i++) {
+            memberIds[i] = BenchmarkDatabase.memberId(i);
+        }
+
+        MemberRepository dbRepository = new MemberRepositoryV4_2(dataSource);
+        if (writeBehind) {
+            journalDirectory = Files.createTempDirectory("write-behind-bench");
+            WriteBehindMemberRepository writeBehindRepository = new WriteBehindMemberRepository(dbRepository, dataSource,
+                    Set.of(memberIds), journalDirectory, Duration.ofMillis(flushIntervalMs), 100_000);
+            writeBehindRepository.afterPropertiesSet();
+            repository = writeBehindRepository;
+        } else {
+            repository = dbRepository;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (repository instanceof WriteBehindMemberRepository writeBehindRepository) {
+            writeBehindRepository.close();
+            System.out.printf("%ncredits=%d, flushes=%d, flushedRows=%d%n", writeBehindRepository.getCreditCount(),
+                    writeBehindRepository.getFlushCount(), writeBehindRepository.getFlushedRowCount());
+            deleteQuietly(journalDirectory);
+        }
+        long total = BenchmarkDatabase.totalMoney(dataSource);
+        if (total != credited.sum()) {
+            throw new IllegalStateException("잔액 합계 불일치 expected=" + credited + ", actual=" + total);
+        }
+        BenchmarkDatabase.clear(dataSource);
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void credit() {
+        repository.incrementMoney(memberIds[ThreadLocalRandom.current().nextInt(hotAccounts)], 1);
+        credited.increment();
+    }
+
+    private static void deleteQuietly(Path directory) {
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package hello.jdbc.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 0 ~ n-1 정수를 Zipf 분포로 뽑는다.
+ * P(k) ∝ 1 / (k+1)^s -> 0번이 가장 자주, 순위가 낮을수록 드물게
+ *
+ * s = 0 이면 균등 분포, s가 클수록 소수의 값(핫 계좌)에 몰린다. (s=1이면 10000개 중 상위 10개가 약 30%)
+ * 누적 확률표를 미리 만들어 두고 이진 탐색으로 뽑는다.
+ */
+public class ZipfianDistribution {
+
+    private final double[] cumulative;
+
+    public ZipfianDistribution(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n은 1 이상이어야 합니다. n=" + n);
+        }
+        if (exponent < 0) {
+            throw new IllegalArgumentException("exponent는 0 이상이어야 합니다. exponent=" + exponent);
+        }
+
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    public int next() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        int index = Arrays.binarySearch(cumulative, u);
+        int k = index >= 0 ? index : -index - 1;
+        return Math.min(k, cumulative.length - 1);
+    }
+
+    /**
+     * 상위 count개 값이 뽑힐 확률
+     */
+    public double headProbability(int count) {
+        return cumulative[Math.min(count, cumulative.length) - 1];
+    }
+}
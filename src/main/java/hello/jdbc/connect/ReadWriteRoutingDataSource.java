@@ -0,0 +1,191 @@
+package hello.jdbc.connect;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 읽기/쓰기 분리 DataSource
+ * 읽기-쓰기 트랜잭션, 트랜잭션 밖 -> primary
+ * @Transactional(readOnly = true), 트랜잭션 밖의 readOnly() 범위 -> replica (라운드 로빈)
+ *
+ * - 라우팅은 실제 커넥션을 얻는 시점에 결정한다.
+ *   트랜잭션 매니저는 readOnly 표시 전에 커넥션을 얻으므로 lazyProxy()로 감싸서 사용한다. -> 첫 sql 실행 시점에 라우팅
+ *   트랜잭션 매니저, 리포지토리 모두 같은 lazyProxy()를 받아야 DataSourceUtils가 같은 커넥션을 찾는다.
+ * - 트랜잭션 밖에서는 sql이 읽기인지 알 수 없다. -> 기본은 primary, 읽기만 하는 코드가 readOnly()로 명시
+ * - ConsistencyToken: 세션(사용자) 별로 마지막 쓰기 커밋 시각을 기록
+ *   bind(token) 범위 안에서 커밋 후 maxReplicationLag 이내의 읽기는 primary로 -> 자기가 쓴 값을 읽는다. (read-your-writes)
+ *   트랜잭션 밖 readOnly() 힌트 없는 sql은 쓰기로 보고 커넥션을 얻는 시각을 기록한다.
+ *
+ * 토큰은 복제 위치가 아니라 시간으로 판단하는 추정이다.
+ * - 복제 지연이 maxReplicationLag 보다 길면 보장이 깨진다. -> 복제 지연 모니터링 값보다 넉넉하게
+ * - System.nanoTime() 기준 -> 같은 JVM 안에서만 의미가 있다. (다른 서버로 보내는 세션 저장소에 넣지 않는다.)
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica-";
+
+    private static final ThreadLocal<ConsistencyToken> currentToken = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> readOnlyHint = new ThreadLocal<>();
+
+    private final int replicaCount;
+    private final long maxReplicationLagNanos;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private final LongAdder primaryRoutes = new LongAdder();
+    private final LongAdder replicaRoutes = new LongAdder();
+    private final LongAdder stickyReads = new LongAdder();
+
+    /**
+     * @param replicas 비어 있으면 모두 primary
+     * @param maxReplicationLag 쓰기 커밋 후 이 시간 동안 같은 세션의 읽기는 primary로
+     */
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas, Duration maxReplicationLag) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(REPLICA + i, replicas.get(i));
+        }
+        this.replicaCount = replicas.size();
+        this.maxReplicationLagNanos = maxReplicationLag.toNanos();
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        initialize();
+    }
+
+    /**
+     * 트랜잭션 매니저, 리포지토리에 넘길 DataSource
+     * 기본 autoCommit, 격리 수준은 여기서 미리 확인 -> 첫 트랜잭션 시작 때 확인용 커넥션이 토큰에 쓰기로 기록되지 않는다.
+     */
+    public DataSource lazyProxy() {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(this);
+        proxy.checkDefaultConnectionProperties();
+        return proxy;
+    }
+
+    /**
+     * 현재 스레드에 세션 토큰 연결, try-with-resources로 해제
+     */
+    public static Session bind(ConsistencyToken token) {
+        ConsistencyToken previous = currentToken.get();
+        currentToken.set(token);
+        return () -> {
+            if (previous == null) {
+                currentToken.remove();
+            } else {
+                currentToken.set(previous);
+            }
+        };
+    }
+
+    /**
+     * 트랜잭션 밖의 읽기를 replica로 보낸다. try-with-resources로 해제
+     * 범위 안에서 쓰기 sql을 실행하면 replica에서 실패한다. (트랜잭션 안에서는 트랜잭션 설정을 따른다.)
+     */
+    public static Session readOnly() {
+        Boolean previous = readOnlyHint.get();
+        readOnlyHint.set(Boolean.TRUE);
+        return () -> {
+            if (previous == null) {
+                readOnlyHint.remove();
+            } else {
+                readOnlyHint.set(previous);
+            }
+        };
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        ConsistencyToken token = currentToken.get();
+        boolean inTransaction = TransactionSynchronizationManager.isActualTransactionActive();
+
+        if (inTransaction && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            primaryRoutes.increment();
+            if (token != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+                //커밋한 후에야 replica로 복제가 시작된다. -> 커밋 시각 기록
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        token.written(System.nanoTime());
+                    }
+                });
+            }
+            return PRIMARY;
+        }
+        if (!inTransaction && readOnlyHint.get() == null) {
+            primaryRoutes.increment(); // 쓰기일 수 있다.
+            if (token != null) {
+                token.written(System.nanoTime()); // auto-commit -> sql 실행 직후 커밋, 읽기였어도 primary를 조금 더 오래 읽을 뿐이다.
+            }
+            return PRIMARY;
+        }
+
+        if (token != null && token.isRecent(maxReplicationLagNanos)) {
+            stickyReads.increment();
+            primaryRoutes.increment();
+            return PRIMARY;
+        }
+        if (replicaCount == 0) {
+            primaryRoutes.increment();
+            return PRIMARY;
+        }
+
+        replicaRoutes.increment();
+        return REPLICA + Math.floorMod(nextReplica.getAndIncrement(), replicaCount);
+    }
+
+    public long getPrimaryRouteCount() {
+        return primaryRoutes.sum();
+    }
+
+    public long getReplicaRouteCount() {
+        return replicaRoutes.sum();
+    }
+
+    /**
+     * 세션 토큰 때문에 primary로 보낸 읽기 수
+     */
+    public long getStickyReadCount() {
+        return stickyReads.sum();
+    }
+
+    public interface Session extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * 세션 별 일관성 토큰 (같은 JVM의 HTTP 세션 등에 보관)
+     * 마지막 쓰기 커밋 시각(System.nanoTime())만 기록한다. -> 다른 JVM에서는 비교할 수 없다.
+     * 커밋 후 maxReplicationLag 동안 primary로 보내는 시간 기반 추정이다. (replica가 따라왔는지 확인하지 않는다.)
+     */
+    public static class ConsistencyToken {
+
+        private volatile long lastWriteNanos;
+        private volatile boolean written;
+
+        void written(long nanos) {
+            lastWriteNanos = nanos;
+            written = true;
+        }
+
+        boolean isRecent(long maxLagNanos) {
+            return written && System.nanoTime() - lastWriteNanos < maxLagNanos;
+        }
+
+        public boolean hasWritten() {
+            return written;
+        }
+    }
+}
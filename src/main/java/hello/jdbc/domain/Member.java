@@ -2,11 +2,16 @@ package hello.jdbc.domain;
 
 import lombok.Data;
 
+/**
+ * version: 낙관적 락용 버전, 잔액을 바꾸는 모든 update가 1씩 올린다.
+ * alter table member add column version bigint default 0 not null
+ */
 @Data
 public class Member {
 
     private String memberId;
     private int money;
+    private long version;
 
     public Member() {
     }
@@ -15,4 +20,10 @@ public class Member {
         this.memberId = memberId;
         this.money = money;
     }
+
+    public Member(String memberId, int money, long version) {
+        this.memberId = memberId;
+        this.money = money;
+        this.version = version;
+    }
 }
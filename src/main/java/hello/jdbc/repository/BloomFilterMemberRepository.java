@@ -0,0 +1,346 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.support.ScalableBloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * member_id 블룸 필터로 "확실히 없는" 회원 조회를 DB에 가지 않고 처리하는 MemberRepository 데코레이터
+ *
+ * - findById: 필터에 없으면 바로 NoSuchElementException
+ * - findByIdOptional, findMoney, findByIdForUpdate: 필터에 없으면 바로 empty
+ * - findAllById: 필터에 없는 id는 DB에 묻지 않고 missingIds로
+ * - update, incrementMoney, debitIfSufficient: 필터에 없으면 DB에 가지 않는다. (어차피 변경 0건)
+ * - save: 필터에 있어도 "있을 수도 있음"일 뿐이므로 DB에 그대로 보낸다.
+ *   -> 키 중복 복구 시 isDefinitelyAbsent()로 확실히 없는 새 id를 고르면 재시도가 다시 실패하지 않는다.
+ *
+ * 필터 관리
+ * - rebuild(): 테이블 전체를 스캔해서 새 필터를 만든 후 교체 (빈으로 등록하면 afterPropertiesSet()에서 실행)
+ *   첫 rebuild() 전에는 필터를 쓰지 않고 모두 delegate에 위임
+ * - save: DB 저장 "전에" 필터에 추가 -> 저장된 행이 필터에 없는 순간이 없다. (실패해도 오탐이 하나 늘 뿐)
+ *   커밋 후(트랜잭션 밖이면 저장 후)에 한 번 더 추가 -> 저장 도중 rebuild()가 끝나도 새 필터에 남는다.
+ * - delete: 블룸 필터는 삭제가 안된다. 삭제가 rebuildAfterDeletes건 쌓이면 백그라운드에서 rebuild()
+ *
+ * 주의: 모든 회원 추가가 이 리포지토리를 거칠 때만 정확하다. (다른 프로세스가 직접 insert하면 rebuild() 필요)
+ */
+@Slf4j
+public class BloomFilterMemberRepository extends ForwardingMemberRepository implements InitializingBean {
+
+    public static final int DEFAULT_REBUILD_AFTER_DELETES = 10_000;
+
+    private final long expectedInsertions;
+    private final double fpp;
+    private final long rebuildAfterDeletes;
+    private final Executor rebuildExecutor;
+
+    private volatile ScalableBloomFilter filter; // null이면 아직 준비 안됨
+    private volatile ScalableBloomFilter building; // rebuild() 중인 새 필터
+
+    private final AtomicLong deletesSinceRebuild = new AtomicLong();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    private final AtomicLong definiteMisses = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    public BloomFilterMemberRepository(MemberRepository delegate, long expectedInsertions, double fpp) {
+        this(delegate, expectedInsertions, fpp, DEFAULT_REBUILD_AFTER_DELETES, ForkJoinPool.commonPool());
+    }
+
+    public BloomFilterMemberRepository(MemberRepository delegate, long expectedInsertions, double fpp,
+                                       long rebuildAfterDeletes, Executor rebuildExecutor) {
+        super(delegate);
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.rebuildAfterDeletes = rebuildAfterDeletes;
+        this.rebuildExecutor = rebuildExecutor;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        rebuild();
+    }
+
+    /**
+     * 테이블 전체 스캔으로 필터를 새로 만든다.
+     * 스캔 중에 추가되는 id는 새 필터에도 같이 넣는다.
+     */
+    public synchronized void rebuild() {
+        long deletes = deletesSinceRebuild.get();
+        ScalableBloomFilter next = new ScalableBloomFilter(expectedInsertions, fpp);
+        building = next;
+        try {
+            delegate.scanAll(member -> next.put(member.getMemberId()));
+            filter = next;
+            deletesSinceRebuild.addAndGet(-deletes);
+            rebuilds.incrementAndGet();
+            log.info("member bloom filter rebuilt insertions={}, memoryBytes={}, expectedFpp={}",
+                    next.getInsertions(), next.getMemoryBytes(), next.getExpectedFpp());
+        } finally {
+            building = null;
+        }
+    }
+
+    /**
+     * true면 이 id의 회원은 확실히 없다.
+     * false는 "있을 수도 있음" (필터 준비 전이면 항상 false)
+     */
+    public boolean isDefinitelyAbsent(String memberId) {
+        ScalableBloomFilter current = filter;
+        return current != null && !current.mightContain(memberId);
+    }
+
+    @Override
+    public Member save(Member member) {
+        List<String> memberIds = List.of(member.getMemberId());
+        boolean afterCommit = remember(memberIds);
+        Member saved = delegate.save(member);
+        if (!afterCommit) {
+            add(memberIds);
+        }
+        return saved;
+    }
+
+    @Override
+    public int[] saveAll(List<Member> members, int batchSize) {
+        List<String> memberIds = members.stream().map(Member::getMemberId).toList();
+        boolean afterCommit = remember(memberIds);
+        int[] counts = delegate.saveAll(members, batchSize);
+        if (!afterCommit) {
+            add(memberIds);
+        }
+        return counts;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (isDefinitelyAbsent(memberId)) {
+            definiteMisses.incrementAndGet();
+            throw new NoSuchElementException("없는 회원 memberId=" + memberId);
+        }
+        try {
+            return delegate.findById(memberId);
+        } catch (NoSuchElementException | EmptyResultDataAccessException e) {
+            falsePositives.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<Member> findByIdOptional(String memberId) {
+        if (isDefinitelyAbsent(memberId)) {
+            definiteMisses.incrementAndGet();
+            return Optional.empty();
+        }
+        Optional<Member> member = delegate.findByIdOptional(memberId);
+        if (member.isEmpty()) {
+            falsePositives.incrementAndGet();
+        }
+        return member;
+    }
+
+    @Override
+    public OptionalInt findMoney(String memberId) {
+        if (isDefinitelyAbsent(memberId)) {
+            definiteMisses.incrementAndGet();
+            return OptionalInt.empty();
+        }
+        OptionalInt money = delegate.findMoney(memberId);
+        if (money.isEmpty()) {
+            falsePositives.incrementAndGet();
+        }
+        return money;
+    }
+
+    @Override
+    public Optional<Member> findByIdForUpdate(String memberId) {
+        if (isDefinitelyAbsent(memberId)) {
+            definiteMisses.incrementAndGet();
+            return Optional.empty();
+        }
+        return delegate.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public MemberLookupResult findAllById(Collection<String> memberIds) {
+        Set<String> ids = new LinkedHashSet<>(memberIds);
+        List<String> candidates = new ArrayList<>(ids.size());
+        for (String memberId : ids) {
+            if (isDefinitelyAbsent(memberId)) {
+                definiteMisses.incrementAndGet();
+            } else {
+                candidates.add(memberId);
+            }
+        }
+
+        Map<String, Member> found = new HashMap<>();
+        if (!candidates.isEmpty()) {
+            for (Member member : delegate.findAllById(candidates).getMembers()) {
+                found.put(member.getMemberId(), member);
+            }
+            falsePositives.addAndGet(candidates.size() - found.size());
+        }
+        return MemberLookupResult.of(ids, found);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        if (isDefinitelyAbsent(memberId)) {
+            definiteMisses.incrementAndGet();
+            return;
+        }
+        delegate.update(memberId, money);
+    }
+
+    @Override
+    public boolean incrementMoney(String memberId, int delta) {
+        if (isDefinitelyAbsent(memberId)) {
+            definiteMisses.incrementAndGet();
+            return false;
+        }
+        return delegate.incrementMoney(memberId, delta);
+    }
+
+    @Override
+    public boolean updateIfVersion(String memberId, int money, long expectedVersion) {
+        if (isDefinitelyAbsent(memberId)) {
+            definiteMisses.incrementAndGet();
+            return false;
+        }
+        return delegate.updateIfVersion(memberId, money, expectedVersion);
+    }
+
+    @Override
+    public boolean debitIfSufficient(String memberId, int amount) {
+        if (isDefinitelyAbsent(memberId)) {
+            definiteMisses.incrementAndGet();
+            return false;
+        }
+        return delegate.debitIfSufficient(memberId, amount);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        delegate.delete(memberId);
+        deleted(1);
+    }
+
+    @Override
+    public int[] deleteAll(List<String> memberIds, int batchSize) {
+        int[] counts = delegate.deleteAll(memberIds, batchSize);
+        deleted(memberIds.size());
+        return counts;
+    }
+
+    /**
+     * 설정한 목표 오탐률
+     */
+    public double getFpp() {
+        return fpp;
+    }
+
+    /**
+     * 현재 필터의 예상 오탐률 (삭제된 id가 쌓이거나 단계가 늘어나면 올라간다)
+     */
+    public double getExpectedFpp() {
+        ScalableBloomFilter current = filter;
+        return current == null ? 0 : current.getExpectedFpp();
+    }
+
+    public long getMemoryBytes() {
+        ScalableBloomFilter current = filter;
+        return current == null ? 0 : current.getMemoryBytes();
+    }
+
+    public long getInsertions() {
+        ScalableBloomFilter current = filter;
+        return current == null ? 0 : current.getInsertions();
+    }
+
+    /**
+     * DB에 가지 않고 처리한 조회/변경 수
+     */
+    public long getDefiniteMissCount() {
+        return definiteMisses.get();
+    }
+
+    /**
+     * 필터는 있다고 했지만 DB에 없던 조회 수
+     */
+    public long getFalsePositiveCount() {
+        return falsePositives.get();
+    }
+
+    public long getRebuildCount() {
+        return rebuilds.get();
+    }
+
+    /**
+     * @return 커밋 후 추가를 등록했으면 true, 트랜잭션 밖이면 false (호출자가 저장 후 다시 add)
+     */
+    private boolean remember(Collection<String> memberIds) {
+        add(memberIds);
+
+        //스캔이 커밋 전에 지나갔을 수 있으므로 커밋 후 한 번 더 (rebuild() 중인 새 필터용)
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                add(memberIds);
+            }
+        });
+        return true;
+    }
+
+    private void add(Collection<String> memberIds) {
+        //building을 먼저 읽는다. -> null이면 rebuild() 시작 전(스캔이 이 행을 본다)이거나 교체가 끝난 후(filter가 새 필터)
+        ScalableBloomFilter next = building;
+        ScalableBloomFilter current = filter;
+        for (String memberId : memberIds) {
+            if (current != null) {
+                current.put(memberId);
+            }
+            if (next != null) {
+                next.put(memberId);
+            }
+        }
+    }
+
+    private void deleted(int count) {
+        if (deletesSinceRebuild.addAndGet(count) < rebuildAfterDeletes || filter == null) {
+            return;
+        }
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> {
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    log.error("member bloom filter rebuild failed", e);
+                } finally {
+                    rebuildScheduled.set(false);
+                }
+            });
+        }
+    }
+}
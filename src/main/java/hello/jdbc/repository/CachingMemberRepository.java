@@ -0,0 +1,226 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.support.LocalCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * findById 조회 결과를 캐시하는 MemberRepository 데코레이터
+ *
+ * 트랜잭션 인지
+ * - 스프링 트랜잭션(DataSourceUtils로 커넥션을 묶는) 안에서 변경한 회원은 커밋 후에만 캐시에서 무효화한다.
+ *   (TransactionSynchronization.afterCommit) -> 롤백되면 캐시는 건드리지 않는다.
+ * - 트랜잭션 안에서 변경한 회원은 그 트랜잭션이 끝날 때까지 캐시를 거치지 않고 DB에서 조회한다.
+ *   -> 커밋 전 값이 캐시에 들어가지 않고, 자기 변경은 자기가 볼 수 있다.
+ * - 트랜잭션 밖의 변경은 바로 무효화
+ * - 변경한 회원 목록은 트랜잭션 별로 따로 -> REQUIRES_NEW로 보류되면 같이 unbind, 재개되면 다시 bind
+ *
+ * 캐시된 Member는 복사해서 돌려준다. (호출한 쪽에서 값을 바꿔도 캐시는 그대로)
+ */
+@Slf4j
+public class CachingMemberRepository extends ForwardingMemberRepository {
+
+    private final LocalCache<String, Member> cache;
+    private final Object dirtyKeysResource = new Object(); // 트랜잭션 리소스 키
+
+    public CachingMemberRepository(MemberRepository delegate, int maxSize, Duration ttl, Duration refreshAfter) {
+        this(delegate, new LocalCache<>(maxSize, ttl, refreshAfter));
+    }
+
+    public CachingMemberRepository(MemberRepository delegate, LocalCache<String, Member> cache) {
+        super(delegate);
+        this.cache = cache;
+    }
+
+    public LocalCache<String, Member> getCache() {
+        return cache;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (isDirty(memberId)) {
+            return delegate.findById(memberId);
+        }
+        return copy(cache.get(memberId, delegate::findById));
+    }
+
+    @Override
+    public Optional<Member> findByIdOptional(String memberId) {
+        if (isDirty(memberId)) {
+            return delegate.findByIdOptional(memberId);
+        }
+        //없는 회원은 캐시하지 않는다. (loader가 null 반환)
+        Member member = cache.get(memberId, id -> delegate.findByIdOptional(id).orElse(null));
+        return member == null ? Optional.empty() : Optional.of(copy(member));
+    }
+
+    @Override
+    public OptionalInt findMoney(String memberId) {
+        if (isDirty(memberId)) {
+            return delegate.findMoney(memberId);
+        }
+        Member member = cache.get(memberId, id -> delegate.findByIdOptional(id).orElse(null));
+        return member == null ? OptionalInt.empty() : OptionalInt.of(member.getMoney());
+    }
+
+    @Override
+    public MemberLookupResult findAllById(Collection<String> memberIds) {
+        Set<String> ids = new LinkedHashSet<>(memberIds);
+        if (ids.stream().anyMatch(this::isDirty)) {
+            return delegate.findAllById(ids);
+        }
+
+        Map<String, Member> found = cache.getAll(ids, missingIds -> {
+            Map<String, Member> loaded = new HashMap<>();
+            for (Member member : delegate.findAllById(missingIds).getMembers()) {
+                loaded.put(member.getMemberId(), member);
+            }
+            return loaded;
+        });
+        found.replaceAll((memberId, member) -> copy(member));
+        return MemberLookupResult.of(ids, found);
+    }
+
+    @Override
+    public Member save(Member member) {
+        return write(List.of(member.getMemberId()), () -> delegate.save(member));
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        write(List.of(memberId), () -> {
+            delegate.update(memberId, money);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean incrementMoney(String memberId, int delta) {
+        return write(List.of(memberId), () -> delegate.incrementMoney(memberId, delta));
+    }
+
+    @Override
+    public boolean updateIfVersion(String memberId, int money, long expectedVersion) {
+        return write(List.of(memberId), () -> delegate.updateIfVersion(memberId, money, expectedVersion));
+    }
+
+    @Override
+    public boolean debitIfSufficient(String memberId, int amount) {
+        return write(List.of(memberId), () -> delegate.debitIfSufficient(memberId, amount));
+    }
+
+    @Override
+    public void delete(String memberId) {
+        write(List.of(memberId), () -> {
+            delegate.delete(memberId);
+            return null;
+        });
+    }
+
+    @Override
+    public int[] saveAll(List<Member> members, int batchSize) {
+        return write(memberIds(members), () -> delegate.saveAll(members, batchSize));
+    }
+
+    @Override
+    public int[] updateAll(List<Member> members, int batchSize) {
+        return write(memberIds(members), () -> delegate.updateAll(members, batchSize));
+    }
+
+    @Override
+    public int[] incrementMoneyAll(List<String> memberIds, long[] deltas, int batchSize) {
+        return write(memberIds, () -> delegate.incrementMoneyAll(memberIds, deltas, batchSize));
+    }
+
+    @Override
+    public int[] deleteAll(List<String> memberIds, int batchSize) {
+        return write(memberIds, () -> delegate.deleteAll(memberIds, batchSize));
+    }
+
+    /**
+     * 변경 실행 후 무효화
+     * 트랜잭션 안이면 커밋 후 무효화 예약, 밖이면 바로 무효화
+     * 실패해도(배치가 중간까지 커밋됐을 수 있다) 무효화한다.
+     */
+    private <T> T write(Collection<String> memberIds, Supplier<T> action) {
+        try {
+            return action.get();
+        } finally {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                dirtyKeys(true).addAll(memberIds);
+            } else {
+                cache.invalidateAll(memberIds);
+            }
+        }
+    }
+
+    private List<String> memberIds(List<Member> members) {
+        return members.stream().map(Member::getMemberId).toList();
+    }
+
+    private boolean isDirty(String memberId) {
+        Set<String> dirtyKeys = dirtyKeys(false);
+        return dirtyKeys != null && dirtyKeys.contains(memberId);
+    }
+
+    /**
+     * 현재 트랜잭션에서 변경한 회원 id
+     * 처음 변경할 때 트랜잭션 리소스로 묶고, 커밋 후 무효화 콜백을 등록한다.
+     * 트랜잭션이 보류되면 리소스도 풀어서 안쪽 트랜잭션은 자기 목록을 따로 만든다.
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> dirtyKeys(boolean create) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+
+        Set<String> dirtyKeys = (Set<String>) TransactionSynchronizationManager.getResource(dirtyKeysResource);
+        if (dirtyKeys != null || !create) {
+            return dirtyKeys;
+        }
+
+        Set<String> newDirtyKeys = new HashSet<>();
+        TransactionSynchronizationManager.bindResource(dirtyKeysResource, newDirtyKeys);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResource(dirtyKeysResource);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(dirtyKeysResource, newDirtyKeys);
+            }
+
+            @Override
+            public void afterCommit() {
+                log.debug("invalidate after commit memberIds={}", newDirtyKeys);
+                cache.invalidateAll(newDirtyKeys);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(dirtyKeysResource);
+            }
+        });
+        return newDirtyKeys;
+    }
+
+    private Member copy(Member member) {
+        return member == null ? null : new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+}
@@ -0,0 +1,113 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * MemberRepository 데코레이터의 기본 클래스
+ * 모든 메서드를 delegate에 위임한다. -> 하위 클래스는 부가 기능이 필요한 메서드만 재정의
+ */
+public abstract class ForwardingMemberRepository implements MemberRepository {
+
+    protected final MemberRepository delegate;
+
+    protected ForwardingMemberRepository(MemberRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Member save(Member member) {
+        return delegate.save(member);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        return delegate.findById(memberId);
+    }
+
+    @Override
+    public Optional<Member> findByIdOptional(String memberId) {
+        return delegate.findByIdOptional(memberId);
+    }
+
+    @Override
+    public OptionalInt findMoney(String memberId) {
+        return delegate.findMoney(memberId);
+    }
+
+    @Override
+    public Optional<Member> findByIdForUpdate(String memberId) {
+        return delegate.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public MemberLookupResult findAllById(Collection<String> memberIds) {
+        return delegate.findAllById(memberIds);
+    }
+
+    @Override
+    public List<Member> findPageAfter(String lastMemberId, int limit) {
+        return delegate.findPageAfter(lastMemberId, limit);
+    }
+
+    @Override
+    public Stream<Member> streamAll(int fetchSize) {
+        return delegate.streamAll(fetchSize);
+    }
+
+    @Override
+    public void scanAll(int fetchSize, Consumer<Member> action) {
+        delegate.scanAll(fetchSize, action);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        delegate.update(memberId, money);
+    }
+
+    @Override
+    public boolean incrementMoney(String memberId, int delta) {
+        return delegate.incrementMoney(memberId, delta);
+    }
+
+    @Override
+    public boolean updateIfVersion(String memberId, int money, long expectedVersion) {
+        return delegate.updateIfVersion(memberId, money, expectedVersion);
+    }
+
+    @Override
+    public boolean debitIfSufficient(String memberId, int amount) {
+        return delegate.debitIfSufficient(memberId, amount);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        delegate.delete(memberId);
+    }
+
+    @Override
+    public int[] saveAll(List<Member> members, int batchSize) {
+        return delegate.saveAll(members, batchSize);
+    }
+
+    @Override
+    public int[] updateAll(List<Member> members, int batchSize) {
+        return delegate.updateAll(members, batchSize);
+    }
+
+    @Override
+    public int[] incrementMoneyAll(List<String> memberIds, long[] deltas, int batchSize) {
+        return delegate.incrementMoneyAll(memberIds, deltas, batchSize);
+    }
+
+    @Override
+    public int[] deleteAll(List<String> memberIds, int batchSize) {
+        return delegate.deleteAll(memberIds, batchSize);
+    }
+}
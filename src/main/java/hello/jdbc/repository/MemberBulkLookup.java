@@ -0,0 +1,173 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 여러 member_id를 한 번에 조회하는 쿼리 모음
+ * 커넥션 획득/반납과 예외 변환은 각 리포지토리가 담당하고, 여기서는 전달받은 커넥션만 사용한다.
+ *
+ * id 개수 <= TEMP_TABLE_THRESHOLD : IN_LIST_MAX_SIZE 단위로 나눈 IN (...) 쿼리
+ * id 개수 >  TEMP_TABLE_THRESHOLD : 세션 임시 테이블에 id를 배치 insert 후 join
+ */
+@Slf4j
+final class MemberBulkLookup {
+
+    /**
+     * IN (...) 하나에 넣을 최대 id 수
+     */
+    static final int IN_LIST_MAX_SIZE = 500;
+
+    /**
+     * 이 개수를 넘으면 임시 테이블 + join으로 조회
+     */
+    static final int TEMP_TABLE_THRESHOLD = 5000;
+
+    private static final String TEMP_TABLE = "member_lookup_tmp";
+
+    private MemberBulkLookup() {
+    }
+
+    /**
+     * @return member_id -> Member (없는 id는 포함되지 않는다)
+     */
+    static Map<String, Member> find(Connection con, Collection<String> memberIds) throws SQLException {
+        Map<String, Member> found = new HashMap<>(memberIds.size() * 2);
+        if (memberIds.isEmpty()) {
+            return found;
+        }
+
+        if (memberIds.size() > TEMP_TABLE_THRESHOLD) {
+            findByTempTable(con, memberIds, found);
+        } else {
+            findByInList(con, memberIds, found);
+        }
+        log.info("findAllById requested={} found={}", memberIds.size(), found.size());
+        return found;
+    }
+
+    private static void findByInList(Connection con, Collection<String> memberIds, Map<String, Member> found) throws SQLException {
+        List<String> ids = new ArrayList<>(memberIds);
+
+        // 꽉 찬 청크는 같은 sql이므로 PreparedStatement 하나를 재사용
+        PreparedStatement fullChunk = null;
+        try {
+            for (int from = 0; from < ids.size(); from += IN_LIST_MAX_SIZE) {
+                List<String> chunk = ids.subList(from, Math.min(from + IN_LIST_MAX_SIZE, ids.size()));
+
+                if (chunk.size() == IN_LIST_MAX_SIZE) {
+                    if (fullChunk == null) {
+                        fullChunk = con.prepareStatement(inListSql(IN_LIST_MAX_SIZE));
+                    }
+                    query(fullChunk, chunk, found);
+                } else {
+                    PreparedStatement lastChunk = con.prepareStatement(inListSql(chunk.size()));
+                    try {
+                        query(lastChunk, chunk, found);
+                    } finally {
+                        JdbcUtils.closeStatement(lastChunk);
+                    }
+                }
+            }
+        } finally {
+            JdbcUtils.closeStatement(fullChunk);
+        }
+    }
+
+    /**
+     * TRANSACTIONAL 임시 테이블은 생성 시 진행 중인 트랜잭션을 커밋하지 않는다.
+     * -> DataSourceUtils로 트랜잭션 커넥션을 받아와도 안전하게 사용 가능
+     */
+    private static void findByTempTable(Connection con, Collection<String> memberIds, Map<String, Member> found) throws SQLException {
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            pstmt = con.prepareStatement("create local temporary table if not exists " + TEMP_TABLE
+                    + "(member_id varchar(255) primary key) transactional");
+            pstmt.executeUpdate();
+            JdbcUtils.closeStatement(pstmt);
+
+            pstmt = con.prepareStatement("insert into " + TEMP_TABLE + "(member_id) values(?)");
+            int pending = 0;
+            for (String memberId : memberIds) {
+                pstmt.setString(1, memberId);
+                pstmt.addBatch();
+                if (++pending == MemberRepository.DEFAULT_BATCH_SIZE) {
+                    pstmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                pstmt.executeBatch();
+            }
+            JdbcUtils.closeStatement(pstmt);
+
+            pstmt = con.prepareStatement("select m.* from member m join " + TEMP_TABLE + " t on m.member_id = t.member_id");
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                Member member = mapMember(rs);
+                found.put(member.getMemberId(), member);
+            }
+        } finally {
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(pstmt);
+            clearTempTable(con);
+        }
+    }
+
+    private static void clearTempTable(Connection con) {
+        PreparedStatement pstmt = null;
+        try {
+            pstmt = con.prepareStatement("delete from " + TEMP_TABLE);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            log.error("error", e);
+        } finally {
+            JdbcUtils.closeStatement(pstmt);
+        }
+    }
+
+    private static void query(PreparedStatement pstmt, List<String> chunk, Map<String, Member> found) throws SQLException {
+        for (int i = 0; i < chunk.size(); i++) {
+            pstmt.setString(i + 1, chunk.get(i));
+        }
+
+        ResultSet rs = pstmt.executeQuery();
+        try {
+            while (rs.next()) {
+                Member member = mapMember(rs);
+                found.put(member.getMemberId(), member);
+            }
+        } finally {
+            JdbcUtils.closeResultSet(rs);
+        }
+    }
+
+    private static String inListSql(int size) {
+        StringBuilder sql = new StringBuilder("select * from member where member_id in (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(")").toString();
+    }
+
+    private static Member mapMember(ResultSet rs) throws SQLException {
+        Member member = new Member();
+        member.setMemberId(rs.getString("member_id"));
+        member.setMoney(rs.getInt("money"));
+        member.setVersion(rs.getLong("version"));
+        return member;
+    }
+}
@@ -0,0 +1,73 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 열려있는 ResultSet을 한 row씩 읽어서 Member로 넘겨주는 Stream
+ * 메모리에는 현재 row(와 드라이버의 fetchSize 만큼의 버퍼)만 올라간다.
+ *
+ * 끝까지 읽거나, 예외가 나거나, Stream.close() 하면 closeAction으로 자원을 정리한다.
+ * closeAction은 한 번만 실행된다.
+ */
+final class MemberCursor extends Spliterators.AbstractSpliterator<Member> {
+
+    private final ResultSet rs;
+    private final Function<SQLException, RuntimeException> exceptionTranslator;
+    private final Runnable closeAction;
+    private boolean closed;
+
+    private MemberCursor(ResultSet rs, Function<SQLException, RuntimeException> exceptionTranslator, Runnable closeAction) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.rs = rs;
+        this.exceptionTranslator = exceptionTranslator;
+        this.closeAction = closeAction;
+    }
+
+    static Stream<Member> stream(ResultSet rs, Function<SQLException, RuntimeException> exceptionTranslator, Runnable closeAction) {
+        MemberCursor cursor = new MemberCursor(rs, exceptionTranslator, closeAction);
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Member> action) {
+        if (closed) {
+            return false;
+        }
+
+        try {
+            if (!rs.next()) {
+                close(); // 다 읽었으면 바로 커넥션 반납
+                return false;
+            }
+            action.accept(mapMember(rs));
+            return true;
+        } catch (SQLException e) {
+            close();
+            throw exceptionTranslator.apply(e);
+        }
+    }
+
+    private void close() {
+        if (!closed) {
+            closed = true;
+            closeAction.run();
+        }
+    }
+
+    private Member mapMember(ResultSet rs) throws SQLException {
+        Member member = new Member();
+        member.setMemberId(rs.getString("member_id"));
+        member.setMoney(rs.getInt("money"));
+        member.setVersion(rs.getLong("version"));
+        return member;
+    }
+}
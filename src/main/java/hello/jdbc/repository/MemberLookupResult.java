@@ -0,0 +1,60 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * findAllById 조회 결과
+ * 찾은 회원과 찾지 못한 id를 같이 돌려준다. -> id 마다 NoSuchElementException을 던지지 않는다.
+ */
+public class MemberLookupResult {
+
+    @Getter
+    private final List<Member> members;
+    @Getter
+    private final Set<String> missingIds;
+
+    private final Map<String, Member> memberMap;
+
+    private MemberLookupResult(List<Member> members, Set<String> missingIds, Map<String, Member> memberMap) {
+        this.members = members;
+        this.missingIds = missingIds;
+        this.memberMap = memberMap;
+    }
+
+    /**
+     * @param requestedIds 요청 id (요청 순서 유지, 중복 제거된 상태)
+     * @param found        조회된 회원 (member_id -> Member)
+     */
+    static MemberLookupResult of(Collection<String> requestedIds, Map<String, Member> found) {
+        List<Member> members = new ArrayList<>(found.size());
+        Set<String> missingIds = new LinkedHashSet<>();
+
+        for (String memberId : requestedIds) {
+            Member member = found.get(memberId);
+            if (member == null) {
+                missingIds.add(memberId);
+            } else {
+                members.add(member);
+            }
+        }
+        return new MemberLookupResult(Collections.unmodifiableList(members), Collections.unmodifiableSet(missingIds),
+                Collections.unmodifiableMap(found));
+    }
+
+    public Member get(String memberId) {
+        return memberMap.get(memberId);
+    }
+
+    public boolean hasMissing() {
+        return !missingIds.isEmpty();
+    }
+}
@@ -2,13 +2,141 @@ package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
 public interface MemberRepository {
 
+    /**
+     * 배치 처리 시 한 번에 executeBatch() 할 기본 row 수
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * 전체 조회 시 드라이버가 한 번에 가져올 기본 row 수
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
     public Member save(Member member);
 
     public Member findById(String memberId);
 
+    /**
+     * 없는 회원이면 NoSuchElementException 대신 Optional.empty()
+     * 없는 경우가 흔한 조회에서 예외 생성 비용이 없다.
+     */
+    public Optional<Member> findByIdOptional(String memberId);
+
+    /**
+     * 잔액만 조회 (select money, Member 생성 없음)
+     * @return 없는 회원이면 OptionalInt.empty()
+     */
+    public OptionalInt findMoney(String memberId);
+
+    /**
+     * 조회하면서 row 락을 건다. (select ... for update)
+     * 락은 현재 트랜잭션이 끝날 때 풀린다. -> 트랜잭션 안에서 호출해야 의미가 있다.
+     * @return 없는 회원이면 Optional.empty()
+     */
+    public Optional<Member> findByIdForUpdate(String memberId);
+
+    /**
+     * 여러 회원을 한 번의 쿼리로 조회
+     * 없는 id는 예외 대신 MemberLookupResult.getMissingIds()로 알려준다.
+     */
+    public MemberLookupResult findAllById(Collection<String> memberIds);
+
+    /**
+     * member_id 순서의 keyset(seek) 페이지 조회
+     * OFFSET 대신 member_id > lastMemberId 로 PK 인덱스를 타고 바로 찾아가므로 페이지 깊이와 상관없이 비용이 같다.
+     * lastMemberId가 null이면 첫 페이지, 다음 페이지는 이번 페이지 마지막 회원의 member_id로 조회
+     */
+    public List<Member> findPageAfter(String lastMemberId, int limit);
+
+    /**
+     * member 테이블 전체를 forward-only, read-only 커서로 순회
+     * 전체를 List로 올리지 않으므로 메모리 사용량이 일정하다.
+     * 커넥션을 붙잡고 있으므로 반드시 close() 해야 한다. -> try-with-resources 사용
+     */
+    public Stream<Member> streamAll(int fetchSize);
+
+    /**
+     * RowCallbackHandler 처럼 row 마다 action 호출, 끝나면 자원 정리까지 해준다.
+     */
+    public default void scanAll(int fetchSize, Consumer<Member> action) {
+        try (Stream<Member> members = streamAll(fetchSize)) {
+            members.forEach(action);
+        }
+    }
+
+    public default Stream<Member> streamAll() {
+        return streamAll(DEFAULT_FETCH_SIZE);
+    }
+
+    public default void scanAll(Consumer<Member> action) {
+        scanAll(DEFAULT_FETCH_SIZE, action);
+    }
+
     public void update(String memberId, int money);
 
+    /**
+     * money = money + delta
+     * 잔액 계산을 DB에서 하므로 읽고-계산하고-쓰는 사이에 다른 트랜잭션의 변경을 덮어쓰지 않는다.
+     * @return 회원이 있어서 변경되었으면 true
+     */
+    public boolean incrementMoney(String memberId, int delta);
+
+    /**
+     * 버전 비교 update (where member_id = ? and version = ?), 성공하면 version + 1
+     * 읽은 후 다른 트랜잭션이 먼저 변경했으면 버전이 달라서 아무것도 변경하지 않는다. -> 락 없이 충돌 감지
+     * @return 변경되었으면 true (버전 충돌 또는 없는 회원이면 false)
+     */
+    public boolean updateIfVersion(String memberId, int money, long expectedVersion);
+
+    /**
+     * 잔액이 amount 이상일 때만 출금 (where member_id = ? and money >= ?)
+     * @return 출금 성공 여부 (잔액 부족 또는 없는 회원이면 false)
+     */
+    public boolean debitIfSufficient(String memberId, int amount);
+
     public void delete(String memberId);
+
+    /**
+     * 여러 건을 JDBC 배치로 저장
+     * batchSize 단위로 나누어서 executeBatch() -> row 마다 왕복하지 않는다.
+     * 반환값은 row 별 update count (입력 순서와 같다)
+     */
+    public int[] saveAll(List<Member> members, int batchSize);
+
+    public int[] updateAll(List<Member> members, int batchSize);
+
+    /**
+     * 여러 회원의 잔액을 증감 (money = money + delta), JDBC 배치로 전송
+     * 잔액이 음수가 되는 회원은 변경하지 않는다. (where money + delta >= 0)
+     * @param deltas memberIds와 같은 순서의 증감액
+     * @return 회원 별 update count (0: 없는 회원 또는 잔액 부족)
+     */
+    public int[] incrementMoneyAll(List<String> memberIds, long[] deltas, int batchSize);
+
+    public default int[] incrementMoneyAll(List<String> memberIds, long[] deltas) {
+        return incrementMoneyAll(memberIds, deltas, DEFAULT_BATCH_SIZE);
+    }
+
+    public int[] deleteAll(List<String> memberIds, int batchSize);
+
+    public default int[] saveAll(List<Member> members) {
+        return saveAll(members, DEFAULT_BATCH_SIZE);
+    }
+
+    public default int[] updateAll(List<Member> members) {
+        return updateAll(members, DEFAULT_BATCH_SIZE);
+    }
+
+    public default int[] deleteAll(List<String> memberIds) {
+        return deleteAll(memberIds, DEFAULT_BATCH_SIZE);
+    }
 }
@@ -96,7 +96,7 @@ public class MemberRepositoryV0 {
      */
 
     public void update(String memberId, int money) throws SQLException {
-        String sql = "update member set money=? where member_id=?"; // sql injection 공격 막으려 바인딩
+        String sql = "update member set money=?, version=version+1 where member_id=?"; // sql injection 공격 막으려 바인딩
 
         Connection con = null;
         PreparedStatement pstmt = null;
@@ -1,7 +1,10 @@
 package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.MyDbException;
+import hello.jdbc.repository.support.StatementCache;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
 
@@ -10,7 +13,17 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * 트랜잭션 - 트랜잭션 매니저
@@ -22,9 +35,18 @@ import java.util.NoSuchElementException;
 public class MemberRepositoryV3 {
 
     private final DataSource dataSource;
+    private final StatementCache statementCache;
 
     public MemberRepositoryV3(DataSource dataSource) {
+        this(dataSource, null);
+    }
+
+    /**
+     * statementCache를 넘기면 PreparedStatement를 커넥션 별로 캐시해서 재사용한다.
+     */
+    public MemberRepositoryV3(DataSource dataSource, StatementCache statementCache) {
         this.dataSource = dataSource;
+        this.statementCache = statementCache;
     }
 
     /**
@@ -44,7 +66,7 @@ public class MemberRepositoryV3 {
 
         try {
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = prepareStatement(con, sql);
             pstmt.setString(1, member.getMemberId());
             pstmt.setInt(2, member.getMoney());
             pstmt.executeUpdate();
@@ -75,7 +97,7 @@ public class MemberRepositoryV3 {
         try {
             con = getConnection(); //커넥트 가져오기
 
-            pstmt = con.prepareStatement(sql); // 조회 sql을 pstmt가 가지고있음
+            pstmt = prepareStatement(con, sql); // 조회 sql을 pstmt가 가지고있음
             pstmt.setString(1, memberId); // 매개변수로 넘길 데이터 전달 / 첫 번째 '?'에 memberId 전달
 
             rs = pstmt.executeQuery(); // ResultSet은 데이터 조회한 결과를 담는 통 같은 거다.
@@ -99,6 +121,206 @@ public class MemberRepositoryV3 {
         }
     }
 
+    /**
+     * findById와 같지만 없는 회원이면 예외 대신 Optional.empty()
+     * 필요한 컬럼만 조회하고, 컬럼은 이름 대신 인덱스로 읽는다.
+     */
+    public Optional<Member> findByIdOptional(String memberId) throws SQLException {
+        String sql = "select member_id, money from member where member_id = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+
+            pstmt = prepareStatement(con, sql);
+            pstmt.setString(1, memberId);
+
+            rs = pstmt.executeQuery();
+            if (!rs.next()) {
+                return Optional.empty(); // 예외 생성 없음
+            }
+            return Optional.of(new Member(rs.getString(1), rs.getInt(2)));
+
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    /**
+     * 잔액만 조회 (Member를 만들지 않는다.)
+     * 없는 회원이면 OptionalInt.empty()
+     */
+    public OptionalInt findMoney(String memberId) throws SQLException {
+        String sql = "select money from member where member_id = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+
+            pstmt = prepareStatement(con, sql);
+            pstmt.setString(1, memberId);
+
+            rs = pstmt.executeQuery();
+            return rs.next() ? OptionalInt.of(rs.getInt(1)) : OptionalInt.empty();
+
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    /**
+     * 여러 회원을 한 번에 조회
+     * 커넥션 하나로 IN (...) 청크 또는 임시 테이블 join 실행 -> MemberBulkLookup
+     */
+    public MemberLookupResult findAllById(Collection<String> memberIds) throws SQLException {
+        Set<String> ids = new LinkedHashSet<>(memberIds); // 중복 제거, 요청 순서 유지
+        if (ids.isEmpty()) {
+            return MemberLookupResult.of(ids, Map.of());
+        }
+
+        Connection con = null;
+
+        try {
+            con = getConnection();
+            return MemberLookupResult.of(ids, MemberBulkLookup.find(con, ids));
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, null, null);
+        }
+    }
+
+    /**
+     * keyset 페이지 조회
+     * where member_id > ? order by member_id limit ?
+     */
+    public List<Member> findPageAfter(String lastMemberId, int limit) throws SQLException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit는 1 이상이어야 합니다. limit=" + limit);
+        }
+
+        String sql = lastMemberId == null
+                ? "select * from member order by member_id limit ?"
+                : "select * from member where member_id > ? order by member_id limit ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+
+            pstmt = prepareStatement(con, sql);
+            int index = 1;
+            if (lastMemberId != null) {
+                pstmt.setString(index++, lastMemberId);
+            }
+            pstmt.setInt(index, limit);
+
+            rs = pstmt.executeQuery();
+
+            List<Member> page = new ArrayList<>(limit);
+            while (rs.next()) {
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
+                page.add(member);
+            }
+            return page;
+
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    /**
+     * 전체 회원 스트림
+     * TYPE_FORWARD_ONLY, CONCUR_READ_ONLY 커서 + fetchSize 만큼씩 가져온다.
+     * 트랜잭션 안에서 호출하면 DataSourceUtils가 트랜잭션 커넥션을 그대로 사용하고, close() 시에도 반납하지 않는다.
+     * 스트림을 읽는 도중의 SQLException은 체크 예외로 던질 수 없으므로 MyDbException으로 감싼다.
+     */
+    public Stream<Member> streamAll(int fetchSize) throws SQLException {
+        String sql = "select * from member";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            rs = pstmt.executeQuery();
+        } catch (SQLException e) {
+            log.error("db error", e);
+            close(con, pstmt, rs);
+            throw e;
+        }
+
+        Connection cursorCon = con;
+        PreparedStatement cursorPstmt = pstmt;
+        ResultSet cursorRs = rs;
+        return MemberCursor.stream(rs, e -> new MyDbException(e), () -> close(cursorCon, cursorPstmt, cursorRs));
+    }
+
+    /**
+     * row 마다 action 호출, 끝나면 자원 정리
+     * 스트림과 달리 SQLException을 그대로 던진다.
+     */
+    public void scanAll(int fetchSize, Consumer<Member> action) throws SQLException {
+        String sql = "select * from member";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
+                action.accept(member);
+            }
+
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    public Stream<Member> streamAll() throws SQLException {
+        return streamAll(MemberRepository.DEFAULT_FETCH_SIZE);
+    }
+
+    public void scanAll(Consumer<Member> action) throws SQLException {
+        scanAll(MemberRepository.DEFAULT_FETCH_SIZE, action);
+    }
+
     /**
      * update sql 작성
      * Connection con, PreparedStatement pstmt
@@ -110,7 +332,7 @@ public class MemberRepositoryV3 {
      */
 
     public void update(String memberId, int money) throws SQLException {
-        String sql = "update member set money=? where member_id=?"; // sql injection 공격 막으려 바인딩
+        String sql = "update member set money=?, version=version+1 where member_id=?"; // sql injection 공격 막으려 바인딩
 
         Connection con = null;
         PreparedStatement pstmt = null;
@@ -118,7 +340,7 @@ public class MemberRepositoryV3 {
         try {
             con = getConnection();
 
-            pstmt = con.prepareStatement(sql);
+            pstmt = prepareStatement(con, sql);
             pstmt.setInt(1, money); // sql injection 공격 막으려 바인딩
             pstmt.setString(2, memberId); // sql injection 공격 막으려 바인딩
 
@@ -151,7 +373,7 @@ public class MemberRepositoryV3 {
         try {
             con = getConnection();
 
-            pstmt = con.prepareStatement(sql);
+            pstmt = prepareStatement(con, sql);
             pstmt.setString(1, memberId);
 
             pstmt.executeUpdate();
@@ -165,6 +387,95 @@ public class MemberRepositoryV3 {
         }
     }
 
+    /**
+     * 배치 저장/수정/삭제
+     * 하나의 PreparedStatement에 addBatch()로 모아두고 batchSize 마다 executeBatch()
+     * 트랜잭션 밖에서 호출하면 청크 단위로 커밋된다. -> 전체 원자성이 필요하면 트랜잭션 안에서 호출
+     */
+    public int[] saveAll(List<Member> members, int batchSize) throws SQLException {
+        String sql = "insert into member(member_id, money) values(?, ?)";
+
+        return batchUpdate("saveAll", sql, members, batchSize, (pstmt, member) -> {
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+        });
+    }
+
+    public int[] updateAll(List<Member> members, int batchSize) throws SQLException {
+        String sql = "update member set money=?, version=version+1 where member_id=?";
+
+        return batchUpdate("updateAll", sql, members, batchSize, (pstmt, member) -> {
+            pstmt.setInt(1, member.getMoney());
+            pstmt.setString(2, member.getMemberId());
+        });
+    }
+
+    public int[] deleteAll(List<String> memberIds, int batchSize) throws SQLException {
+        String sql = "delete from member where member_id=?";
+
+        return batchUpdate("deleteAll", sql, memberIds, batchSize, (pstmt, memberId) -> pstmt.setString(1, memberId));
+    }
+
+    public int[] saveAll(List<Member> members) throws SQLException {
+        return saveAll(members, MemberRepository.DEFAULT_BATCH_SIZE);
+    }
+
+    public int[] updateAll(List<Member> members) throws SQLException {
+        return updateAll(members, MemberRepository.DEFAULT_BATCH_SIZE);
+    }
+
+    public int[] deleteAll(List<String> memberIds) throws SQLException {
+        return deleteAll(memberIds, MemberRepository.DEFAULT_BATCH_SIZE);
+    }
+
+    private <T> int[] batchUpdate(String task, String sql, List<T> items, int batchSize,
+                                  ParameterizedPreparedStatementSetter<T> setter) throws SQLException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize는 1 이상이어야 합니다. batchSize=" + batchSize);
+        }
+
+        int[] result = new int[items.size()];
+        if (items.isEmpty()) {
+            return result;
+        }
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection();
+            pstmt = prepareStatement(con, sql);
+
+            int pending = 0;
+            int offset = 0;
+            for (T item : items) {
+                setter.setValues(pstmt, item);
+                pstmt.addBatch();
+
+                if (++pending == batchSize) {
+                    offset = copyCounts(pstmt.executeBatch(), result, offset);
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                copyCounts(pstmt.executeBatch(), result, offset);
+            }
+            log.info("task={} batchSize={} resultSize={}", task, batchSize, result.length);
+            return result;
+
+        } catch (SQLException e) {
+            log.error("db error", e);
+            throw e;
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    private int copyCounts(int[] counts, int[] result, int offset) {
+        System.arraycopy(counts, 0, result, offset, counts.length);
+        return offset + counts.length;
+    }
+
 
     private Connection getConnection() throws SQLException {
 
@@ -176,11 +487,26 @@ public class MemberRepositoryV3 {
 //        return DBConnectionUtil.getConnection();
     }
 
+    private PreparedStatement prepareStatement(Connection con, String sql) throws SQLException {
+        if (statementCache == null) {
+            return con.prepareStatement(sql);
+        }
+        return statementCache.prepare(con, sql); // 캐시된 Statement 재사용
+    }
+
     private void close(Connection con, PreparedStatement pstmt, ResultSet rs) {
         JdbcUtils.closeResultSet(rs);
-        JdbcUtils.closeStatement(pstmt);
+        closeStatement(pstmt);
         DataSourceUtils.releaseConnection(con, dataSource); // 트랜잭션을 사용하는 커넥션이면 연결을 끊고, 아니면 그냥 둔다.
 //        JdbcUtils.closeConnection(con);
 
     }
+
+    private void closeStatement(PreparedStatement pstmt) {
+        if (statementCache == null) {
+            JdbcUtils.closeStatement(pstmt);
+        } else {
+            statementCache.release(pstmt); // 캐시된 Statement는 닫지 않고 반납
+        }
+    }
 }
@@ -2,7 +2,9 @@ package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
 import hello.jdbc.repository.ex.MyDbException;
+import hello.jdbc.repository.support.StatementCache;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
 
@@ -11,7 +13,16 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * 예외 누수 문제 해결
@@ -25,9 +36,18 @@ import java.util.NoSuchElementException;
 public class MemberRepositoryV4_1 implements MemberRepository{
 
     private final DataSource dataSource;
+    private final StatementCache statementCache;
 
     public MemberRepositoryV4_1(DataSource dataSource) {
+        this(dataSource, null);
+    }
+
+    /**
+     * statementCache를 넘기면 PreparedStatement를 커넥션 별로 캐시해서 재사용한다.
+     */
+    public MemberRepositoryV4_1(DataSource dataSource, StatementCache statementCache) {
         this.dataSource = dataSource;
+        this.statementCache = statementCache;
     }
 
     /**
@@ -47,7 +67,7 @@ public class MemberRepositoryV4_1 implements MemberRepository{
 
         try {
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = prepareStatement(con, sql);
             pstmt.setString(1, member.getMemberId());
             pstmt.setInt(2, member.getMoney());
             pstmt.executeUpdate();
@@ -78,7 +98,7 @@ public class MemberRepositoryV4_1 implements MemberRepository{
         try {
             con = getConnection(); //커넥트 가져오기
 
-            pstmt = con.prepareStatement(sql); // 조회 sql을 pstmt가 가지고있음
+            pstmt = prepareStatement(con, sql); // 조회 sql을 pstmt가 가지고있음
             pstmt.setString(1, memberId); // 매개변수로 넘길 데이터 전달 / 첫 번째 '?'에 memberId 전달
 
             rs = pstmt.executeQuery(); // ResultSet은 데이터 조회한 결과를 담는 통 같은 거다.
@@ -88,6 +108,7 @@ public class MemberRepositoryV4_1 implements MemberRepository{
                 Member member = new Member(); // 조회한 데이터를 담을 member을 생성 // x002
                 member.setMemberId(rs.getString("member_id")); // 조회할 컬럼명을 입력해서 String타입으로 값을 꺼낸다.
                 member.setMoney(rs.getInt("money")); // 조회할 컬럼명을 입력해서 int형으로 값을 꺼낸다.
+                member.setVersion(rs.getLong("version"));
                 return member; // 조회된 값이 들어간 member를 반환
 
             } else { // rs의 cursor가 다음에 가리키는 데이터가 없으면 여기로 온다. -> rs.next()가 false
@@ -101,6 +122,195 @@ public class MemberRepositoryV4_1 implements MemberRepository{
         }
     }
 
+    /**
+     * findById와 같지만 없는 회원이면 예외 대신 Optional.empty()
+     * 필요한 컬럼만 조회하고, 컬럼은 이름 대신 인덱스로 읽는다.
+     */
+    @Override
+    public Optional<Member> findByIdOptional(String memberId) {
+        String sql = "select member_id, money, version from member where member_id = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+
+            pstmt = prepareStatement(con, sql);
+            pstmt.setString(1, memberId);
+
+            rs = pstmt.executeQuery();
+            if (!rs.next()) {
+                return Optional.empty(); // 예외 생성 없음
+            }
+            return Optional.of(new Member(rs.getString(1), rs.getInt(2), rs.getLong(3)));
+
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    /**
+     * 잔액만 조회 (Member를 만들지 않는다.)
+     * 없는 회원이면 OptionalInt.empty()
+     */
+    @Override
+    public OptionalInt findMoney(String memberId) {
+        String sql = "select money from member where member_id = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+
+            pstmt = prepareStatement(con, sql);
+            pstmt.setString(1, memberId);
+
+            rs = pstmt.executeQuery();
+            return rs.next() ? OptionalInt.of(rs.getInt(1)) : OptionalInt.empty();
+
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    /**
+     * select ... for update -> 트랜잭션이 끝날 때까지 이 회원 row를 잠근다.
+     * 없는 회원이면 Optional.empty()
+     */
+    @Override
+    public Optional<Member> findByIdForUpdate(String memberId) {
+        String sql = "select member_id, money, version from member where member_id = ? for update";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+
+            pstmt = prepareStatement(con, sql);
+            pstmt.setString(1, memberId);
+
+            rs = pstmt.executeQuery();
+            if (!rs.next()) {
+                return Optional.empty();
+            }
+            return Optional.of(new Member(rs.getString(1), rs.getInt(2), rs.getLong(3)));
+
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    /**
+     * 여러 회원을 한 번에 조회
+     * 커넥션 하나로 IN (...) 청크 또는 임시 테이블 join 실행 -> MemberBulkLookup
+     */
+    @Override
+    public MemberLookupResult findAllById(Collection<String> memberIds) {
+        Set<String> ids = new LinkedHashSet<>(memberIds); // 중복 제거, 요청 순서 유지
+        if (ids.isEmpty()) {
+            return MemberLookupResult.of(ids, Map.of());
+        }
+
+        Connection con = null;
+
+        try {
+            con = getConnection();
+            return MemberLookupResult.of(ids, MemberBulkLookup.find(con, ids));
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, null, null);
+        }
+    }
+
+    /**
+     * keyset 페이지 조회
+     * where member_id > ? order by member_id limit ?
+     */
+    @Override
+    public List<Member> findPageAfter(String lastMemberId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit는 1 이상이어야 합니다. limit=" + limit);
+        }
+
+        String sql = lastMemberId == null
+                ? "select * from member order by member_id limit ?"
+                : "select * from member where member_id > ? order by member_id limit ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+
+            pstmt = prepareStatement(con, sql);
+            int index = 1;
+            if (lastMemberId != null) {
+                pstmt.setString(index++, lastMemberId);
+            }
+            pstmt.setInt(index, limit);
+
+            rs = pstmt.executeQuery();
+
+            List<Member> page = new ArrayList<>(limit);
+            while (rs.next()) {
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
+                page.add(member);
+            }
+            return page;
+
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    /**
+     * 전체 회원 스트림
+     * TYPE_FORWARD_ONLY, CONCUR_READ_ONLY 커서 + fetchSize 만큼씩 가져온다.
+     * 트랜잭션 안에서 호출하면 DataSourceUtils가 트랜잭션 커넥션을 그대로 사용하고, close() 시에도 반납하지 않는다.
+     */
+    @Override
+    public Stream<Member> streamAll(int fetchSize) {
+        String sql = "select * from member";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            rs = pstmt.executeQuery();
+        } catch (SQLException e) {
+            close(con, pstmt, rs);
+            throw new MyDbException(e);
+        }
+
+        Connection cursorCon = con;
+        PreparedStatement cursorPstmt = pstmt;
+        ResultSet cursorRs = rs;
+        return MemberCursor.stream(rs, e -> new MyDbException(e), () -> close(cursorCon, cursorPstmt, cursorRs));
+    }
+
     /**
      * update sql 작성
      * Connection con, PreparedStatement pstmt
@@ -112,7 +322,7 @@ public class MemberRepositoryV4_1 implements MemberRepository{
      */
     @Override
     public void update(String memberId, int money) {
-        String sql = "update member set money=? where member_id=?"; // sql injection 공격 막으려 바인딩
+        String sql = "update member set money=?, version=version+1 where member_id=?"; // sql injection 공격 막으려 바인딩
 
         Connection con = null;
         PreparedStatement pstmt = null;
@@ -120,7 +330,7 @@ public class MemberRepositoryV4_1 implements MemberRepository{
         try {
             con = getConnection();
 
-            pstmt = con.prepareStatement(sql);
+            pstmt = prepareStatement(con, sql);
             pstmt.setInt(1, money); // sql injection 공격 막으려 바인딩
             pstmt.setString(2, memberId); // sql injection 공격 막으려 바인딩
 
@@ -134,6 +344,89 @@ public class MemberRepositoryV4_1 implements MemberRepository{
         }
     }
 
+    /**
+     * 증감 update
+     * money = money + ? -> DB가 현재 값 기준으로 계산
+     */
+    @Override
+    public boolean incrementMoney(String memberId, int delta) {
+        String sql = "update member set money=money+?, version=version+1 where member_id=?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection();
+
+            pstmt = prepareStatement(con, sql);
+            pstmt.setInt(1, delta);
+            pstmt.setString(2, memberId);
+
+            return pstmt.executeUpdate() == 1;
+
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    /**
+     * 버전 비교 update
+     * 읽은 시점의 version과 같을 때만 변경 -> 변경된 row가 없으면 버전 충돌(또는 없는 회원)
+     */
+    @Override
+    public boolean updateIfVersion(String memberId, int money, long expectedVersion) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection();
+
+            pstmt = prepareStatement(con, sql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            pstmt.setLong(3, expectedVersion);
+
+            return pstmt.executeUpdate() == 1;
+
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    /**
+     * 조건부 출금
+     * 잔액 확인과 차감을 update 한 번으로 처리 -> 변경된 row가 없으면 잔액 부족(또는 없는 회원)
+     */
+    @Override
+    public boolean debitIfSufficient(String memberId, int amount) {
+        String sql = "update member set money=money-?, version=version+1 where member_id=? and money>=?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection();
+
+            pstmt = prepareStatement(con, sql);
+            pstmt.setInt(1, amount);
+            pstmt.setString(2, memberId);
+            pstmt.setInt(3, amount);
+
+            return pstmt.executeUpdate() == 1;
+
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
     /**
      * delete sql 작성
      * Connection con, PreparedStatement pstmt
@@ -152,7 +445,7 @@ public class MemberRepositoryV4_1 implements MemberRepository{
         try {
             con = getConnection();
 
-            pstmt = con.prepareStatement(sql);
+            pstmt = prepareStatement(con, sql);
             pstmt.setString(1, memberId);
 
             pstmt.executeUpdate();
@@ -164,6 +457,119 @@ public class MemberRepositoryV4_1 implements MemberRepository{
         }
     }
 
+    /**
+     * 배치 저장/수정/삭제
+     * 하나의 PreparedStatement에 addBatch()로 모아두고 batchSize 마다 executeBatch()
+     * 트랜잭션 밖에서 호출하면 청크 단위로 커밋된다. -> 전체 원자성이 필요하면 트랜잭션 안에서 호출
+     */
+    @Override
+    public int[] saveAll(List<Member> members, int batchSize) {
+        String sql = "insert into member(member_id, money) values(?, ?)";
+
+        return batchUpdate("saveAll", sql, members, batchSize, (pstmt, member) -> {
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+        });
+    }
+
+    @Override
+    public int[] updateAll(List<Member> members, int batchSize) {
+        String sql = "update member set money=?, version=version+1 where member_id=?";
+
+        return batchUpdate("updateAll", sql, members, batchSize, (pstmt, member) -> {
+            pstmt.setInt(1, member.getMoney());
+            pstmt.setString(2, member.getMemberId());
+        });
+    }
+
+    @Override
+    public int[] deleteAll(List<String> memberIds, int batchSize) {
+        String sql = "delete from member where member_id=?";
+
+        return batchUpdate("deleteAll", sql, memberIds, batchSize, (pstmt, memberId) -> pstmt.setString(1, memberId));
+    }
+
+    /**
+     * 증감 배치 update
+     * 음수가 되는 잔액은 변경하지 않는다. -> update count 0
+     */
+    @Override
+    public int[] incrementMoneyAll(List<String> memberIds, long[] deltas, int batchSize) {
+        checkSameSize(memberIds, deltas);
+        String sql = "update member set money=money+?, version=version+1 where member_id=? and money+?>=0";
+
+        return batchUpdate("incrementMoneyAll", sql, memberIds.size(), batchSize, (pstmt, i) -> {
+            pstmt.setLong(1, deltas[i]);
+            pstmt.setString(2, memberIds.get(i));
+            pstmt.setLong(3, deltas[i]);
+        });
+    }
+
+    private void checkSameSize(List<String> memberIds, long[] deltas) {
+        if (memberIds.size() != deltas.length) {
+            throw new IllegalArgumentException("memberIds와 deltas의 크기가 다릅니다. memberIds=" + memberIds.size() + ", deltas=" + deltas.length);
+        }
+    }
+
+    private <T> int[] batchUpdate(String task, String sql, List<T> items, int batchSize,
+                                  ParameterizedPreparedStatementSetter<T> setter) {
+        return batchUpdate(task, sql, items.size(), batchSize, (pstmt, i) -> setter.setValues(pstmt, items.get(i)));
+    }
+
+    /**
+     * 0 ~ size-1 번째 row 값을 setter로 세팅 -> 배열 입력도 박싱 없이 배치 처리
+     */
+    private int[] batchUpdate(String task, String sql, int size, int batchSize, IndexedStatementSetter setter) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize는 1 이상이어야 합니다. batchSize=" + batchSize);
+        }
+
+        int[] result = new int[size];
+        if (size == 0) {
+            return result;
+        }
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection();
+            pstmt = prepareStatement(con, sql);
+
+            int pending = 0;
+            int offset = 0;
+            for (int i = 0; i < size; i++) {
+                setter.setValues(pstmt, i);
+                pstmt.addBatch();
+
+                if (++pending == batchSize) {
+                    offset = copyCounts(pstmt.executeBatch(), result, offset);
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                copyCounts(pstmt.executeBatch(), result, offset);
+            }
+            log.info("task={} batchSize={} resultSize={}", task, batchSize, result.length);
+            return result;
+
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    private int copyCounts(int[] counts, int[] result, int offset) {
+        System.arraycopy(counts, 0, result, offset, counts.length);
+        return offset + counts.length;
+    }
+
+    @FunctionalInterface
+    private interface IndexedStatementSetter {
+        void setValues(PreparedStatement pstmt, int index) throws SQLException;
+    }
+
     private Connection getConnection() throws SQLException {
 
         Connection con = DataSourceUtils.getConnection(dataSource); //**트랜잭션 동기화 사용을 위해서 DataSourceUtils를 사용**
@@ -171,9 +577,24 @@ public class MemberRepositoryV4_1 implements MemberRepository{
         return con;
     }
 
+    private PreparedStatement prepareStatement(Connection con, String sql) throws SQLException {
+        if (statementCache == null) {
+            return con.prepareStatement(sql);
+        }
+        return statementCache.prepare(con, sql); // 캐시된 Statement 재사용
+    }
+
     private void close(Connection con, PreparedStatement pstmt, ResultSet rs) {
         JdbcUtils.closeResultSet(rs);
-        JdbcUtils.closeStatement(pstmt);
+        closeStatement(pstmt);
         DataSourceUtils.releaseConnection(con, dataSource); // 트랜잭션을 사용하는 커넥션이면 연결을 끊고, 아니면 그냥 둔다.
     }
+
+    private void closeStatement(PreparedStatement pstmt) {
+        if (statementCache == null) {
+            JdbcUtils.closeStatement(pstmt);
+        } else {
+            statementCache.release(pstmt); // 캐시된 Statement는 닫지 않고 반납
+        }
+    }
 }
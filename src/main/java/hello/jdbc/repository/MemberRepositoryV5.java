@@ -1,11 +1,29 @@
 package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.repository.support.PrecomputedSQLExceptionTranslator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 
 import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * JdbcTemplate 추가
@@ -18,6 +36,7 @@ public class MemberRepositoryV5 implements MemberRepository {
 
     public MemberRepositoryV5(DataSource dataSource) {
         this.template = new JdbcTemplate(dataSource);
+        this.template.setExceptionTranslator(PrecomputedSQLExceptionTranslator.forDataSource(dataSource));
     }
 
     @Override
@@ -35,26 +54,214 @@ public class MemberRepositoryV5 implements MemberRepository {
         return template.queryForObject(sql, memberRowMapper(), memberId);
     }
 
+    /**
+     * queryForObject는 결과가 없으면 EmptyResultDataAccessException을 만든다.
+     * -> ResultSetExtractor로 직접 읽어서 예외 없이 Optional.empty()
+     */
+    @Override
+    public Optional<Member> findByIdOptional(String memberId) {
+        String sql = "select member_id, money, version from member where member_id = ?";
+
+        return template.query(sql,
+                rs -> rs.next() ? Optional.of(new Member(rs.getString(1), rs.getInt(2), rs.getLong(3))) : Optional.<Member>empty(),
+                memberId);
+    }
+
+    @Override
+    public OptionalInt findMoney(String memberId) {
+        String sql = "select money from member where member_id = ?";
+
+        return template.query(sql,
+                rs -> rs.next() ? OptionalInt.of(rs.getInt(1)) : OptionalInt.empty(),
+                memberId);
+    }
+
+    @Override
+    public Optional<Member> findByIdForUpdate(String memberId) {
+        String sql = "select member_id, money, version from member where member_id = ? for update";
+
+        return template.query(sql,
+                rs -> rs.next() ? Optional.of(new Member(rs.getString(1), rs.getInt(2), rs.getLong(3))) : Optional.<Member>empty(),
+                memberId);
+    }
+
+    /**
+     * 임시 테이블 조회는 같은 커넥션을 써야 하므로 ConnectionCallback 안에서 실행
+     */
+    @Override
+    public MemberLookupResult findAllById(Collection<String> memberIds) {
+        Set<String> ids = new LinkedHashSet<>(memberIds); // 중복 제거, 요청 순서 유지
+        if (ids.isEmpty()) {
+            return MemberLookupResult.of(ids, Map.of());
+        }
+
+        Map<String, Member> found = template.execute((ConnectionCallback<Map<String, Member>>) con -> MemberBulkLookup.find(con, ids));
+        return MemberLookupResult.of(ids, found);
+    }
+
+    @Override
+    public List<Member> findPageAfter(String lastMemberId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit는 1 이상이어야 합니다. limit=" + limit);
+        }
+
+        if (lastMemberId == null) {
+            String sql = "select * from member order by member_id limit ?";
+            return template.query(sql, memberRowMapper(), limit);
+        }
+
+        String sql = "select * from member where member_id > ? order by member_id limit ?";
+        return template.query(sql, memberRowMapper(), lastMemberId, limit);
+    }
+
+    /**
+     * queryForStream() -> Stream.close() 시 JdbcTemplate이 ResultSet, Statement 정리 후 커넥션 반납
+     */
+    @Override
+    public Stream<Member> streamAll(int fetchSize) {
+        String sql = "select * from member";
+
+        return template.queryForStream(readOnlyCursor(sql, fetchSize), memberRowMapper());
+    }
+
+    @Override
+    public void scanAll(int fetchSize, Consumer<Member> action) {
+        String sql = "select * from member";
+
+        RowMapper<Member> rowMapper = memberRowMapper();
+        template.query(readOnlyCursor(sql, fetchSize), (RowCallbackHandler) rs -> action.accept(rowMapper.mapRow(rs, rs.getRow())));
+    }
+
+    private PreparedStatementCreator readOnlyCursor(String sql, int fetchSize) {
+        return con -> {
+            PreparedStatement pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            return pstmt;
+        };
+    }
+
     private RowMapper<Member> memberRowMapper() {
         return ((rs, rowNum) -> {
             Member member = new Member();
             member.setMemberId(rs.getString("member_id"));
             member.setMoney(rs.getInt("money"));
+            member.setVersion(rs.getLong("version"));
             return member;
         });
     }
 
     @Override
     public void update(String memberId, int money) {
-        String sql = "update member set money=? where member_id=?"; // sql injection 공격 막으려 바인딩
+        String sql = "update member set money=?, version=version+1 where member_id=?"; // sql injection 공격 막으려 바인딩
 
         template.update(sql, money, memberId);
     }
 
+    @Override
+    public boolean incrementMoney(String memberId, int delta) {
+        String sql = "update member set money=money+?, version=version+1 where member_id=?";
+
+        return template.update(sql, delta, memberId) == 1;
+    }
+
+    @Override
+    public boolean updateIfVersion(String memberId, int money, long expectedVersion) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+
+        return template.update(sql, money, memberId, expectedVersion) == 1;
+    }
+
+    @Override
+    public boolean debitIfSufficient(String memberId, int amount) {
+        String sql = "update member set money=money-?, version=version+1 where member_id=? and money>=?";
+
+        return template.update(sql, amount, memberId, amount) == 1;
+    }
+
     @Override
     public void delete(String memberId) {
         String sql = "delete from member where member_id=?";
 
         template.update(sql, memberId);
     }
+
+    /**
+     * JdbcTemplate.batchUpdate() -> batchSize 단위로 executeBatch()
+     * 예외는 JdbcTemplate 내부의 SQLExceptionTranslator가 스프링 예외로 변환해준다.
+     */
+    @Override
+    public int[] saveAll(List<Member> members, int batchSize) {
+        checkBatchSize(batchSize);
+        String sql = "insert into member(member_id, money) values(?, ?)";
+
+        return flatten(template.batchUpdate(sql, members, batchSize, (ps, member) -> {
+            ps.setString(1, member.getMemberId());
+            ps.setInt(2, member.getMoney());
+        }));
+    }
+
+    @Override
+    public int[] updateAll(List<Member> members, int batchSize) {
+        checkBatchSize(batchSize);
+        String sql = "update member set money=?, version=version+1 where member_id=?";
+
+        return flatten(template.batchUpdate(sql, members, batchSize, (ps, member) -> {
+            ps.setInt(1, member.getMoney());
+            ps.setString(2, member.getMemberId());
+        }));
+    }
+
+    /**
+     * batchSize 단위로 BatchPreparedStatementSetter 실행 -> 배열 그대로 사용 (박싱 없음)
+     */
+    @Override
+    public int[] incrementMoneyAll(List<String> memberIds, long[] deltas, int batchSize) {
+        checkBatchSize(batchSize);
+        if (memberIds.size() != deltas.length) {
+            throw new IllegalArgumentException("memberIds와 deltas의 크기가 다릅니다. memberIds=" + memberIds.size() + ", deltas=" + deltas.length);
+        }
+        String sql = "update member set money=money+?, version=version+1 where member_id=? and money+?>=0";
+
+        int[] result = new int[deltas.length];
+        for (int offset = 0; offset < deltas.length; offset += batchSize) {
+            int start = offset;
+            int count = Math.min(batchSize, deltas.length - offset);
+            int[] counts = template.batchUpdate(sql, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ps.setLong(1, deltas[start + i]);
+                    ps.setString(2, memberIds.get(start + i));
+                    ps.setLong(3, deltas[start + i]);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return count;
+                }
+            });
+            System.arraycopy(counts, 0, result, start, count);
+        }
+        return result;
+    }
+
+    @Override
+    public int[] deleteAll(List<String> memberIds, int batchSize) {
+        checkBatchSize(batchSize);
+        String sql = "delete from member where member_id=?";
+
+        return flatten(template.batchUpdate(sql, memberIds, batchSize, (ps, memberId) -> ps.setString(1, memberId)));
+    }
+
+    private void checkBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize는 1 이상이어야 합니다. batchSize=" + batchSize);
+        }
+    }
+
+    /**
+     * 청크 별 결과(int[][])를 입력 순서대로 펼친다.
+     */
+    private int[] flatten(int[][] counts) {
+        return Arrays.stream(counts).flatMapToInt(Arrays::stream).toArray();
+    }
 }
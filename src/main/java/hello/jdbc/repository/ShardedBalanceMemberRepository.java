@@ -0,0 +1,481 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.support.PrecomputedSQLExceptionTranslator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 뜨거운 계좌의 잔액을 여러 row(shard)로 나누어 저장하는 MemberRepository 데코레이터
+ * member row 하나에 모든 이체가 줄을 서는 대신 shard 수 만큼 동시에 update 할 수 있다.
+ *
+ * - shard 0은 member row 자체, shard 1 ~ K-1은 member_balance_shard row
+ *   잔액 = member.money + shard money 합계, 버전 = member.version + shard version 합계 (잔액을 바꾸면 항상 증가)
+ * - incrementMoney(입금): 임의의 shard 하나에 더한다.
+ * - debitIfSufficient(출금): 임의의 shard 부터 돌면서 혼자 감당할 수 있는 shard에서 출금
+ *   어느 shard도 혼자 감당할 수 없으면 member row, shard row를 모두 잠그고 합계로 확인 후 나누어 출금
+ * - findById, findByIdOptional, findMoney, findByIdForUpdate, findAllById, 스캔: shard 합계를 더해서 반환
+ * - update, updateIfVersion, updateAll: 전체 잔액을 member row에 쓰고 나머지 shard는 0
+ * - drain, update 계열처럼 한 번에 여러 row를 잠글 때는 member row -> shard 번호 순서
+ *
+ * 락 순서 주의
+ * - incrementMoney, debitIfSufficient는 임의의 shard 부터 잠근다. -> 위 순서를 지키지 않는다.
+ *   같은 트랜잭션에서 같은 회원에 여러 번 쓰거나 출금이 drain으로 넘어가면 drain(member row -> shard)과 데드락이 날 수 있다.
+ * - 샤딩된 계좌의 DELTA 이체는 RetryingTransferService로 감싸서 데드락, 락 타임아웃을 재시도한다.
+ *
+ * 온라인 전환 (이체를 멈추지 않는다)
+ * - promote(): 잔액이 0인 shard row를 추가할 뿐 돈을 옮기지 않는다. -> 전환 전후 어느 쪽으로 읽어도 합계가 같다.
+ * - demote(): 먼저 shard 목록에서 빼고, shard row를 잠근 후 합계를 member row로 옮기고 삭제
+ *   목록을 먼저 읽은 스레드의 입금이 삭제된 shard에 가면 update 0건 -> member row에 입금
+ *
+ * 샤딩된 회원 목록은 메모리에 둔다. (빈으로 등록하면 afterPropertiesSet()에서 테이블 생성, 목록 로딩)
+ * 주의
+ * - delegate는 DB 리포지토리 (demote는 member 테이블을 직접 update 한다.) 캐시 데코레이터는 이 클래스 위에 둔다.
+ * - 다른 인스턴스에서 promote/demote 하면 refresh() 필요
+ *
+ * create table member_balance_shard (
+ *     member_id varchar(10) not null,
+ *     shard integer not null,
+ *     money integer not null default 0,
+ *     version bigint not null default 0,
+ *     primary key (member_id, shard)
+ * );
+ */
+@Slf4j
+public class ShardedBalanceMemberRepository extends ForwardingMemberRepository implements InitializingBean {
+
+    private final JdbcTemplate template;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<String, Integer> shardCounts = new ConcurrentHashMap<>(); // member_id -> shard 수 (member row 포함)
+
+    private final LongAdder shardWrites = new LongAdder();
+    private final LongAdder drains = new LongAdder();
+
+    public ShardedBalanceMemberRepository(MemberRepository delegate, DataSource dataSource) {
+        super(delegate);
+        this.template = new JdbcTemplate(dataSource);
+        this.template.setExceptionTranslator(PrecomputedSQLExceptionTranslator.forDataSource(dataSource));
+        //같은 DataSource의 트랜잭션이 이미 있으면 참여 (REQUIRED), 없으면 새로 시작
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        template.execute("create table if not exists member_balance_shard (member_id varchar(10) not null, shard integer not null, " +
+                "money integer not null default 0, version bigint not null default 0, primary key (member_id, shard))");
+        refresh();
+    }
+
+    /**
+     * 샤딩된 회원 목록을 DB에서 다시 읽는다.
+     */
+    public void refresh() {
+        Map<String, Integer> loaded = new HashMap<>();
+        template.query("select member_id, max(shard) from member_balance_shard group by member_id",
+                rs -> {
+                    loaded.put(rs.getString(1), rs.getInt(2) + 1);
+                });
+        shardCounts.keySet().retainAll(loaded.keySet());
+        shardCounts.putAll(loaded);
+        log.info("sharded balance accounts={}", loaded.size());
+    }
+
+    /**
+     * 잔액을 shardCount 개의 row로 나눈다. (이미 샤딩되어 있으면 모자란 shard만 추가)
+     * 돈은 옮기지 않는다. -> 새 입금이 shard로 퍼지면서 나누어진다.
+     * 트랜잭션 밖에서 호출 (커밋 후 목록에 추가)
+     */
+    public void promote(String memberId, int shardCount) {
+        if (shardCount < 2) {
+            throw new IllegalArgumentException("shardCount는 2 이상이어야 합니다. shardCount=" + shardCount);
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            delegate.findByIdForUpdate(memberId)
+                    .orElseThrow(() -> new NoSuchElementException("member not found memberId=" + memberId));
+            int existing = template.queryForObject("select coalesce(max(shard), 0) from member_balance_shard where member_id = ?",
+                    Integer.class, memberId);
+            for (int shard = existing + 1; shard < shardCount; shard++) {
+                template.update("insert into member_balance_shard(member_id, shard, money, version) values (?, ?, 0, 0)", memberId, shard);
+            }
+        });
+        shardCounts.merge(memberId, shardCount, Math::max);
+        log.info("promote memberId={}, shardCount={}", memberId, shardCount);
+    }
+
+    /**
+     * shard 잔액을 member row로 모으고 shard row 삭제
+     * 트랜잭션 밖에서 호출
+     */
+    public void demote(String memberId) {
+        shardCounts.remove(memberId); // 새 요청은 member row로
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Optional<Member> member = delegate.findByIdForUpdate(memberId);
+            List<long[]> shards = lockShards(memberId);
+            if (member.isEmpty() || shards.isEmpty()) {
+                return;
+            }
+
+            long money = 0;
+            long version = 0;
+            for (long[] shard : shards) {
+                money += shard[1];
+                version += shard[2];
+            }
+            //합친 버전이 줄어들지 않도록 shard 버전도 member row로 옮긴다.
+            template.update("update member set money=money+?, version=version+?+1 where member_id=?",
+                    Math.toIntExact(money), version, memberId);
+            template.update("delete from member_balance_shard where member_id = ?", memberId);
+        });
+        log.info("demote memberId={}", memberId);
+    }
+
+    public boolean isSharded(String memberId) {
+        return shardCounts.containsKey(memberId);
+    }
+
+    /**
+     * @return member row 포함 shard 수, 샤딩되지 않은 회원이면 1
+     */
+    public int getShardCount(String memberId) {
+        return shardCounts.getOrDefault(memberId, 1);
+    }
+
+    /**
+     * member_balance_shard row에 쓴 입출금 수 (member row 분산 효과)
+     */
+    public long getShardWriteCount() {
+        return shardWrites.sum();
+    }
+
+    /**
+     * 한 shard로 출금하지 못해서 모든 shard를 잠그고 나누어 출금한 횟수
+     */
+    public long getDrainCount() {
+        return drains.sum();
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        return withShards(delegate.findById(memberId));
+    }
+
+    @Override
+    public Optional<Member> findByIdOptional(String memberId) {
+        return delegate.findByIdOptional(memberId).map(this::withShards);
+    }
+
+    @Override
+    public OptionalInt findMoney(String memberId) {
+        OptionalInt money = delegate.findMoney(memberId);
+        if (money.isEmpty() || !isSharded(memberId)) {
+            return money;
+        }
+        long[] sums = shardSums(memberId);
+        return OptionalInt.of(Math.toIntExact(money.getAsInt() + sums[0]));
+    }
+
+    /**
+     * member row와 shard row를 모두 잠근다.
+     */
+    @Override
+    public Optional<Member> findByIdForUpdate(String memberId) {
+        Optional<Member> found = delegate.findByIdForUpdate(memberId);
+        if (found.isEmpty() || !isSharded(memberId)) {
+            return found;
+        }
+
+        Member member = found.get();
+        for (long[] shard : lockShards(memberId)) {
+            member.setMoney(Math.toIntExact(member.getMoney() + shard[1]));
+            member.setVersion(member.getVersion() + shard[2]);
+        }
+        return found;
+    }
+
+    @Override
+    public MemberLookupResult findAllById(Collection<String> memberIds) {
+        MemberLookupResult result = delegate.findAllById(memberIds);
+        if (!shardCounts.isEmpty()) {
+            result.getMembers().forEach(this::withShards);
+        }
+        return result;
+    }
+
+    @Override
+    public List<Member> findPageAfter(String lastMemberId, int limit) {
+        List<Member> members = delegate.findPageAfter(lastMemberId, limit);
+        if (!shardCounts.isEmpty()) {
+            members.forEach(this::withShards);
+        }
+        return members;
+    }
+
+    @Override
+    public Stream<Member> streamAll(int fetchSize) {
+        return delegate.streamAll(fetchSize).map(this::withShards);
+    }
+
+    @Override
+    public void scanAll(int fetchSize, Consumer<Member> action) {
+        delegate.scanAll(fetchSize, member -> action.accept(withShards(member)));
+    }
+
+    /**
+     * 전체 잔액을 member row에 쓰고 나머지 shard는 0
+     */
+    @Override
+    public void update(String memberId, int money) {
+        if (!isSharded(memberId)) {
+            delegate.update(memberId, money);
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            delegate.update(memberId, money);
+            clearShards(memberId);
+        });
+    }
+
+    /**
+     * 샤딩된 회원은 member row, shard row를 잠근 후 합친 버전을 비교
+     */
+    @Override
+    public boolean updateIfVersion(String memberId, int money, long expectedVersion) {
+        if (!isSharded(memberId)) {
+            return delegate.updateIfVersion(memberId, money, expectedVersion);
+        }
+
+        return transactionTemplate.execute(status -> {
+            Optional<Member> member = delegate.findByIdForUpdate(memberId);
+            if (member.isEmpty()) {
+                return false;
+            }
+            long memberVersion = member.get().getVersion();
+            long version = memberVersion;
+            for (long[] shard : lockShards(memberId)) {
+                version += shard[2];
+            }
+            if (version != expectedVersion) {
+                return false;
+            }
+            delegate.updateIfVersion(memberId, money, memberVersion);
+            clearShards(memberId);
+            return true;
+        });
+    }
+
+    /**
+     * 입금은 임의의 shard 하나에 (0은 member row) -> 락 순서를 지키지 않는다. (클래스 주석 참고)
+     */
+    @Override
+    public boolean incrementMoney(String memberId, int delta) {
+        Integer shardCount = shardCounts.get(memberId);
+        if (shardCount == null || delta <= 0) {
+            return delegate.incrementMoney(memberId, delta);
+        }
+
+        int shard = ThreadLocalRandom.current().nextInt(shardCount);
+        if (shard > 0 && template.update("update member_balance_shard set money=money+?, version=version+1 where member_id=? and shard=?",
+                delta, memberId, shard) == 1) {
+            shardWrites.increment();
+            return true;
+        }
+        return delegate.incrementMoney(memberId, delta); // shard 0 또는 demote로 삭제된 shard
+    }
+
+    @Override
+    public boolean debitIfSufficient(String memberId, int amount) {
+        Integer shardCount = shardCounts.get(memberId);
+        if (shardCount == null) {
+            return delegate.debitIfSufficient(memberId, amount);
+        }
+
+        //혼자 감당할 수 있는 shard 찾기 (출발점을 흩어서 같은 shard에 몰리지 않게)
+        int start = ThreadLocalRandom.current().nextInt(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            int shard = (start + i) % shardCount;
+            if (shard == 0) {
+                if (delegate.debitIfSufficient(memberId, amount)) {
+                    return true;
+                }
+            } else if (template.update("update member_balance_shard set money=money-?, version=version+1 where member_id=? and shard=? and money>=?",
+                    amount, memberId, shard, amount) == 1) {
+                shardWrites.increment();
+                return true;
+            }
+        }
+        return transactionTemplate.execute(status -> drain(memberId, amount));
+    }
+
+    /**
+     * 샤딩된 회원은 한 건씩 incrementMoney, debitIfSufficient (나머지는 delegate 배치)
+     */
+    @Override
+    public int[] incrementMoneyAll(List<String> memberIds, long[] deltas, int batchSize) {
+        if (memberIds.size() != deltas.length) {
+            throw new IllegalArgumentException("memberIds, deltas 크기가 다릅니다. memberIds=" + memberIds.size() + ", deltas=" + deltas.length);
+        }
+        if (memberIds.stream().noneMatch(this::isSharded)) {
+            return delegate.incrementMoneyAll(memberIds, deltas, batchSize);
+        }
+
+        int[] counts = new int[memberIds.size()];
+        List<Integer> plainIndexes = new ArrayList<>();
+        for (int i = 0; i < memberIds.size(); i++) {
+            String memberId = memberIds.get(i);
+            if (!isSharded(memberId)) {
+                plainIndexes.add(i);
+                continue;
+            }
+            int delta = Math.toIntExact(deltas[i]);
+            boolean changed = delta < 0 ? debitIfSufficient(memberId, -delta) : incrementMoney(memberId, delta);
+            counts[i] = changed ? 1 : 0;
+        }
+
+        List<String> plainIds = new ArrayList<>(plainIndexes.size());
+        long[] plainDeltas = new long[plainIndexes.size()];
+        for (int i = 0; i < plainIndexes.size(); i++) {
+            plainIds.add(memberIds.get(plainIndexes.get(i)));
+            plainDeltas[i] = deltas[plainIndexes.get(i)];
+        }
+        int[] plainCounts = delegate.incrementMoneyAll(plainIds, plainDeltas, batchSize);
+        for (int i = 0; i < plainIndexes.size(); i++) {
+            counts[plainIndexes.get(i)] = plainCounts[i];
+        }
+        return counts;
+    }
+
+    @Override
+    public int[] updateAll(List<Member> members, int batchSize) {
+        if (members.stream().map(Member::getMemberId).noneMatch(this::isSharded)) {
+            return delegate.updateAll(members, batchSize);
+        }
+
+        return transactionTemplate.execute(status -> {
+            int[] counts = delegate.updateAll(members, batchSize);
+            members.stream().map(Member::getMemberId).filter(this::isSharded).sorted().distinct().forEach(this::clearShards);
+            return counts;
+        });
+    }
+
+    @Override
+    public void delete(String memberId) {
+        if (!isSharded(memberId)) {
+            delegate.delete(memberId);
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            delegate.delete(memberId);
+            template.update("delete from member_balance_shard where member_id = ?", memberId);
+        });
+        shardCounts.remove(memberId);
+    }
+
+    @Override
+    public int[] deleteAll(List<String> memberIds, int batchSize) {
+        List<Object[]> sharded = memberIds.stream().filter(this::isSharded).distinct().map(id -> new Object[]{id}).toList();
+        if (sharded.isEmpty()) {
+            return delegate.deleteAll(memberIds, batchSize);
+        }
+
+        int[] counts = transactionTemplate.execute(status -> {
+            int[] deleted = delegate.deleteAll(memberIds, batchSize);
+            template.batchUpdate("delete from member_balance_shard where member_id = ?", sharded);
+            return deleted;
+        });
+        sharded.forEach(id -> shardCounts.remove((String) id[0]));
+        return counts;
+    }
+
+    /**
+     * 모든 row를 잠그고 member row -> shard 순서로 amount 만큼 출금
+     */
+    private boolean drain(String memberId, int amount) {
+        Optional<Member> member = delegate.findByIdForUpdate(memberId);
+        if (member.isEmpty()) {
+            return false;
+        }
+        List<long[]> shards = lockShards(memberId);
+
+        long total = member.get().getMoney();
+        for (long[] shard : shards) {
+            total += shard[1];
+        }
+        if (total < amount) {
+            return false; // 잔액 부족
+        }
+
+        drains.increment();
+        int remaining = amount;
+        int fromMember = Math.min(Math.max(member.get().getMoney(), 0), remaining);
+        if (fromMember > 0) {
+            delegate.incrementMoney(memberId, -fromMember);
+            remaining -= fromMember;
+        }
+        for (long[] shard : shards) {
+            if (remaining == 0) {
+                break;
+            }
+            int take = (int) Math.min(Math.max(shard[1], 0), remaining);
+            if (take > 0) {
+                template.update("update member_balance_shard set money=money-?, version=version+1 where member_id=? and shard=?",
+                        take, memberId, shard[0]);
+                shardWrites.increment();
+                remaining -= take;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * shard row를 번호 순서로 잠근다.
+     * @return {shard, money, version}
+     */
+    private List<long[]> lockShards(String memberId) {
+        return template.query("select shard, money, version from member_balance_shard where member_id = ? order by shard for update",
+                (rs, rowNum) -> new long[]{rs.getInt(1), rs.getInt(2), rs.getLong(3)}, memberId);
+    }
+
+    private void clearShards(String memberId) {
+        template.update("update member_balance_shard set money=0, version=version+1 where member_id=?", memberId);
+    }
+
+    /**
+     * @return {money 합계, version 합계}
+     */
+    private long[] shardSums(String memberId) {
+        return template.queryForObject("select coalesce(sum(money), 0), coalesce(sum(version), 0) from member_balance_shard where member_id = ?",
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)}, memberId);
+    }
+
+    private Member withShards(Member member) {
+        if (isSharded(member.getMemberId())) {
+            long[] sums = shardSums(member.getMemberId());
+            member.setMoney(Math.toIntExact(member.getMoney() + sums[0]));
+            member.setVersion(member.getVersion() + sums[1]);
+        }
+        return member;
+    }
+}
@@ -0,0 +1,100 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 같은 memberId에 대한 동시 findById를 하나의 DB 조회로 합치는 MemberRepository 데코레이터
+ *
+ * - 처음 들어온 스레드(leader)만 delegate.findById를 실행하고, 그동안 들어온 스레드는 그 결과를 기다린다.
+ *   -> 인기 계좌에 요청이 몰려도 커넥션은 하나만 사용
+ * - 예외도 그대로 공유한다. (NoSuchElementException, MyDbException ...)
+ * - 키별 대기만 하므로 다른 memberId 조회는 막지 않는다. (ConcurrentHashMap 버킷 단위 잠금)
+ * - 조회가 끝나면 바로 제거 -> 캐시가 아니다. 다음 조회는 다시 DB에서 읽는다.
+ *
+ * 트랜잭션 안의 조회는 합치지 않는다.
+ * - 그 트랜잭션의 커넥션으로 읽어야 자기 변경, 락, 격리 수준이 지켜진다.
+ */
+@Slf4j
+public class SingleFlightMemberRepository extends ForwardingMemberRepository {
+
+    private final ConcurrentMap<String, CompletableFuture<Member>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder leaderCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    public SingleFlightMemberRepository(MemberRepository delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return delegate.findById(memberId);
+        }
+
+        CompletableFuture<Member> call = new CompletableFuture<>();
+        CompletableFuture<Member> existing = inFlight.putIfAbsent(memberId, call);
+        if (existing != null) {
+            coalescedCount.increment();
+            return copy(await(existing));
+        }
+
+        leaderCount.increment();
+        try {
+            Member member = delegate.findById(memberId);
+            call.complete(member);
+            return member;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(memberId, call);
+        }
+    }
+
+    /**
+     * 실제로 DB 조회를 실행한 횟수
+     */
+    public long getLeaderCount() {
+        return leaderCount.sum();
+    }
+
+    /**
+     * 다른 스레드의 조회 결과를 받아간 횟수
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private Member await(CompletableFuture<Member> call) {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            //leader가 던진 예외를 그대로 다시 던진다.
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    //Member는 변경 가능한 객체 -> 기다린 스레드마다 따로 복사해서 준다.
+    private Member copy(Member member) {
+        return new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+}
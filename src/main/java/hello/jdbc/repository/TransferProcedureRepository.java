@@ -0,0 +1,160 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.repository.support.PrecomputedSQLExceptionTranslator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+import javax.sql.DataSource;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+/**
+ * DB 안에서 이체 전체(검증 -> 출금 -> 입금)를 실행하는 H2 함수(transfer_money) 호출
+ * CallableStatement 한 번 -> 왕복 1번
+ *
+ * 함수는 자바 소스로 등록(CREATE ALIAS ... AS)하므로 H2 서버 클래스패스에 애플리케이션 클래스가 없어도 된다.
+ * 스프링 빈으로 등록하면 afterPropertiesSet()에서 함수를 (재)등록한다.
+ *
+ * 함수는 호출한 커넥션의 트랜잭션에 참여한다.
+ * 실패 결과(Status)는 아무것도 변경하지 않은 상태에서만 반환한다. -> 트랜잭션 밖에서 호출해도 부분 반영이 없다.
+ */
+@Slf4j
+public class TransferProcedureRepository implements InitializingBean {
+
+    public static final String FUNCTION_NAME = "transfer_money";
+
+    /**
+     * 반환 코드
+     * 0: 성공, 1: 보내는 회원 없음, 2: 받는 회원 없음, 3: 잔액 부족, 4: 이체 규칙 위반
+     */
+    private static final String FUNCTION_SOURCE = """
+            import java.sql.*;
+            @CODE
+            int transferMoney(Connection con, String fromId, String toId, int money) throws SQLException {
+                if ("ex".equals(toId)) {
+                    return 4;
+                }
+                try (PreparedStatement exists = con.prepareStatement("select 1 from member where member_id = ?")) {
+                    exists.setString(1, toId);
+                    try (ResultSet rs = exists.executeQuery()) {
+                        if (!rs.next()) {
+                            return 2;
+                        }
+                    }
+                }
+                try (PreparedStatement debit = con.prepareStatement("update member set money = money - ?, version = version + 1 where member_id = ? and money >= ?")) {
+                    debit.setInt(1, money);
+                    debit.setString(2, fromId);
+                    debit.setInt(3, money);
+                    if (debit.executeUpdate() == 0) {
+                        try (PreparedStatement exists = con.prepareStatement("select 1 from member where member_id = ?")) {
+                            exists.setString(1, fromId);
+                            try (ResultSet rs = exists.executeQuery()) {
+                                return rs.next() ? 3 : 1;
+                            }
+                        }
+                    }
+                }
+                try (PreparedStatement credit = con.prepareStatement("update member set money = money + ?, version = version + 1 where member_id = ?")) {
+                    credit.setInt(1, money);
+                    credit.setString(2, toId);
+                    if (credit.executeUpdate() == 0) {
+                        throw new SQLException("credit failed memberId=" + toId);
+                    }
+                }
+                return 0;
+            }
+            """;
+
+    public enum Status {
+        OK, FROM_NOT_FOUND, TO_NOT_FOUND, INSUFFICIENT_BALANCE, RULE_VIOLATION
+    }
+
+    private final DataSource dataSource;
+    private final SQLExceptionTranslator exceptionTranslator;
+
+    public TransferProcedureRepository(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.exceptionTranslator = PrecomputedSQLExceptionTranslator.forDataSource(dataSource);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        register();
+    }
+
+    /**
+     * 함수 등록 (이미 있으면 교체)
+     * DDL은 커밋을 동반하므로 애플리케이션 시작 시점에 호출한다.
+     */
+    public void register() {
+        String sql = "create alias " + FUNCTION_NAME + " as '" + FUNCTION_SOURCE + "'";
+
+        Connection con = null;
+        Statement stmt = null;
+
+        try {
+            con = getConnection();
+            stmt = con.createStatement();
+            stmt.execute("drop alias if exists " + FUNCTION_NAME);
+            stmt.execute(sql);
+            log.info("registered function={}", FUNCTION_NAME);
+        } catch (SQLException e) {
+            throw exceptionTranslator.translate("register", sql, e);
+        } finally {
+            JdbcUtils.closeStatement(stmt);
+            DataSourceUtils.releaseConnection(con, dataSource);
+        }
+    }
+
+    /**
+     * 이체 함수 호출
+     * SQL 오류는 스프링 데이터 접근 예외로 변환, 업무 결과는 Status로 반환
+     */
+    public Status transfer(String fromId, String toId, int money) {
+        String sql = "{? = call " + FUNCTION_NAME + "(?, ?, ?)}";
+
+        Connection con = null;
+        CallableStatement cstmt = null;
+
+        try {
+            con = getConnection();
+
+            cstmt = con.prepareCall(sql);
+            cstmt.registerOutParameter(1, Types.INTEGER);
+            cstmt.setString(2, fromId);
+            cstmt.setString(3, toId);
+            cstmt.setInt(4, money);
+            cstmt.execute();
+
+            int code = cstmt.getInt(1);
+            boolean nullCode = cstmt.wasNull();
+            if (nullCode || code < 0 || code >= Status.values().length) {
+                //함수 정의와 Status가 어긋남 (다른 버전의 함수가 등록되어 있는 등)
+                throw new DataRetrievalFailureException("알 수 없는 이체 결과 코드 code=" + (nullCode ? "null" : code) + ", function=" + FUNCTION_NAME);
+            }
+            Status status = Status.values()[code];
+            log.info("transfer status={}", status);
+            return status;
+
+        } catch (SQLException e) {
+            throw exceptionTranslator.translate("transfer", sql, e);
+        } finally {
+            JdbcUtils.closeStatement(cstmt);
+            DataSourceUtils.releaseConnection(con, dataSource);
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        Connection con = DataSourceUtils.getConnection(dataSource); //**트랜잭션 동기화 사용을 위해서 DataSourceUtils를 사용**
+        log.info("connection={} class={}", con, con.getClass());
+        return con;
+    }
+}
@@ -0,0 +1,691 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.support.CreditJournal;
+import hello.jdbc.repository.support.PrecomputedSQLExceptionTranslator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 작은 입금이 아주 자주 들어오는 계좌(적립금, 캐시백)의 입금을 모아서 나중에 반영하는 MemberRepository 데코레이터 (write-behind)
+ *
+ * - 대상 계좌(accounts)의 incrementMoney(입금)는 DB에 가지 않는다.
+ *   저널 파일에 기록 + fsync (여러 스레드의 fsync는 하나로 합친다.) -> 세그먼트의 회원 별 LongAdder에 더하고 바로 반환
+ * - flush: flushInterval 마다 또는 현재 세그먼트 입금이 flushThreshold 건을 넘으면
+ *   세그먼트를 교체하고, 이전 세그먼트 합계를 incrementMoneyAll(JDBC 배치) + 체크포인트(세그먼트 id)를 한 트랜잭션으로 커밋
+ * - 재시작(afterPropertiesSet): 체크포인트보다 큰 세그먼트 파일만 다시 반영 -> 크래시가 어느 시점이어도 두 번 반영하지 않는다.
+ * - close(): 남은 입금을 모두 flush (종료 시 유실 없음)
+ *
+ * 트랜잭션 안의 입금 (같은 DataSource의 트랜잭션이어야 한다.)
+ * - 커밋 직전(beforeCommit)에 같은 트랜잭션으로 커밋 표시 row(member_write_behind_tx) insert + 저널 기록(txId 포함), 커밋 후에 합계에 더한다.
+ * - 재시작 시 커밋 표시가 있는 트랜잭션의 기록만 반영 -> 저널 fsync 후 DB 커밋 전에 크래시가 나도 입금만 살아나지 않는다.
+ * - 롤백되면 합계에 더하지 않는다. (저널 기록은 남지만 커밋 표시가 없다.)
+ * - 커밋 표시는 그 세그먼트를 반영하는 flush 트랜잭션에서 지운다.
+ * - 커밋 결과를 모르고(STATUS_UNKNOWN) 커밋 표시 조회도 실패하면 합계에 더하지 않고 보류
+ *   -> flush 트랜잭션에서 커밋 표시를 다시 확인해서 반영, 확인하지 못하면 세그먼트와 커밋 표시를 남겨 두고 다음 flush에서 재시도
+ * - insert 하는 row는 트랜잭션마다 다르다. -> 뜨거운 계좌 row 락을 잡지 않는다.
+ *
+ * 조회
+ * - findById, findByIdOptional, findMoney: 잔액과 체크포인트를 한 쿼리로 읽고, 체크포인트 이후 세그먼트의 대기 입금을 더한다. (두 번 세지 않음)
+ * - version = DB version + 대기 입금 건수 (flush는 반영한 건수만큼 version을 올린다.) -> 입금이 들어오면 version이 바뀐다.
+ * - findAllById, 스캔: 조회 후 체크포인트를 따로 읽는다. -> 그 사이 flush가 끝나면 적게 보일 수는 있어도 많게 보이지는 않는다.
+ * - debitIfSufficient: DB에 반영된 잔액으로만 확인 (대기 입금은 flush 후 사용 가능)
+ *
+ * 절대값 쓰기
+ * - findByIdForUpdate: member row를 잠그고 그 시점의 대기 입금을 트랜잭션에 기억한다.
+ *   이후 같은 트랜잭션의 조회는 기억한 대기 입금으로 계산 (잠근 뒤에 들어온 입금은 이 트랜잭션 다음에 일어난 것)
+ * - update, updateAll: 아직 잠그지 않았으면 쓰기 전에 findByIdForUpdate로 잠근다. 기억한 대기 입금을 뺀 금액을 쓴다.
+ *   -> flush 후 잔액 = 요청한 잔액 + 잠근 뒤에 들어온 입금
+ *   조회와 잠금 사이의 입금은 덮어쓴다. (일반 계좌의 findById + update와 같은 lost update, 막으려면 먼저 findByIdForUpdate)
+ * - updateIfVersion: row를 잠근 후 version(DB version + 대기 입금 건수)을 비교 -> 조회 후 들어온 입금이 있으면 false
+ *
+ * 주의
+ * - delegate는 DB 리포지토리 (조회, flush는 member 테이블을 직접 읽고 쓴다.) 캐시 데코레이터는 이 클래스 위에 둔다.
+ * - 입금 전에 회원 존재를 확인한다. (없으면 false)
+ *   확인 후 flush 전에 회원이 삭제되면 flush 때 로그를 남기고 버린다. -> delete는 먼저 flush 하지만 그 사이 입금은 막지 못한다.
+ * - 체크포인트 이름은 저널 디렉토리 이름 -> 인스턴스마다 다른 디렉토리
+ *
+ * create table member_write_behind_checkpoint (
+ *     name varchar(100) primary key,
+ *     segment bigint not null
+ * );
+ * create table member_write_behind_tx (
+ *     name varchar(100) not null,
+ *     tx_id bigint not null,
+ *     segment bigint not null,
+ *     primary key (name, tx_id)
+ * );
+ */
+@Slf4j
+public class WriteBehindMemberRepository extends ForwardingMemberRepository implements InitializingBean, AutoCloseable {
+
+    private static final String SELECT_WITH_CHECKPOINT = "select m.member_id, m.money, m.version, coalesce(c.segment, 0) from member m " +
+            "left join member_write_behind_checkpoint c on c.name = ? where m.member_id = ?";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate template;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate flushTransaction;
+    private final Set<String> accounts;
+    private final Path journalDirectory;
+    private final String checkpointName;
+    private final Duration flushInterval;
+    private final int flushThreshold;
+
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private volatile CreditJournal journal;
+    private final AtomicLong txIds = new AtomicLong();
+    private final Map<Long, List<UnresolvedCredits>> unresolved = new ConcurrentHashMap<>(); // 세그먼트 id -> 커밋 결과를 모르는 입금
+
+    private final LongAdder credits = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+
+    public WriteBehindMemberRepository(MemberRepository delegate, DataSource dataSource, Set<String> accounts,
+                                       Path journalDirectory, Duration flushInterval, int flushThreshold) {
+        super(delegate);
+        this.dataSource = dataSource;
+        this.template = new JdbcTemplate(dataSource);
+        this.template.setExceptionTranslator(PrecomputedSQLExceptionTranslator.forDataSource(dataSource));
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        //flush는 호출한 스레드의 트랜잭션과 무관하게 커밋
+        this.flushTransaction = new TransactionTemplate(transactionManager);
+        this.flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.accounts = Set.copyOf(accounts);
+        this.journalDirectory = journalDirectory;
+        this.checkpointName = journalDirectory.toAbsolutePath().normalize().getFileName().toString();
+        this.flushInterval = flushInterval;
+        this.flushThreshold = flushThreshold;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 체크포인트 테이블 생성, 남은 저널 반영 후 flush 시작
+     */
+    @Override
+    public void afterPropertiesSet() {
+        template.execute("create table if not exists member_write_behind_checkpoint (name varchar(100) primary key, segment bigint not null)");
+        template.execute("create table if not exists member_write_behind_tx (name varchar(100) not null, tx_id bigint not null, " +
+                "segment bigint not null, primary key (name, tx_id))");
+        long checkpoint = readCheckpoint();
+
+        long lastSegmentId = checkpoint;
+        for (Path path : CreditJournal.list(journalDirectory)) {
+            long segmentId = CreditJournal.idOf(path);
+            lastSegmentId = Math.max(lastSegmentId, segmentId);
+            if (segmentId > checkpoint) {
+                Set<Long> committed = new HashSet<>(template.queryForList(
+                        "select tx_id from member_write_behind_tx where name = ? and segment = ?", Long.class, checkpointName, segmentId));
+                Map<String, CreditJournal.Pending> totals = CreditJournal.replay(path, committed::contains);
+                log.info("write-behind recovery segment={}, accounts={}", segmentId, totals.size());
+                apply(segmentId, totals, List.of());
+            }
+            CreditJournal.delete(path);
+        }
+        //저널 파일 없이 남은 커밋 표시 정리
+        txIds.set(template.queryForObject("select coalesce(max(tx_id), 0) from member_write_behind_tx where name = ?", Long.class, checkpointName));
+        template.update("delete from member_write_behind_tx where name = ? and segment <= ?", checkpointName, lastSegmentId);
+
+        journal = new CreditJournal(journalDirectory, lastSegmentId + 1);
+        long intervalMillis = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 대기 입금을 모두 DB에 반영하고 flush 종료
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        journal.close();
+    }
+
+    public boolean isWriteBehind(String memberId) {
+        return accounts.contains(memberId);
+    }
+
+    /**
+     * 아직 DB에 반영하지 않은 입금 합계
+     */
+    public long getPending(String memberId) {
+        return pending(memberId, 0).money();
+    }
+
+    public long getCreditCount() {
+        return credits.sum();
+    }
+
+    /**
+     * 세그먼트를 DB에 반영한 횟수
+     */
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    /**
+     * flush로 update 한 row 수 (getCreditCount() 대비 줄어든 update 수)
+     */
+    public long getFlushedRowCount() {
+        return flushedRows.sum();
+    }
+
+    /**
+     * 현재 세그먼트를 교체하고 sealed 세그먼트를 오래된 순서로 반영
+     * 반영에 실패한 세그먼트는 남겨 두고 다음 flush에서 다시 시도한다.
+     */
+    public synchronized void flush() {
+        if (!journal.currentSegment().isEmpty()) {
+            journal.rotate();
+        }
+
+        for (CreditJournal.Segment segment : journal.sealedSegments()) {
+            segment.awaitQuiescent(); // 기록은 모두 합계에 더해졌거나 보류됐다.
+            apply(segment.getId(), segment.totals(), unresolved.getOrDefault(segment.getId(), List.of()));
+            unresolved.remove(segment.getId());
+            journal.retire(segment);
+        }
+    }
+
+    @Override
+    public boolean incrementMoney(String memberId, int delta) {
+        if (delta <= 0 || !isWriteBehind(memberId)) {
+            return delegate.incrementMoney(memberId, delta);
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (!TransactionSynchronizationManager.hasResource(dataSource)) {
+                //커밋 표시 row가 입금과 같은 트랜잭션으로 커밋되어야 한다.
+                throw new InvalidDataAccessApiUsageException("write-behind 입금은 같은 DataSource의 트랜잭션 안에서만 가능합니다. memberId=" + memberId);
+            }
+            if (!exists(memberId)) {
+                return false;
+            }
+            transactionState().add(memberId, delta); // 커밋 때 기록
+            return true;
+        }
+
+        if (!exists(memberId)) {
+            return false;
+        }
+        CreditJournal.Segment segment = journal.acquire();
+        try {
+            segment.sync(segment.append(memberId, delta, 0));
+            segment.add(memberId, delta);
+        } finally {
+            segment.release();
+        }
+        afterCredit(segment, 1);
+        return true;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (!isWriteBehind(memberId)) {
+            return delegate.findById(memberId);
+        }
+        return findWithPending(memberId)
+                .orElseThrow(() -> new NoSuchElementException("member not found memberId=" + memberId));
+    }
+
+    @Override
+    public Optional<Member> findByIdOptional(String memberId) {
+        if (!isWriteBehind(memberId)) {
+            return delegate.findByIdOptional(memberId);
+        }
+        return findWithPending(memberId);
+    }
+
+    @Override
+    public OptionalInt findMoney(String memberId) {
+        if (!isWriteBehind(memberId)) {
+            return delegate.findMoney(memberId);
+        }
+        return findWithPending(memberId).map(member -> OptionalInt.of(member.getMoney())).orElse(OptionalInt.empty());
+    }
+
+    /**
+     * member row를 잠근 후 체크포인트를 읽는다. -> 이후 flush는 이 트랜잭션이 끝날 때까지 이 회원을 반영하지 못한다.
+     * 트랜잭션 안이면 이때의 대기 입금을 기억 -> 같은 트랜잭션의 update가 사용
+     */
+    @Override
+    public Optional<Member> findByIdForUpdate(String memberId) {
+        Optional<Member> found = delegate.findByIdForUpdate(memberId);
+        if (found.isEmpty() || !isWriteBehind(memberId)) {
+            return found;
+        }
+
+        Member member = found.get();
+        CreditJournal.Pending pending;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pending = transactionState().lock(memberId, () -> pending(memberId, readCheckpoint()));
+        } else {
+            pending = pending(memberId, readCheckpoint());
+        }
+        withPending(member, pending);
+        return found;
+    }
+
+    @Override
+    public MemberLookupResult findAllById(Collection<String> memberIds) {
+        MemberLookupResult result = delegate.findAllById(memberIds);
+        if (memberIds.stream().anyMatch(this::isWriteBehind)) {
+            long checkpoint = readCheckpoint();
+            result.getMembers().forEach(member -> addPending(member, checkpoint));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Member> findPageAfter(String lastMemberId, int limit) {
+        List<Member> members = delegate.findPageAfter(lastMemberId, limit);
+        if (members.stream().map(Member::getMemberId).anyMatch(this::isWriteBehind)) {
+            long checkpoint = readCheckpoint();
+            members.forEach(member -> addPending(member, checkpoint));
+        }
+        return members;
+    }
+
+    @Override
+    public Stream<Member> streamAll(int fetchSize) {
+        return delegate.streamAll(fetchSize).map(member -> isWriteBehind(member.getMemberId()) ? addPending(member, readCheckpoint()) : member);
+    }
+
+    @Override
+    public void scanAll(int fetchSize, Consumer<Member> action) {
+        delegate.scanAll(fetchSize, member -> action.accept(isWriteBehind(member.getMemberId()) ? addPending(member, readCheckpoint()) : member));
+    }
+
+    /**
+     * 잠글 때 기억한 대기 입금을 뺀 금액을 쓴다. (잠그지 않았으면 여기서 잠근다.)
+     * -> flush 후 잔액 = money + 잠근 뒤에 들어온 입금
+     */
+    @Override
+    public void update(String memberId, int money) {
+        if (!isWriteBehind(memberId)) {
+            delegate.update(memberId, money);
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> updateLocked(memberId, money));
+    }
+
+    /**
+     * version = DB version + 대기 입금 건수 -> 조회 후 입금이 들어왔으면 false
+     */
+    @Override
+    public boolean updateIfVersion(String memberId, int money, long expectedVersion) {
+        if (!isWriteBehind(memberId)) {
+            return delegate.updateIfVersion(memberId, money, expectedVersion);
+        }
+
+        return transactionTemplate.execute(status -> {
+            Optional<Member> locked = findByIdForUpdate(memberId);
+            if (locked.isEmpty() || locked.get().getVersion() != expectedVersion) {
+                return false;
+            }
+            CreditJournal.Pending pending = lockedPending(memberId).orElseThrow();
+            return delegate.updateIfVersion(memberId, Math.toIntExact(money - pending.money()), expectedVersion - pending.count());
+        });
+    }
+
+    @Override
+    public int[] updateAll(List<Member> members, int batchSize) {
+        if (members.stream().map(Member::getMemberId).noneMatch(this::isWriteBehind)) {
+            return delegate.updateAll(members, batchSize);
+        }
+
+        return transactionTemplate.execute(status -> {
+            int[] counts = new int[members.size()];
+            for (int i = 0; i < members.size(); i++) {
+                Member member = members.get(i);
+                if (isWriteBehind(member.getMemberId())) {
+                    counts[i] = updateLocked(member.getMemberId(), member.getMoney()) ? 1 : 0;
+                } else if (delegate.findByIdForUpdate(member.getMemberId()).isPresent()) {
+                    delegate.update(member.getMemberId(), member.getMoney());
+                    counts[i] = 1;
+                }
+            }
+            return counts;
+        });
+    }
+
+    /**
+     * 삭제 전에 대기 입금을 반영 (삭제된 회원의 입금은 flush 때 버려진다.)
+     */
+    @Override
+    public void delete(String memberId) {
+        if (isWriteBehind(memberId)) {
+            flush();
+        }
+        delegate.delete(memberId);
+    }
+
+    @Override
+    public int[] deleteAll(List<String> memberIds, int batchSize) {
+        if (memberIds.stream().anyMatch(this::isWriteBehind)) {
+            flush();
+        }
+        return delegate.deleteAll(memberIds, batchSize);
+    }
+
+    /**
+     * 대상 계좌의 입금은 저널로, 나머지는 delegate 배치
+     */
+    @Override
+    public int[] incrementMoneyAll(List<String> memberIds, long[] deltas, int batchSize) {
+        if (memberIds.stream().noneMatch(this::isWriteBehind)) {
+            return delegate.incrementMoneyAll(memberIds, deltas, batchSize);
+        }
+        if (memberIds.size() != deltas.length) {
+            throw new IllegalArgumentException("memberIds, deltas 크기가 다릅니다. memberIds=" + memberIds.size() + ", deltas=" + deltas.length);
+        }
+
+        int[] counts = new int[memberIds.size()];
+        List<Integer> directIndexes = new ArrayList<>();
+        for (int i = 0; i < memberIds.size(); i++) {
+            if (deltas[i] > 0 && isWriteBehind(memberIds.get(i))) {
+                counts[i] = incrementMoney(memberIds.get(i), Math.toIntExact(deltas[i])) ? 1 : 0;
+            } else {
+                directIndexes.add(i);
+            }
+        }
+
+        List<String> directIds = new ArrayList<>(directIndexes.size());
+        long[] directDeltas = new long[directIndexes.size()];
+        for (int i = 0; i < directIndexes.size(); i++) {
+            directIds.add(memberIds.get(directIndexes.get(i)));
+            directDeltas[i] = deltas[directIndexes.get(i)];
+        }
+        int[] directCounts = delegate.incrementMoneyAll(directIds, directDeltas, batchSize);
+        for (int i = 0; i < directIndexes.size(); i++) {
+            counts[directIndexes.get(i)] = directCounts[i];
+        }
+        return counts;
+    }
+
+    private void flushQuietly() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("write-behind flush failed", e); // 세그먼트는 남아 있다. -> 다음 flush에서 재시도
+        }
+    }
+
+    private void afterCredit(CreditJournal.Segment segment, int count) {
+        credits.add(count);
+        if (segment.getCreditCount() >= flushThreshold && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RuntimeException e) {
+                flushRequested.set(false); // 종료 중 -> close()가 flush
+            }
+        }
+    }
+
+    /**
+     * 세그먼트 합계 반영 + 체크포인트 + 커밋 표시 삭제를 한 트랜잭션으로
+     * version은 반영한 입금 건수만큼 올린다. -> 조회 version(DB version + 대기 건수)이 flush 전후로 같다.
+     * 커밋 결과를 모르는 입금은 같은 트랜잭션에서 커밋 표시를 확인해서 합친다. (확인 실패 -> 예외, 아무것도 지우지 않는다.)
+     */
+    private void apply(long segmentId, Map<String, CreditJournal.Pending> segmentTotals, List<UnresolvedCredits> unknown) {
+        List<String> flushed = flushTransaction.execute(status -> {
+            Map<String, CreditJournal.Pending> totals = new HashMap<>(segmentTotals);
+            for (UnresolvedCredits credits : unknown) {
+                boolean committed = isCommitted(credits.txId());
+                if (committed) {
+                    for (int i = 0; i < credits.memberIds().size(); i++) {
+                        totals.merge(credits.memberIds().get(i), new CreditJournal.Pending(credits.deltas().get(i), 1), CreditJournal.Pending::plus);
+                    }
+                }
+                log.info("write-behind commit status resolved txId={}, committed={}, segment={}", credits.txId(), committed, segmentId);
+            }
+            List<String> memberIds = totals.keySet().stream().sorted().toList(); // 락 순서 고정
+            List<Object[]> args = memberIds.stream()
+                    .map(memberId -> new Object[]{totals.get(memberId).money(), totals.get(memberId).count(), memberId})
+                    .toList();
+
+            if (!memberIds.isEmpty()) {
+                int[] counts = template.batchUpdate("update member set money=money+?, version=version+? where member_id=?", args);
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == 0) {
+                        log.error("write-behind credit dropped memberId={}, pending={}, segment={}", memberIds.get(i), totals.get(memberIds.get(i)), segmentId);
+                    }
+                }
+            }
+            if (template.update("update member_write_behind_checkpoint set segment=? where name=?", segmentId, checkpointName) == 0) {
+                template.update("insert into member_write_behind_checkpoint(name, segment) values (?, ?)", checkpointName, segmentId);
+            }
+            template.update("delete from member_write_behind_tx where name = ? and segment = ?", checkpointName, segmentId);
+            return memberIds;
+        });
+        flushes.increment();
+        flushedRows.add(flushed.size());
+    }
+
+    private boolean isCommitted(long txId) {
+        return !template.queryForList("select 1 from member_write_behind_tx where name = ? and tx_id = ?", Integer.class, checkpointName, txId).isEmpty();
+    }
+
+    private long readCheckpoint() {
+        List<Long> checkpoint = template.queryForList("select segment from member_write_behind_checkpoint where name = ?", Long.class, checkpointName);
+        return checkpoint.isEmpty() ? 0 : checkpoint.get(0);
+    }
+
+    /**
+     * 체크포인트 이후 세그먼트의 대기 입금
+     */
+    private CreditJournal.Pending pending(String memberId, long checkpoint) {
+        CreditJournal current = journal;
+        if (current == null) {
+            return CreditJournal.Pending.NONE;
+        }
+        CreditJournal.Pending pending = CreditJournal.Pending.NONE;
+        for (CreditJournal.Segment segment : current.liveSegments()) {
+            if (segment.getId() > checkpoint) {
+                pending = pending.plus(segment.pending(memberId));
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * 이 트랜잭션에서 잠근 회원이면 잠글 때의 대기 입금, 아니면 지금의 대기 입금
+     */
+    private CreditJournal.Pending visiblePending(String memberId, long checkpoint) {
+        TransactionState state = (TransactionState) TransactionSynchronizationManager.getResource(this);
+        CreditJournal.Pending locked = state == null ? null : state.lockedPending.get(memberId);
+        return locked != null ? locked : pending(memberId, checkpoint);
+    }
+
+    /**
+     * 이 트랜잭션에서 findByIdForUpdate로 잠글 때 기억한 대기 입금
+     */
+    private Optional<CreditJournal.Pending> lockedPending(String memberId) {
+        TransactionState state = (TransactionState) TransactionSynchronizationManager.getResource(this);
+        return Optional.ofNullable(state == null ? null : state.lockedPending.get(memberId));
+    }
+
+    /**
+     * 트랜잭션 안에서 호출, 아직 잠그지 않았으면 잠근 후 대기 입금을 뺀 금액을 쓴다.
+     * @return 회원이 없으면 false
+     */
+    private boolean updateLocked(String memberId, int money) {
+        Optional<CreditJournal.Pending> locked = lockedPending(memberId);
+        if (locked.isEmpty()) {
+            if (findByIdForUpdate(memberId).isEmpty()) {
+                return false;
+            }
+            locked = lockedPending(memberId);
+        }
+        delegate.update(memberId, Math.toIntExact(money - locked.orElseThrow().money()));
+        return true;
+    }
+
+    private boolean exists(String memberId) {
+        return !template.queryForList("select 1 from member where member_id = ?", Integer.class, memberId).isEmpty();
+    }
+
+    private Optional<Member> findWithPending(String memberId) {
+        List<Member> members = template.query(SELECT_WITH_CHECKPOINT,
+                (rs, rowNum) -> withPending(new Member(rs.getString(1), rs.getInt(2), rs.getLong(3)), visiblePending(rs.getString(1), rs.getLong(4))),
+                checkpointName, memberId);
+        return members.stream().findFirst();
+    }
+
+    private Member addPending(Member member, long checkpoint) {
+        if (isWriteBehind(member.getMemberId())) {
+            return withPending(member, visiblePending(member.getMemberId(), checkpoint));
+        }
+        return member;
+    }
+
+    private static Member withPending(Member member, CreditJournal.Pending pending) {
+        member.setMoney(Math.toIntExact(member.getMoney() + pending.money()));
+        member.setVersion(member.getVersion() + pending.count());
+        return member;
+    }
+
+    private TransactionState transactionState() {
+        TransactionState state = (TransactionState) TransactionSynchronizationManager.getResource(this);
+        if (state == null) {
+            state = new TransactionState();
+            TransactionSynchronizationManager.bindResource(this, state);
+            TransactionSynchronizationManager.registerSynchronization(state);
+        }
+        return state;
+    }
+
+    /**
+     * 트랜잭션 별 상태: 입금(커밋 직전 커밋 표시 + 저널 기록 + fsync, 커밋 후 합계에 더하기), 잠근 회원의 대기 입금
+     * 트랜잭션이 보류(REQUIRES_NEW)되면 같이 unbind -> 안쪽 트랜잭션은 자기 상태를 따로 가진다.
+     */
+    private class TransactionState implements TransactionSynchronization {
+
+        private final List<String> memberIds = new ArrayList<>();
+        private final List<Integer> deltas = new ArrayList<>();
+        private final Map<String, CreditJournal.Pending> lockedPending = new HashMap<>();
+        private CreditJournal.Segment segment;
+        private long txId;
+
+        void add(String memberId, int delta) {
+            memberIds.add(memberId);
+            deltas.add(delta);
+        }
+
+        CreditJournal.Pending lock(String memberId, Supplier<CreditJournal.Pending> pending) {
+            return lockedPending.computeIfAbsent(memberId, key -> pending.get());
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(WriteBehindMemberRepository.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(WriteBehindMemberRepository.this, this);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (memberIds.isEmpty()) {
+                return;
+            }
+            segment = journal.acquire(); // afterCompletion에서 release -> 커밋 결과가 정해질 때까지 이 세그먼트는 flush 되지 않는다.
+            txId = txIds.incrementAndGet();
+            template.update("insert into member_write_behind_tx(name, tx_id, segment) values (?, ?, ?)", checkpointName, txId, segment.getId());
+            long position = 0;
+            for (int i = 0; i < memberIds.size(); i++) {
+                position = segment.append(memberIds.get(i), deltas.get(i), txId);
+            }
+            segment.sync(position);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(WriteBehindMemberRepository.this);
+            if (segment == null) {
+                return;
+            }
+
+            Boolean committed = null;
+            try {
+                committed = status == STATUS_UNKNOWN ? resolve() : Boolean.valueOf(status == STATUS_COMMITTED);
+                if (committed == null) {
+                    //release 전에 등록 -> flush는 이 세그먼트를 반영할 때 커밋 표시를 다시 확인한다.
+                    unresolved.computeIfAbsent(segment.getId(), id -> new CopyOnWriteArrayList<>())
+                            .add(new UnresolvedCredits(txId, List.copyOf(memberIds), List.copyOf(deltas)));
+                } else if (committed) {
+                    for (int i = 0; i < memberIds.size(); i++) {
+                        segment.add(memberIds.get(i), deltas.get(i));
+                    }
+                }
+            } finally {
+                segment.release();
+            }
+            if (Boolean.TRUE.equals(committed)) {
+                afterCredit(segment, memberIds.size());
+            }
+        }
+
+        //커밋 결과를 모르면 커밋 표시로 확인, 확인도 실패하면 null
+        private Boolean resolve() {
+            try {
+                return isCommitted(txId);
+            } catch (RuntimeException e) {
+                log.error("write-behind commit status unknown txId={}, segment={} -> flush 때 다시 확인", txId, segment.getId(), e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 커밋 결과를 모르는 트랜잭션의 입금
+     */
+    private record UnresolvedCredits(long txId, List<String> memberIds, List<Integer> deltas) {
+    }
+}
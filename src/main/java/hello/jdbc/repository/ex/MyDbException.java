@@ -2,6 +2,8 @@ package hello.jdbc.repository.ex;
 
 public class MyDbException extends RuntimeException {
 
+    private static final long serialVersionUID = 1L;
+
     public MyDbException() {
         super();
     }
@@ -5,6 +5,8 @@ package hello.jdbc.repository.ex;
  */
 public class MyDuplicateKeyException extends MyDbException{
 
+    private static final long serialVersionUID = 1L;
+
     public MyDuplicateKeyException() {
         super();
     }
@@ -0,0 +1,26 @@
+package hello.jdbc.repository.ex;
+
+/**
+ * 잔액 부족으로 출금 실패
+ * MyDbException을 상속 -> 기존 DB 예외 계층으로 함께 처리 가능
+ */
+public class MyInsufficientBalanceException extends MyDbException {
+
+    private static final long serialVersionUID = 1L;
+
+    public MyInsufficientBalanceException() {
+        super();
+    }
+
+    public MyInsufficientBalanceException(String message) {
+        super(message);
+    }
+
+    public MyInsufficientBalanceException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public MyInsufficientBalanceException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,22 @@
+package hello.jdbc.repository.ex;
+
+import org.springframework.dao.DuplicateKeyException;
+
+/**
+ * 스택 트레이스를 만들지 않는 DuplicateKeyException
+ * 키 중복처럼 예상된 실패를 잡아서 복구하는 경로용 -> 예외 생성 비용(fillInStackTrace)이 없다.
+ * 원인 SQLException(cause)과 메시지는 그대로 가지고 있다.
+ */
+public class StacklessDuplicateKeyException extends DuplicateKeyException {
+
+    private static final long serialVersionUID = 1L;
+
+    public StacklessDuplicateKeyException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,353 @@
+package hello.jdbc.repository.support;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 입금(memberId, delta) 기록용 append-only 저널
+ * 세그먼트 파일(credit-0000000000000001.log) 단위로 나누고, 세그먼트마다 아직 DB에 반영하지 않은 회원 별 합계(금액, 건수)를 같이 가진다.
+ *
+ * - 기록: [id 길이 2byte][id UTF-8][delta 8byte][txId 8byte][crc32 4byte]
+ *   txId: 트랜잭션 안의 입금이면 트랜잭션 id, 아니면 0 -> replay 때 커밋된 트랜잭션의 기록만 고른다.
+ * - append()는 파일 쓰기만, sync(position)이 fsync -> 여러 스레드의 fsync를 하나로 합친다. (먼저 들어온 스레드가 그때까지 쓴 전부를 fsync)
+ * - rotate(): 새 세그먼트로 교체, 이전 세그먼트는 sealed -> flush 후 retire()로 파일 삭제
+ * - acquire()/release(): 세그먼트를 사용중인 스레드 수, awaitQuiescent()로 sealed 세그먼트의 기록이 모두 합계에 더해질 때까지 기다린다.
+ *   -> 세그먼트 합계 = 세그먼트 파일의 커밋된 기록 합계 (flush 단위가 세그먼트와 정확히 일치)
+ * - replay(): 재시작 시 남은 파일 읽기, 중간에 잘린(크래시) 기록부터는 무시 -> fsync가 끝나지 않은 기록은 호출자가 성공을 받지 못했다.
+ */
+public class CreditJournal implements AutoCloseable {
+
+    private static final String PREFIX = "credit-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>(); // sealed + current (id 순서)
+    private volatile Segment current;
+    private long nextSegmentId;
+
+    public CreditJournal(Path directory, long firstSegmentId) {
+        this.directory = directory;
+        this.nextSegmentId = firstSegmentId;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.current = open();
+    }
+
+    /**
+     * 현재 세그먼트를 사용 시작 (release() 전까지 flush가 기다린다.)
+     */
+    public synchronized Segment acquire() {
+        Segment segment = current;
+        segment.inFlight.incrementAndGet();
+        return segment;
+    }
+
+    /**
+     * 현재 세그먼트를 sealed로 돌리고 새 세그먼트 시작
+     * @return sealed 된 세그먼트
+     */
+    public synchronized Segment rotate() {
+        Segment sealed = current;
+        current = open();
+        return sealed;
+    }
+
+    /**
+     * 아직 retire() 하지 않은 sealed 세그먼트 (오래된 순서)
+     */
+    public List<Segment> sealedSegments() {
+        Segment active = current;
+        return segments.stream().filter(segment -> segment != active).toList();
+    }
+
+    /**
+     * DB 반영 전 세그먼트 전체 (sealed + current)
+     */
+    public List<Segment> liveSegments() {
+        return Collections.unmodifiableList(segments);
+    }
+
+    public Segment currentSegment() {
+        return current;
+    }
+
+    /**
+     * DB에 반영한 세그먼트 파일 삭제
+     */
+    public void retire(Segment segment) {
+        segments.remove(segment);
+        segment.close();
+        delete(segment.path);
+    }
+
+    /**
+     * 비어 있는 현재 세그먼트 파일은 지운다.
+     */
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.close();
+            if (segment.written == 0) {
+                delete(segment.path);
+            }
+        }
+    }
+
+    /**
+     * 디렉토리에 남은 세그먼트 파일 (id 순서)
+     */
+    public static List<Path> list(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static long idOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * 세그먼트 파일의 회원 별 합계
+     * 잘렸거나 crc가 맞지 않는 기록부터는 읽지 않는다.
+     * @param committed txId가 커밋된 트랜잭션이면 true (txId 0은 트랜잭션 밖의 입금 -> 항상 포함)
+     */
+    public static Map<String, Pending> replay(Path path, LongPredicate committed) {
+        Map<String, Pending> totals = new LinkedHashMap<>();
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        while (buffer.remaining() >= Short.BYTES) {
+            int start = buffer.position();
+            int idLength = buffer.getShort() & 0xFFFF;
+            if (buffer.remaining() < idLength + Long.BYTES + Long.BYTES + Integer.BYTES) {
+                break; // 잘린 기록
+            }
+            byte[] id = new byte[idLength];
+            buffer.get(id);
+            long delta = buffer.getLong();
+            long txId = buffer.getLong();
+            int crc = buffer.getInt();
+            if (crc != crc(buffer.array(), start, Short.BYTES + idLength + Long.BYTES + Long.BYTES)) {
+                break;
+            }
+            if (txId == 0 || committed.test(txId)) {
+                totals.merge(new String(id, StandardCharsets.UTF_8), new Pending(delta, 1), Pending::plus);
+            }
+        }
+        return totals;
+    }
+
+    public static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Segment open() {
+        long id = nextSegmentId++;
+        Path path = directory.resolve(String.format("%s%016d%s", PREFIX, id, SUFFIX));
+        try {
+            Segment segment = new Segment(id, path, FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, offset, length);
+        return (int) crc32.getValue();
+    }
+
+    public static final class Segment {
+
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private final Object syncLock = new Object();
+
+        private final Map<String, Credits> pending = new ConcurrentHashMap<>();
+        private final LongAdder credits = new LongAdder();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private volatile long written;
+        private volatile long synced;
+
+        private Segment(long id, Path path, FileChannel channel) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * 파일에 기록 (fsync 전)
+         * @return 이 기록까지의 위치 -> sync(position)
+         */
+        public synchronized long append(String memberId, long delta, long txId) {
+            byte[] id = memberId.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(Short.BYTES + id.length + Long.BYTES + Long.BYTES + Integer.BYTES);
+            buffer.putShort((short) id.length).put(id).putLong(delta).putLong(txId);
+            buffer.putInt(crc(buffer.array(), 0, buffer.position()));
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            written += buffer.limit();
+            return written;
+        }
+
+        /**
+         * position 까지 fsync (다른 스레드가 이미 했으면 바로 반환)
+         */
+        public void sync(long position) {
+            if (synced >= position) {
+                return;
+            }
+            synchronized (syncLock) {
+                if (synced >= position) {
+                    return;
+                }
+                long target = written;
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                synced = target;
+            }
+        }
+
+        /**
+         * 파일에 기록하고 fsync 까지 끝난 입금을 합계에 더한다.
+         */
+        public void add(String memberId, long delta) {
+            pending.computeIfAbsent(memberId, key -> new Credits()).add(delta);
+            credits.increment();
+        }
+
+        public Pending pending(String memberId) {
+            Credits memberCredits = pending.get(memberId);
+            return memberCredits == null ? Pending.NONE : memberCredits.snapshot();
+        }
+
+        /**
+         * 회원 별 합계, awaitQuiescent() 후에 호출해야 정확하다.
+         */
+        public Map<String, Pending> totals() {
+            Map<String, Pending> totals = new LinkedHashMap<>();
+            pending.forEach((memberId, memberCredits) -> totals.put(memberId, memberCredits.snapshot()));
+            return totals;
+        }
+
+        public long getCreditCount() {
+            return credits.sum();
+        }
+
+        public boolean isEmpty() {
+            return written == 0 && inFlight.get() == 0;
+        }
+
+        public void release() {
+            inFlight.decrementAndGet();
+        }
+
+        /**
+         * 이 세그먼트를 사용중인 스레드가 모두 release() 할 때까지 대기
+         */
+        public void awaitQuiescent() {
+            while (inFlight.get() > 0) {
+                LockSupport.parkNanos(100_000); // 트랜잭션 커밋을 기다릴 수도 있다.
+            }
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Segment{id=" + id + ", written=" + written + "}";
+        }
+    }
+
+    /**
+     * 대기 입금 합계와 건수
+     * 건수는 조회 version에 더한다. -> 입금 한 건마다 version이 1 오른 것처럼 보인다. (updateIfVersion 충돌 감지)
+     */
+    public record Pending(long money, long count) {
+
+        public static final Pending NONE = new Pending(0, 0);
+
+        public Pending plus(Pending other) {
+            return new Pending(money + other.money, count + other.count);
+        }
+    }
+
+    /**
+     * 금액과 건수를 같이 바꾸고 같이 읽는다. -> 금액에는 있고 건수에는 없는 입금이 보이지 않는다.
+     */
+    private static final class Credits {
+
+        private long money;
+        private long count;
+
+        synchronized void add(long delta) {
+            money += delta;
+            count++;
+        }
+
+        synchronized Pending snapshot() {
+            return new Pending(money, count);
+        }
+    }
+}
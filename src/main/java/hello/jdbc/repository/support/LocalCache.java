@@ -0,0 +1,249 @@
+package hello.jdbc.repository.support;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * 크기 제한(LRU) + TTL + refresh-ahead 로컬 캐시
+ *
+ * 만료(ttl): 로딩 후 ttl이 지나면 캐시에서 버리고 다시 로딩
+ * refresh-ahead(refreshAfter): 로딩 후 refreshAfter가 지난 값을 읽으면, 기존 값은 그대로 돌려주고 백그라운드에서 미리 다시 로딩
+ *
+ * 무효화 중에 진행되던 로딩 결과가 캐시에 들어가지 않도록, 키를 나눈 stripe 별로 세대(generation)를 관리한다.
+ * -> 로딩 시작 시점 세대와 저장 시점 세대가 다르면(그 사이 무효화) 저장하지 않는다.
+ */
+@Slf4j
+public class LocalCache<K, V> {
+
+    private static final int GENERATION_STRIPES = 64;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long refreshAfterNanos;
+    private final Executor refreshExecutor;
+    private final LongSupplier ticker;
+
+    private final LinkedHashMap<K, CacheEntry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param refreshAfter null 또는 0이면 refresh-ahead 사용 안함
+     */
+    public LocalCache(int maxSize, Duration ttl, Duration refreshAfter) {
+        this(maxSize, ttl, refreshAfter, ForkJoinPool.commonPool(), System::nanoTime);
+    }
+
+    public LocalCache(int maxSize, Duration ttl, Duration refreshAfter, Executor refreshExecutor, LongSupplier ticker) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize는 1 이상이어야 합니다.");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.refreshAfterNanos = refreshAfter == null ? 0 : refreshAfter.toNanos();
+        this.refreshExecutor = refreshExecutor;
+        this.ticker = ticker;
+    }
+
+    /**
+     * 캐시에 있으면 반환, 없으면 loader로 로딩해서 저장 후 반환
+     * loader가 null을 반환하면 저장하지 않는다. loader 예외는 그대로 전파
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V cached = getIfPresent(key, loader);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = generations.get(stripe(key));
+        V value = loader.apply(key);
+        loads.incrementAndGet();
+        if (value != null) {
+            putIfGeneration(key, value, generation);
+        }
+        return value;
+    }
+
+    /**
+     * 여러 키 조회, 캐시에 없는 키만 모아서 bulkLoader 한 번으로 로딩
+     */
+    public Map<K, V> getAll(Collection<K> keys, Function<List<K>, Map<K, V>> bulkLoader) {
+        Map<K, V> result = new HashMap<>(keys.size() * 2);
+        List<K> missingKeys = new ArrayList<>();
+
+        for (K key : keys) {
+            V cached = getIfPresent(key, null);
+            if (cached == null) {
+                missingKeys.add(key);
+            } else {
+                result.put(key, cached);
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return result;
+        }
+
+        long[] generationSnapshot = new long[missingKeys.size()];
+        for (int i = 0; i < missingKeys.size(); i++) {
+            generationSnapshot[i] = generations.get(stripe(missingKeys.get(i)));
+        }
+
+        Map<K, V> loaded = bulkLoader.apply(missingKeys);
+        loads.incrementAndGet();
+        for (int i = 0; i < missingKeys.size(); i++) {
+            K key = missingKeys.get(i);
+            V value = loaded.get(key);
+            if (value != null) {
+                putIfGeneration(key, value, generationSnapshot[i]);
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    public void invalidate(K key) {
+        generations.incrementAndGet(stripe(key)); // 진행중인 로딩 결과 폐기
+        synchronized (this) {
+            entries.remove(key);
+        }
+    }
+
+    public void invalidateAll(Collection<? extends K> keys) {
+        for (K key : keys) {
+            invalidate(key);
+        }
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        synchronized (this) {
+            entries.clear();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    private V getIfPresent(K key, Function<? super K, ? extends V> refresher) {
+        long now = ticker.getAsLong();
+        CacheEntry<V> entry;
+
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && now - entry.loadedAt >= ttlNanos) {
+                entries.remove(key); // 만료
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        if (refresher != null && refreshAfterNanos > 0 && now - entry.loadedAt >= refreshAfterNanos) {
+            refreshAsync(key, refresher);
+        }
+        return entry.value;
+    }
+
+    private void refreshAsync(K key, Function<? super K, ? extends V> loader) {
+        if (!refreshing.add(key)) {
+            return; // 이미 갱신 중
+        }
+
+        long generation = generations.get(stripe(key));
+        refreshExecutor.execute(() -> {
+            try {
+                V value = loader.apply(key);
+                refreshes.incrementAndGet();
+                if (value == null) {
+                    invalidate(key);
+                } else {
+                    putIfGeneration(key, value, generation);
+                }
+            } catch (RuntimeException e) {
+                log.info("refresh failed key={} -> invalidate", key, e);
+                invalidate(key);
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+
+    private void putIfGeneration(K key, V value, long generation) {
+        int stripe = stripe(key);
+        synchronized (this) {
+            if (generations.get(stripe) != generation) {
+                return; // 로딩 중에 무효화됨
+            }
+            entries.put(key, new CacheEntry<>(value, ticker.getAsLong()));
+
+            Iterator<CacheEntry<V>> it = entries.values().iterator();
+            while (entries.size() > maxSize && it.hasNext()) {
+                it.next();
+                it.remove(); // 가장 오래 사용하지 않은 엔트리부터 제거
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private int stripe(K key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    private record CacheEntry<V>(V value, long loadedAt) {
+    }
+}
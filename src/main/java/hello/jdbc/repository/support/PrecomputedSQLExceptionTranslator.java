@@ -0,0 +1,230 @@
+package hello.jdbc.repository.support;
+
+import hello.jdbc.repository.ex.StacklessDuplicateKeyException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.CannotSerializeTransactionException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.PermissionDeniedDataAccessException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.InvalidResultSetAccessException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.support.SQLErrorCodes;
+import org.springframework.jdbc.support.SQLErrorCodesFactory;
+import org.springframework.jdbc.support.SQLExceptionSubclassTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+import javax.sql.DataSource;
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 에러 코드 -> 스프링 예외 변환을 미리 만들어 둔 표로 처리하는 SQLExceptionTranslator
+ *
+ * SQLErrorCodeSQLExceptionTranslator와 같은 예외를 만들지만
+ * - sql-error-codes.xml 의 코드 목록을 DB 제품별로 한 번만 정렬된 int[] 표로 만들어 공유한다. (레포지토리마다 따로 만들지 않는다.)
+ * - 변환할 때는 이진 탐색 한 번 (문자열 변환, 배열 순회 없음)
+ * - DB 메타데이터는 처음 변환할 때 DataSource 당 한 번만 조회 (SQLErrorCodesFactory 캐시)
+ *
+ * stacklessExpected(): 예상된 실패(키 중복)는 StacklessDuplicateKeyException으로 -> 스택 트레이스 생성 비용 없음
+ *
+ * 표에 없는 코드는 SQLExceptionSubclassTranslator(SQLState/예외 타입)로 넘긴다.
+ * sql-error-codes.xml의 customTranslations, customSqlExceptionTranslator는 지원하지 않는다.
+ */
+@Slf4j
+public class PrecomputedSQLExceptionTranslator implements SQLExceptionTranslator {
+
+    private static final Map<String, ErrorCodeTable> TABLES = new ConcurrentHashMap<>();
+
+    private static final SQLExceptionSubclassTranslator FALLBACK = new SQLExceptionSubclassTranslator();
+
+    private final DataSource dataSource;
+    private final boolean stacklessExpected;
+    private volatile ErrorCodeTable table;
+
+    private PrecomputedSQLExceptionTranslator(DataSource dataSource, ErrorCodeTable table, boolean stacklessExpected) {
+        this.dataSource = dataSource;
+        this.table = table;
+        this.stacklessExpected = stacklessExpected;
+    }
+
+    /**
+     * 표는 처음 변환할 때 DB 제품을 확인해서 결정 (생성 시점에는 커넥션을 쓰지 않는다.)
+     * 같은 DB 제품이면 모든 translator가 같은 표를 공유한다.
+     */
+    public static PrecomputedSQLExceptionTranslator forDataSource(DataSource dataSource) {
+        return new PrecomputedSQLExceptionTranslator(dataSource, null, false);
+    }
+
+    /**
+     * DB 제품 이름("H2", "MySQL" ...)으로 바로 만든다. -> 메타데이터 조회 없음
+     */
+    public static PrecomputedSQLExceptionTranslator forDatabase(String databaseProductName) {
+        SQLErrorCodes errorCodes = SQLErrorCodesFactory.getInstance().getErrorCodes(databaseProductName);
+        return new PrecomputedSQLExceptionTranslator(null, table(errorCodes), false);
+    }
+
+    /**
+     * 같은 표를 쓰고, 키 중복은 스택 트레이스 없는 예외로 만드는 translator
+     */
+    public PrecomputedSQLExceptionTranslator stacklessExpected() {
+        return new PrecomputedSQLExceptionTranslator(dataSource, table, true);
+    }
+
+    @Override
+    public DataAccessException translate(String task, String sql, SQLException ex) {
+        SQLException sqlEx = ex;
+        if (sqlEx instanceof BatchUpdateException && sqlEx.getNextException() != null) {
+            sqlEx = sqlEx.getNextException(); // 배치는 실제 원인이 next에 있다.
+        }
+
+        Category category = table().categoryOf(sqlEx);
+        if (category != null) {
+            return create(category, task, sql, sqlEx);
+        }
+
+        DataAccessException fallback = FALLBACK.translate(task, sql, ex);
+        return fallback != null ? fallback : new UncategorizedSQLException(task, sql, ex);
+    }
+
+    @SuppressWarnings("deprecation") // SQLErrorCodeSQLExceptionTranslator와 같은 예외 타입 유지
+    private DataAccessException create(Category category, String task, String sql, SQLException sqlEx) {
+        return switch (category) {
+            case BAD_SQL_GRAMMAR -> new BadSqlGrammarException(task, sql != null ? sql : "", sqlEx);
+            case INVALID_RESULT_SET_ACCESS -> new InvalidResultSetAccessException(task, sql != null ? sql : "", sqlEx);
+            case DUPLICATE_KEY -> stacklessExpected
+                    ? new StacklessDuplicateKeyException(buildMessage(task, sql, sqlEx), sqlEx)
+                    : new DuplicateKeyException(buildMessage(task, sql, sqlEx), sqlEx);
+            case DATA_INTEGRITY_VIOLATION -> new DataIntegrityViolationException(buildMessage(task, sql, sqlEx), sqlEx);
+            case PERMISSION_DENIED -> new PermissionDeniedDataAccessException(buildMessage(task, sql, sqlEx), sqlEx);
+            case DATA_ACCESS_RESOURCE_FAILURE -> new DataAccessResourceFailureException(buildMessage(task, sql, sqlEx), sqlEx);
+            case TRANSIENT_DATA_ACCESS_RESOURCE -> new TransientDataAccessResourceException(buildMessage(task, sql, sqlEx), sqlEx);
+            case CANNOT_ACQUIRE_LOCK -> new CannotAcquireLockException(buildMessage(task, sql, sqlEx), sqlEx);
+            case DEADLOCK_LOSER -> new DeadlockLoserDataAccessException(buildMessage(task, sql, sqlEx), sqlEx);
+            case CANNOT_SERIALIZE_TRANSACTION -> new CannotSerializeTransactionException(buildMessage(task, sql, sqlEx), sqlEx);
+        };
+    }
+
+    private String buildMessage(String task, String sql, SQLException ex) {
+        return task + "; " + (sql != null ? "SQL [" + sql + "]; " : "") + ex.getMessage();
+    }
+
+    private ErrorCodeTable table() {
+        ErrorCodeTable resolved = table;
+        if (resolved == null) {
+            resolved = table(SQLErrorCodesFactory.getInstance().getErrorCodes(dataSource));
+            table = resolved;
+        }
+        return resolved;
+    }
+
+    private static ErrorCodeTable table(SQLErrorCodes errorCodes) {
+        String productName = errorCodes.getDatabaseProductName();
+        if (productName == null) {
+            return ErrorCodeTable.build(errorCodes); // 제품을 확인 못한 DB -> 공유하지 않는다.
+        }
+        return TABLES.computeIfAbsent(productName, name -> {
+            log.info("precompute sql error codes databaseProductName={}", name);
+            return ErrorCodeTable.build(errorCodes);
+        });
+    }
+
+    /**
+     * sql-error-codes.xml 의 분류
+     */
+    private enum Category {
+        BAD_SQL_GRAMMAR,
+        INVALID_RESULT_SET_ACCESS,
+        DUPLICATE_KEY,
+        DATA_INTEGRITY_VIOLATION,
+        PERMISSION_DENIED,
+        DATA_ACCESS_RESOURCE_FAILURE,
+        TRANSIENT_DATA_ACCESS_RESOURCE,
+        CANNOT_ACQUIRE_LOCK,
+        DEADLOCK_LOSER,
+        CANNOT_SERIALIZE_TRANSACTION
+    }
+
+    /**
+     * 에러 코드 표
+     * - 숫자 에러 코드(H2, MySQL, Oracle ...): 정렬된 int[] + 이진 탐색
+     * - SQLState로 변환하는 DB(PostgreSQL ...): SQLState 문자열 HashMap
+     */
+    private static final class ErrorCodeTable {
+
+        private final boolean useSqlState;
+        private final int[] codes;
+        private final Category[] categories;
+        private final Map<String, Category> sqlStates;
+
+        private ErrorCodeTable(boolean useSqlState, int[] codes, Category[] categories, Map<String, Category> sqlStates) {
+            this.useSqlState = useSqlState;
+            this.codes = codes;
+            this.categories = categories;
+            this.sqlStates = sqlStates;
+        }
+
+        private Category categoryOf(SQLException ex) {
+            if (useSqlState) {
+                String sqlState = ex.getSQLState();
+                return sqlState == null ? null : sqlStates.get(sqlState);
+            }
+            int index = Arrays.binarySearch(codes, ex.getErrorCode());
+            return index >= 0 ? categories[index] : null;
+        }
+
+        private static ErrorCodeTable build(SQLErrorCodes errorCodes) {
+            //SQLErrorCodeSQLExceptionTranslator가 확인하는 순서 -> 여러 분류에 있는 코드는 앞의 분류가 이긴다.
+            Map<String, Category> byCode = new HashMap<>();
+            putAll(byCode, errorCodes.getBadSqlGrammarCodes(), Category.BAD_SQL_GRAMMAR);
+            putAll(byCode, errorCodes.getInvalidResultSetAccessCodes(), Category.INVALID_RESULT_SET_ACCESS);
+            putAll(byCode, errorCodes.getDuplicateKeyCodes(), Category.DUPLICATE_KEY);
+            putAll(byCode, errorCodes.getDataIntegrityViolationCodes(), Category.DATA_INTEGRITY_VIOLATION);
+            putAll(byCode, errorCodes.getPermissionDeniedCodes(), Category.PERMISSION_DENIED);
+            putAll(byCode, errorCodes.getDataAccessResourceFailureCodes(), Category.DATA_ACCESS_RESOURCE_FAILURE);
+            putAll(byCode, errorCodes.getTransientDataAccessResourceCodes(), Category.TRANSIENT_DATA_ACCESS_RESOURCE);
+            putAll(byCode, errorCodes.getCannotAcquireLockCodes(), Category.CANNOT_ACQUIRE_LOCK);
+            putAll(byCode, errorCodes.getDeadlockLoserCodes(), Category.DEADLOCK_LOSER);
+            putAll(byCode, errorCodes.getCannotSerializeTransactionCodes(), Category.CANNOT_SERIALIZE_TRANSACTION);
+
+            if (errorCodes.isUseSqlStateForTranslation()) {
+                return new ErrorCodeTable(true, new int[0], new Category[0], byCode);
+            }
+
+            TreeMap<Integer, Category> sorted = new TreeMap<>();
+            byCode.forEach((code, category) -> {
+                try {
+                    sorted.put(Integer.parseInt(code.trim()), category);
+                } catch (NumberFormatException e) {
+                    log.warn("숫자가 아닌 에러 코드는 무시 code={}", code);
+                }
+            });
+
+            int[] codes = new int[sorted.size()];
+            Category[] categories = new Category[sorted.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Category> entry : sorted.entrySet()) {
+                codes[i] = entry.getKey();
+                categories[i] = entry.getValue();
+                i++;
+            }
+            return new ErrorCodeTable(false, codes, categories, Map.of());
+        }
+
+        private static void putAll(Map<String, Category> byCode, String[] codes, Category category) {
+            for (String code : codes) {
+                byCode.putIfAbsent(code, category);
+            }
+        }
+    }
+}
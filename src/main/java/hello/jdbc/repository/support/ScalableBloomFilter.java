@@ -0,0 +1,223 @@
+package hello.jdbc.repository.support;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 문자열 키용 확장형(scalable) 블룸 필터
+ *
+ * 블룸 필터
+ * - mightContain()이 false면 한 번도 넣지 않은 키 (확실한 부재)
+ * - true면 넣었을 수도 있는 키 (오탐 가능) -> 삭제는 지원하지 않는다.
+ *
+ * 확장형
+ * - 단계(stage)가 용량(capacity)만큼 차면 2배 크기의 단계를 새로 붙인다. 새 단계의 오탐률은 이전의 절반
+ * - 전체 오탐률은 fpp * (1 + 1/2 + 1/4 ...) 이하 -> 첫 단계를 fpp/2로 만들어 전체를 fpp 이하로 유지
+ *
+ * 동시성
+ * - 비트는 AtomicLongArray에 CAS로 OR -> put/mightContain 모두 락 없음
+ * - 단계 추가만 synchronized
+ */
+public class ScalableBloomFilter {
+
+    private static final int GROWTH_FACTOR = 2;
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private final double fpp;
+    private volatile Stage[] stages;
+
+    /**
+     * @param expectedInsertions 첫 단계 용량
+     * @param fpp 목표 오탐률 (0 < fpp < 1)
+     */
+    public ScalableBloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions는 1 이상이어야 합니다. expectedInsertions=" + expectedInsertions);
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp는 0과 1 사이여야 합니다. fpp=" + fpp);
+        }
+        this.fpp = fpp;
+        this.stages = new Stage[]{new Stage(expectedInsertions, fpp * (1 - TIGHTENING_RATIO))};
+    }
+
+    public boolean mightContain(String key) {
+        long hash1 = hash(key);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        for (Stage stage : stages) {
+            if (stage.mightContain(hash1, hash2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 새로 추가했으면 true, 이미 있던(것으로 보이는) 키면 false
+     */
+    public boolean put(String key) {
+        long hash1 = hash(key);
+        long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        Stage[] current = stages;
+        for (Stage stage : current) {
+            if (stage.mightContain(hash1, hash2)) {
+                return false;
+            }
+        }
+
+        Stage last = current[current.length - 1];
+        if (last.isFull()) {
+            last = grow(last);
+        }
+        last.put(hash1, hash2);
+        return true;
+    }
+
+    private synchronized Stage grow(Stage full) {
+        Stage[] current = stages;
+        Stage last = current[current.length - 1];
+        if (last != full) {
+            return last; //다른 스레드가 이미 추가
+        }
+
+        Stage[] grown = new Stage[current.length + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        grown[current.length] = new Stage(last.capacity * GROWTH_FACTOR, last.fpp * TIGHTENING_RATIO);
+        stages = grown;
+        return grown[current.length];
+    }
+
+    /**
+     * 설정한 목표 오탐률
+     */
+    public double getFpp() {
+        return fpp;
+    }
+
+    /**
+     * 현재 채워진 정도로 계산한 예상 오탐률
+     * 단계별 (채워진 비트 비율)^k 를 합한 값 (상한)
+     */
+    public double getExpectedFpp() {
+        double sum = 0;
+        for (Stage stage : stages) {
+            sum += stage.expectedFpp();
+        }
+        return Math.min(1.0, sum);
+    }
+
+    /**
+     * 추가한 키 수 (이미 있던 것으로 보인 키는 제외)
+     */
+    public long getInsertions() {
+        long sum = 0;
+        for (Stage stage : stages) {
+            sum += stage.insertions.get();
+        }
+        return sum;
+    }
+
+    public long getBitSize() {
+        long sum = 0;
+        for (Stage stage : stages) {
+            sum += stage.bitSize;
+        }
+        return sum;
+    }
+
+    public long getMemoryBytes() {
+        return getBitSize() / Byte.SIZE;
+    }
+
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    //FNV-1a 64bit + 마무리 섞기
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    //MurmurHash3 fmix64
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Stage {
+
+        private final long capacity;
+        private final double fpp;
+        private final long bitSize;
+        private final int hashCount;
+        private final AtomicLongArray bits;
+        private final AtomicLong insertions = new AtomicLong();
+
+        private Stage(long capacity, double fpp) {
+            this.capacity = capacity;
+            this.fpp = fpp;
+
+            //m = -n ln p / (ln 2)^2, k = m/n ln 2
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + Long.SIZE - 1) / Long.SIZE));
+            this.bitSize = (long) words * Long.SIZE;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitSize / capacity * Math.log(2)));
+            this.bits = new AtomicLongArray(words);
+        }
+
+        private boolean isFull() {
+            return insertions.get() >= capacity;
+        }
+
+        //Kirsch-Mitzenmacher: i번째 해시 = hash1 + i * hash2
+        private boolean mightContain(long hash1, long hash2) {
+            long combined = hash1;
+            for (int i = 0; i < hashCount; i++) {
+                long index = (combined & Long.MAX_VALUE) % bitSize;
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+                combined += hash2;
+            }
+            return true;
+        }
+
+        private void put(long hash1, long hash2) {
+            long combined = hash1;
+            for (int i = 0; i < hashCount; i++) {
+                long index = (combined & Long.MAX_VALUE) % bitSize;
+                setBit((int) (index >>> 6), 1L << index);
+                combined += hash2;
+            }
+            insertions.incrementAndGet();
+        }
+
+        private void setBit(int word, long mask) {
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    return;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+
+        private double expectedFpp() {
+            long setBits = 0;
+            for (int i = 0; i < bits.length(); i++) {
+                setBits += Long.bitCount(bits.get(i));
+            }
+            return Math.pow((double) setBits / bitSize, hashCount);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package hello.jdbc.repository.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 커넥션 + sql 별 PreparedStatement 캐시
+ *
+ * 커넥션 풀(HikariCP)은 커넥션을 반납할 때 그 커넥션으로 만든 Statement를 모두 닫는다.
+ * -> 풀이 감싼 프록시가 아니라 실제(물리) 커넥션을 unwrap 해서 Statement를 만들고, 물리 커넥션 기준으로 캐시한다.
+ * -> 같은 물리 커넥션을 다시 빌려오면 sql 파싱 없이 캐시된 Statement를 재사용
+ *
+ * 커넥션 당 maxStatementsPerConnection 개까지 LRU로 유지하고, 넘치면 가장 오래 안 쓴 Statement를 닫는다.
+ * 물리 커넥션이 닫히면(풀에서 제거) 해당 커넥션의 캐시를 버린다. (새 물리 커넥션이 들어올 때 확인)
+ * 캐시하는 물리 커넥션은 maxConnections 개까지 -> 전체 Statement 수는 maxConnections * maxStatementsPerConnection 이하
+ *   넘치면 가장 오래 안 쓴 커넥션의 캐시를 닫는다. (풀이 줄어들어 닫힌 커넥션이 새 커넥션 없이 남는 경우도 여기서 정리)
+ *
+ * prepare()로 빌린 Statement는 반드시 release()로 돌려줘야 한다. (close() 하지 않는다)
+ * 풀이 커넥션을 한 번에 한 스레드에만 빌려주는 것을 전제로 한다.
+ */
+@Slf4j
+public class StatementCache {
+
+    public static final int DEFAULT_MAX_STATEMENTS_PER_CONNECTION = 64;
+    public static final int DEFAULT_MAX_CONNECTIONS = 32;
+
+    private final int maxStatementsPerConnection;
+    private final int maxConnections;
+    private final Map<Connection, ConnectionStatements> cache = new ConcurrentHashMap<>();
+    private final Map<PreparedStatement, ConnectionStatements> leased = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong connectionEvictions = new AtomicLong();
+
+    public StatementCache() {
+        this(DEFAULT_MAX_STATEMENTS_PER_CONNECTION);
+    }
+
+    public StatementCache(int maxStatementsPerConnection) {
+        this(maxStatementsPerConnection, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    public StatementCache(int maxStatementsPerConnection, int maxConnections) {
+        if (maxStatementsPerConnection <= 0) {
+            throw new IllegalArgumentException("maxStatementsPerConnection는 1 이상이어야 합니다.");
+        }
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("maxConnections는 1 이상이어야 합니다.");
+        }
+        this.maxStatementsPerConnection = maxStatementsPerConnection;
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * 캐시된 Statement를 빌려온다. 없으면 물리 커넥션으로 새로 만든다.
+     * 같은 sql의 Statement를 이미 사용 중이면(ResultSet이 열려있는 등) 캐시하지 않는 Statement를 따로 만든다.
+     */
+    public PreparedStatement prepare(Connection con, String sql) throws SQLException {
+        Connection physical = physicalConnection(con);
+
+        ConnectionStatements statements = cache.get(physical);
+        if (statements == null) {
+            purgeClosedConnections(); // 새 물리 커넥션이 들어올 때 닫힌 커넥션 정리
+            statements = cache.computeIfAbsent(physical, key -> new ConnectionStatements());
+            evictConnectionsIfFull(physical);
+        }
+
+        PreparedStatement pstmt = statements.lease(physical, sql);
+        leased.put(pstmt, statements);
+        return pstmt;
+    }
+
+    /**
+     * prepare()로 빌린 Statement 반납
+     * 캐시된 Statement는 파라미터, 배치만 비우고 열어둔다. 캐시 대상이 아니면 닫는다.
+     */
+    public void release(PreparedStatement pstmt) {
+        if (pstmt == null) {
+            return;
+        }
+
+        ConnectionStatements statements = leased.remove(pstmt);
+        if (statements == null) {
+            JdbcUtils.closeStatement(pstmt);
+            return;
+        }
+        statements.giveBack(pstmt);
+    }
+
+    /**
+     * 물리 커넥션의 캐시를 모두 닫고 버린다.
+     */
+    public void invalidate(Connection con) throws SQLException {
+        ConnectionStatements statements = cache.remove(physicalConnection(con));
+        if (statements != null) {
+            statements.closeAll();
+        }
+    }
+
+    public void clear() {
+        for (Iterator<ConnectionStatements> it = cache.values().iterator(); it.hasNext(); ) {
+            ConnectionStatements statements = it.next();
+            it.remove();
+            statements.closeAll();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * maxConnections를 넘어서 캐시를 버린 물리 커넥션 수
+     */
+    public long getConnectionEvictionCount() {
+        return connectionEvictions.get();
+    }
+
+    public int getCachedConnectionCount() {
+        return cache.size();
+    }
+
+    private Connection physicalConnection(Connection con) throws SQLException {
+        return con.isWrapperFor(Connection.class) ? con.unwrap(Connection.class) : con;
+    }
+
+    private void purgeClosedConnections() {
+        for (Iterator<Map.Entry<Connection, ConnectionStatements>> it = cache.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Connection, ConnectionStatements> entry = it.next();
+            if (isClosed(entry.getKey())) {
+                it.remove();
+                entry.getValue().closeAll(); // 이미 드라이버가 닫았지만 참조 정리
+                log.debug("statement cache invalidated, closed connection={}", entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * 가장 오래 안 쓴 커넥션의 캐시부터 닫는다. (방금 들어온 커넥션은 제외)
+     */
+    private void evictConnectionsIfFull(Connection current) {
+        while (cache.size() > maxConnections) {
+            Map.Entry<Connection, ConnectionStatements> eldest = null;
+            for (Map.Entry<Connection, ConnectionStatements> entry : cache.entrySet()) {
+                if (entry.getKey() != current && (eldest == null || entry.getValue().lastUsedNanos - eldest.getValue().lastUsedNanos < 0)) {
+                    eldest = entry;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            if (cache.remove(eldest.getKey(), eldest.getValue())) {
+                eldest.getValue().closeAll();
+                connectionEvictions.incrementAndGet();
+                log.debug("statement cache evicted connection={}", eldest.getKey());
+            }
+        }
+    }
+
+    private boolean isClosed(Connection con) {
+        try {
+            return con.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * 물리 커넥션 하나의 sql -> Statement LRU
+     */
+    private class ConnectionStatements {
+
+        private final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+        private final Set<PreparedStatement> inUse = newIdentitySet();
+        private final Set<PreparedStatement> closeOnRelease = newIdentitySet();
+        private volatile long lastUsedNanos = System.nanoTime();
+        private boolean closed; // 캐시에서 빠졌다. -> 이후 만드는 Statement는 캐시하지 않는다.
+
+        synchronized PreparedStatement lease(Connection physical, String sql) throws SQLException {
+            lastUsedNanos = System.nanoTime();
+            if (closed) {
+                misses.incrementAndGet();
+                PreparedStatement created = physical.prepareStatement(sql);
+                closeOnRelease.add(created);
+                inUse.add(created);
+                return created;
+            }
+
+            PreparedStatement pstmt = statements.get(sql);
+
+            if (pstmt != null && pstmt.isClosed()) {
+                statements.remove(sql);
+                pstmt = null;
+            }
+
+            if (pstmt != null && !inUse.contains(pstmt)) {
+                hits.incrementAndGet();
+                inUse.add(pstmt);
+                return pstmt;
+            }
+
+            misses.incrementAndGet();
+            PreparedStatement created = physical.prepareStatement(sql);
+            if (pstmt != null) {
+                closeOnRelease.add(created); // 같은 sql을 이미 사용 중 -> 이번 것은 캐시하지 않는다.
+            } else {
+                statements.put(sql, created);
+                evictIfFull();
+            }
+            inUse.add(created);
+            return created;
+        }
+
+        synchronized void giveBack(PreparedStatement pstmt) {
+            inUse.remove(pstmt);
+
+            if (closeOnRelease.remove(pstmt)) {
+                JdbcUtils.closeStatement(pstmt);
+                return;
+            }
+
+            try {
+                pstmt.clearParameters();
+                pstmt.clearBatch();
+            } catch (SQLException e) {
+                // 재사용할 수 없는 Statement -> 캐시에서 제거
+                statements.values().remove(pstmt);
+                JdbcUtils.closeStatement(pstmt);
+            }
+        }
+
+        synchronized void closeAll() {
+            closed = true;
+            for (PreparedStatement pstmt : statements.values()) {
+                if (inUse.contains(pstmt)) {
+                    closeOnRelease.add(pstmt);
+                } else {
+                    JdbcUtils.closeStatement(pstmt);
+                }
+            }
+            statements.clear();
+        }
+
+        private void evictIfFull() {
+            Iterator<PreparedStatement> it = statements.values().iterator();
+            while (statements.size() > maxStatementsPerConnection && it.hasNext()) {
+                PreparedStatement eldest = it.next();
+                it.remove();
+                evictions.incrementAndGet();
+
+                if (inUse.contains(eldest)) {
+                    closeOnRelease.add(eldest);
+                } else {
+                    JdbcUtils.closeStatement(eldest);
+                }
+            }
+        }
+
+        private Set<PreparedStatement> newIdentitySet() {
+            return Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+    }
+}
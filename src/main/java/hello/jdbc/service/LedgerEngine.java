@@ -0,0 +1,533 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.ex.MyInsufficientBalanceException;
+import hello.jdbc.service.support.CommandRingBuffer;
+import hello.jdbc.service.support.MappedJournal;
+import hello.jdbc.service.support.StringLongMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 메모리 안에서 이체하는 단일 쓰기 스레드 원장 엔진 (LMAX 방식)
+ * accountTransfer(fromId, toId, money)의 계약과 검증 순서는 MemberServiceV4 기본 모드(READ_MODIFY_WRITE)와 같다.
+ * - 없는 회원(보내는 회원, 받는 회원 순서) -> NoSuchElementException, 받는 회원이 "ex" -> IllegalStateException
+ * - 잔액 부족 -> MyInsufficientBalanceException (DELTA, PROCEDURE 모드와 같다. READ_MODIFY_WRITE는 잔액을 확인하지 않는다.)
+ *
+ * 구조
+ * - 잔액은 엔진 스레드 하나만 읽고 쓴다. (memberId -> slot 번호 StringLongMap, 잔액 long[]) -> 락, 트랜잭션 없음
+ * - 요청은 CommandRingBuffer로 전달, 엔진 스레드가 쌓인 만큼 한 번에 처리
+ * - 성공한 이체는 MappedJournal에 기록, 묶음 처리 후 force() 한 번 -> 그 다음에 호출자에게 응답 (디스크에 남은 이체만 성공)
+ * - persistInterval 마다 바뀐 잔액(스냅샷)을 member 테이블에 updateAll + 체크포인트(스냅샷 sequence)를 한 트랜잭션으로 저장
+ *   저장한 sequence 까지의 저널 파일은 삭제
+ *
+ * 재시작(afterPropertiesSet)
+ * - member 테이블 = 체크포인트 시점의 스냅샷 -> 전체 로딩 후 체크포인트 이후 저널 기록을 다시 적용
+ *
+ * 저널 기록 실패
+ * - 메모리 잔액과 저널이 어긋난다. -> 새 요청은 거절, 이미 링에 들어온(또는 슬롯을 기다리는) 요청은 모두 실패로 응답
+ * - 저장(persist)하지 않는다. -> 재시작 시 마지막 체크포인트 + 저널로 복구
+ *
+ * 주의
+ * - 엔진이 member 잔액의 유일한 쓰기 주체여야 한다. (엔진 실행 중 다른 서비스가 잔액을 바꾸면 덮어쓴다.)
+ * - 회원 목록은 시작할 때 읽는다. (이후에 추가된 회원은 없는 회원)
+ * - 체크포인트 이름은 저널 디렉토리 이름 -> 인스턴스마다 다른 디렉토리
+ *
+ * create table ledger_checkpoint (
+ *     name varchar(100) primary key,
+ *     sequence bigint not null
+ * );
+ */
+@Slf4j
+public class LedgerEngine implements TransferService, InitializingBean, AutoCloseable {
+
+    public static final int DEFAULT_JOURNAL_FILE_SIZE = 64 * 1024 * 1024;
+
+    private final MemberRepository memberRepository;
+    private final JdbcTemplate template;
+    private final TransactionTemplate transactionTemplate;
+    private final Path journalDirectory;
+    private final String checkpointName;
+    private final int journalFileSize;
+    private final Duration persistInterval;
+
+    private final CommandRingBuffer<Command> ring;
+    private final AtomicInteger producers = new AtomicInteger();
+    private final AtomicReference<CompletableFuture<Snapshot>> snapshotRequest = new AtomicReference<>();
+    private final ScheduledExecutorService persister;
+    private Thread engineThread;
+    private volatile boolean running;
+    private volatile boolean stopped;
+    private volatile RuntimeException failure; // 저널 기록 실패
+
+    //엔진 스레드 전용 (시작 전에는 afterPropertiesSet 스레드)
+    private final StringLongMap slots = new StringLongMap();
+    private String[] memberIds = new String[16];
+    private long[] balances = new long[16];
+    private boolean[] dirty = new boolean[16];
+    private int[] dirtySlots = new int[16];
+    private int dirtyCount;
+    private int size;
+    private long sequence;
+    private MappedJournal journal;
+
+    //persister 전용
+    private final Map<String, Long> unpersisted = new TreeMap<>(); // 저장 실패한 스냅샷 -> 다음 저장에 합친다.
+    private long persistedSequence;
+
+    private final LongAdder transfers = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder persists = new LongAdder();
+
+    public LedgerEngine(MemberRepository memberRepository, DataSource dataSource, Path journalDirectory,
+                        int ringCapacity, Duration persistInterval) {
+        this(memberRepository, dataSource, journalDirectory, ringCapacity, persistInterval, DEFAULT_JOURNAL_FILE_SIZE);
+    }
+
+    public LedgerEngine(MemberRepository memberRepository, DataSource dataSource, Path journalDirectory,
+                        int ringCapacity, Duration persistInterval, int journalFileSize) {
+        this.memberRepository = memberRepository;
+        this.template = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.journalDirectory = journalDirectory;
+        this.checkpointName = journalDirectory.toAbsolutePath().normalize().getFileName().toString();
+        this.journalFileSize = journalFileSize;
+        this.persistInterval = persistInterval;
+        this.ring = new CommandRingBuffer<>(ringCapacity, Command::new);
+        this.persister = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-persister");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * member 테이블 로딩 + 저널 재적용 후 엔진 시작
+     */
+    @Override
+    public void afterPropertiesSet() {
+        template.execute("create table if not exists ledger_checkpoint (name varchar(100) primary key, sequence bigint not null)");
+        long checkpoint = readCheckpoint();
+
+        memberRepository.scanAll(member -> register(member.getMemberId(), member.getMoney()));
+        sequence = MappedJournal.replay(journalDirectory, checkpoint, (replayed, fromId, toId, money) -> {
+            int from = (int) slots.get(fromId) - 1;
+            int to = (int) slots.get(toId) - 1;
+            if (from < 0 || to < 0) {
+                throw new IllegalStateException("저널의 회원이 member 테이블에 없습니다. sequence=" + replayed + ", fromId=" + fromId + ", toId=" + toId);
+            }
+            apply(from, to, money);
+        });
+        persistedSequence = checkpoint;
+        log.info("ledger engine started members={}, checkpoint={}, replayed={}", size, checkpoint, sequence - checkpoint);
+
+        journal = new MappedJournal(journalDirectory, journalFileSize, sequence + 1);
+        running = true;
+        engineThread = new Thread(this::runLoop, "ledger-engine");
+        engineThread.setDaemon(true);
+        engineThread.start();
+
+        long intervalMillis = persistInterval.toMillis();
+        persister.scheduleWithFixedDelay(this::persistQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 이체가 저널에 기록된 후 반환, 실패하면 MemberServiceV4와 같은 예외
+     */
+    @Override
+    public void accountTransfer(String fromId, String toId, int money) {
+        try {
+            submit(fromId, toId, money).join();
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    public CompletableFuture<Void> submit(String fromId, String toId, int money) {
+        return publish(Command.TRANSFER, fromId, toId, money).thenApply(balance -> null);
+    }
+
+    /**
+     * 엔진 스레드가 처리하는 시점의 잔액 (앞서 보낸 이체가 모두 반영된 값)
+     */
+    public long getBalance(String memberId) {
+        try {
+            return publish(Command.BALANCE, memberId, null, 0).join();
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * 바뀐 잔액을 member 테이블에 저장 + 체크포인트
+     */
+    public synchronized void persist() {
+        if (failure != null) {
+            throw new IllegalStateException("저널 기록 실패로 중지된 LedgerEngine", failure);
+        }
+        Snapshot snapshot = takeSnapshot();
+        unpersisted.putAll(snapshot.balances());
+        if (unpersisted.isEmpty() && snapshot.sequence() == persistedSequence) {
+            return;
+        }
+
+        List<Member> members = new ArrayList<>(unpersisted.size());
+        unpersisted.forEach((memberId, balance) -> members.add(new Member(memberId, Math.toIntExact(balance))));
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!members.isEmpty()) {
+                memberRepository.updateAll(members);
+            }
+            if (template.update("update ledger_checkpoint set sequence=? where name=?", snapshot.sequence(), checkpointName) == 0) {
+                template.update("insert into ledger_checkpoint(name, sequence) values (?, ?)", checkpointName, snapshot.sequence());
+            }
+        });
+        unpersisted.clear();
+        persistedSequence = snapshot.sequence();
+        persists.increment();
+        journal.truncate(snapshot.sequence());
+    }
+
+    /**
+     * 새 요청을 막고, 받은 요청까지 처리한 후 잔액 저장
+     * 저널 기록 실패로 중지된 엔진이면 저장하지 않고 저널만 닫은 후 IllegalStateException
+     */
+    @Override
+    public void close() {
+        running = false;
+        while (producers.get() > 0) {
+            LockSupport.parkNanos(1_000); // 이미 들어온 요청의 공개를 기다린다.
+        }
+        stopped = true;
+        try {
+            engineThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        persister.shutdown();
+        try {
+            persister.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            persist();
+        } finally {
+            journal.close();
+        }
+    }
+
+    public long getTransferCount() {
+        return transfers.sum();
+    }
+
+    /**
+     * 검증 실패로 거절한 이체 수
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * 엔진 스레드가 한 번에 처리한 묶음 수 (force 횟수) -> getTransferCount() / getBatchCount() = 평균 묶음 크기
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getPersistCount() {
+        return persists.sum();
+    }
+
+    public long getBacklog() {
+        return ring.getBacklog();
+    }
+
+    private CompletableFuture<Long> publish(int kind, String fromId, String toId, int money) {
+        producers.incrementAndGet();
+        try {
+            if (failure != null) {
+                throw new IllegalStateException("저널 기록 실패로 중지된 LedgerEngine", failure);
+            }
+            if (!running) {
+                throw new IllegalStateException("종료된 LedgerEngine");
+            }
+            CompletableFuture<Long> result = new CompletableFuture<>();
+            long seq = ring.next();
+            ring.get(seq).set(kind, fromId, toId, money, result);
+            ring.publish(seq);
+            return result;
+        } finally {
+            producers.decrementAndGet();
+        }
+    }
+
+    private void runLoop() {
+        long next = 0;
+        int idle = 0;
+
+        while (true) {
+            long available = ring.availableUpTo(next);
+            if (available < next) {
+                serveSnapshot();
+                if (stopped && ring.getClaimed() < next) {
+                    return;
+                }
+                idle = idle(idle);
+                continue;
+            }
+            idle = 0;
+
+            if (failure != null) {
+                //중지된 엔진: running 확인을 지난 요청, next()에서 기다리던 요청 -> 실패로 응답 (close()까지 계속)
+                RuntimeException rejection = new IllegalStateException("저널 기록 실패로 중지된 LedgerEngine", failure);
+                for (long seq = next; seq <= available; seq++) {
+                    ring.get(seq).fail(rejection);
+                }
+                ring.release(available);
+                next = available + 1;
+                continue;
+            }
+
+            try {
+                for (long seq = next; seq <= available; seq++) {
+                    execute(ring.get(seq));
+                }
+                journal.force(); // 묶음 전체를 한 번에
+                batches.increment();
+                for (long seq = next; seq <= available; seq++) {
+                    ring.get(seq).complete();
+                }
+            } catch (RuntimeException e) {
+                //저널 기록 실패 -> 메모리 잔액과 저널이 어긋났다. 엔진 중지
+                log.error("ledger engine stopped", e);
+                failure = e;
+                running = false;
+                for (long seq = next; seq <= available; seq++) {
+                    ring.get(seq).fail(e);
+                }
+            }
+            ring.release(available);
+            next = available + 1;
+            serveSnapshot();
+        }
+    }
+
+    private void execute(Command command) {
+        if (command.kind == Command.BALANCE) {
+            int slot = (int) slots.get(command.fromId) - 1;
+            if (slot < 0) {
+                command.failure = new NoSuchElementException("없는 회원 memberId=" + command.fromId);
+            } else {
+                command.value = balances[slot];
+            }
+            return;
+        }
+
+        RuntimeException failure = check(command);
+        if (failure != null) {
+            command.failure = failure;
+            rejected.increment();
+            return;
+        }
+        apply((int) slots.get(command.fromId) - 1, (int) slots.get(command.toId) - 1, command.money);
+        journal.append(++sequence, command.fromId, command.toId, command.money);
+        transfers.increment();
+    }
+
+    /**
+     * MemberServiceV4 기본 모드와 같은 검증 순서 (보내는 회원 조회 -> 받는 회원 조회 -> 검증)
+     */
+    private RuntimeException check(Command command) {
+        if (!slots.containsKey(command.fromId)) {
+            return new NoSuchElementException("없는 회원 memberId=" + command.fromId);
+        }
+        if (!slots.containsKey(command.toId)) {
+            return new NoSuchElementException("없는 회원 memberId=" + command.toId);
+        }
+        if ("ex".equals(command.toId)) {
+            return new IllegalStateException("이체중 예외 발생");
+        }
+        if (balances[(int) slots.get(command.fromId) - 1] < command.money) {
+            return new MyInsufficientBalanceException("잔액 부족 memberId=" + command.fromId);
+        }
+        return null;
+    }
+
+    private void apply(int from, int to, int money) {
+        balances[from] -= money;
+        balances[to] += money;
+        markDirty(from);
+        markDirty(to);
+    }
+
+    private void register(String memberId, long balance) {
+        if (size == balances.length) {
+            int capacity = size * 2;
+            memberIds = Arrays.copyOf(memberIds, capacity);
+            balances = Arrays.copyOf(balances, capacity);
+            dirty = Arrays.copyOf(dirty, capacity);
+            dirtySlots = Arrays.copyOf(dirtySlots, capacity);
+        }
+        memberIds[size] = memberId;
+        balances[size] = balance;
+        slots.put(memberId, size + 1); // 0은 없는 키
+        size++;
+    }
+
+    private void markDirty(int slot) {
+        if (!dirty[slot]) {
+            dirty[slot] = true;
+            dirtySlots[dirtyCount++] = slot;
+        }
+    }
+
+    /**
+     * 엔진 스레드에 스냅샷 요청 (엔진 스레드가 종료됐으면 직접)
+     */
+    private Snapshot takeSnapshot() {
+        CompletableFuture<Snapshot> request = new CompletableFuture<>();
+        snapshotRequest.set(request);
+        while (!request.isDone()) {
+            if (engineThread.isAlive()) {
+                LockSupport.parkNanos(100_000);
+            } else {
+                serveSnapshot();
+            }
+        }
+        return request.join();
+    }
+
+    private void serveSnapshot() {
+        CompletableFuture<Snapshot> request = snapshotRequest.getAndSet(null);
+        if (request == null) {
+            return;
+        }
+        if (failure != null) {
+            request.completeExceptionally(new IllegalStateException("저널 기록 실패로 중지된 LedgerEngine", failure));
+        } else {
+            request.complete(snapshot());
+        }
+    }
+
+    private Snapshot snapshot() {
+        Map<String, Long> changed = new TreeMap<>();
+        for (int i = 0; i < dirtyCount; i++) {
+            int slot = dirtySlots[i];
+            changed.put(memberIds[slot], balances[slot]);
+            dirty[slot] = false;
+        }
+        dirtyCount = 0;
+        return new Snapshot(sequence, changed);
+    }
+
+    private void persistQuietly() {
+        try {
+            persist();
+        } catch (RuntimeException e) {
+            log.error("ledger persist failed", e); // 스냅샷은 unpersisted에 남아 있다. -> 다음 저장에서 재시도
+        }
+    }
+
+    private long readCheckpoint() {
+        List<Long> checkpoint = template.queryForList("select sequence from ledger_checkpoint where name = ?", Long.class, checkpointName);
+        return checkpoint.isEmpty() ? 0 : checkpoint.get(0);
+    }
+
+    /**
+     * 처음에는 바로 다시 확인, 오래 비어 있으면 잠깐씩 쉰다.
+     */
+    private static int idle(int idle) {
+        if (idle < 100) {
+            Thread.onSpinWait();
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+        return idle + 1;
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        return e.getCause() instanceof RuntimeException cause ? cause : e;
+    }
+
+    private record Snapshot(long sequence, Map<String, Long> balances) {
+    }
+
+    /**
+     * 링 버퍼 슬롯 (재사용)
+     */
+    private static final class Command {
+
+        static final int TRANSFER = 0;
+        static final int BALANCE = 1;
+
+        int kind;
+        String fromId;
+        String toId;
+        int money;
+        CompletableFuture<Long> result;
+        RuntimeException failure;
+        long value;
+
+        void set(int kind, String fromId, String toId, int money, CompletableFuture<Long> result) {
+            this.kind = kind;
+            this.fromId = fromId;
+            this.toId = toId;
+            this.money = money;
+            this.result = result;
+            this.failure = null;
+            this.value = 0;
+        }
+
+        void complete() {
+            CompletableFuture<Long> completed = result;
+            RuntimeException completedFailure = failure;
+            long completedValue = value;
+            clear();
+            if (completedFailure == null) {
+                completed.complete(completedValue);
+            } else {
+                completed.completeExceptionally(completedFailure);
+            }
+        }
+
+        void fail(Throwable e) {
+            CompletableFuture<Long> completed = result;
+            clear();
+            completed.completeExceptionally(e);
+        }
+
+        private void clear() {
+            fromId = null;
+            toId = null;
+            result = null;
+            failure = null;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package hello.jdbc.service;
+
+import hello.jdbc.service.support.StripedLockManager;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 트랜잭션 시작 전에 JVM 안에서 계좌 락(StripedLockManager)을 잡고 이체
+ * MemberServiceV4(@Transactional 프록시)를 감싼다. -> 락을 기다리는 동안에는 커넥션을 잡지 않는다.
+ *
+ * 뜨거운 계좌로 몰리는 이체가 DB row 락 대신 JVM 안에서 줄을 서므로
+ * 커넥션 풀이 한 계좌의 대기자로 가득 차지 않는다.
+ * 같은 계좌(stripe)의 이체는 JVM 안에서 한 번에 하나씩 -> 반대 방향 이체끼리 DB 데드락이 나지 않는다.
+ */
+public class LockingTransferService implements TransferService {
+
+    private final MemberServiceV4 memberService;
+    private final StripedLockManager lockManager;
+    private final Duration lockTimeout;
+
+    public LockingTransferService(MemberServiceV4 memberService, StripedLockManager lockManager, Duration lockTimeout) {
+        this.memberService = memberService;
+        this.lockManager = lockManager;
+        this.lockTimeout = lockTimeout;
+    }
+
+    @Override
+    public void accountTransfer(String fromId, String toId, int money) {
+        StripedLockManager.Lock lock = lockManager.lock(List.of(fromId, toId), lockTimeout);
+        try {
+            memberService.accountTransfer(fromId, toId, money);
+        } finally {
+            lock.close();
+        }
+    }
+
+    public void accountTransfer(String fromId, String toId, int money, TransferMode mode) {
+        StripedLockManager.Lock lock = lockManager.lock(List.of(fromId, toId), lockTimeout);
+        try {
+            memberService.accountTransfer(fromId, toId, money, mode);
+        } finally {
+            lock.close();
+        }
+    }
+}
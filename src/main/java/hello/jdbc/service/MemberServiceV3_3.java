@@ -1,12 +1,15 @@
 package hello.jdbc.service;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberLookupResult;
 import hello.jdbc.repository.MemberRepositoryV3;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * 트랜잭션 - 트랜잭션 프록시
@@ -32,6 +35,15 @@ public class MemberServiceV3_3 {
         bizLogic(fromId, toId, money); //비지니스 로직
     }
 
+    /**
+     * 왕복 최소화 이체
+     * 두 회원을 쿼리 한 번으로 조회하고, update 2건을 JDBC 배치 한 번으로 보낸다. (왕복 4번 -> 2번)
+     */
+    @Transactional
+    public void accountTransferBatched(String fromId, String toId, int money) throws SQLException {
+        bizLogicBatched(fromId, toId, money);
+    }
+
     private void validation(Member toMember) {
         if (toMember.getMemberId().equals("ex")) {
             throw new IllegalStateException("이체중 예외 발생");
@@ -46,4 +58,18 @@ public class MemberServiceV3_3 {
         validation(toMember);
         memberRepository.update(toId, (toMember.getMoney() + money));
     }
+
+    private void bizLogicBatched(String fromId, String toId, int money) throws SQLException {
+        MemberLookupResult result = memberRepository.findAllById(List.of(fromId, toId));
+        if (result.hasMissing()) {
+            throw new NoSuchElementException("없는 회원 memberIds=" + result.getMissingIds());
+        }
+        Member fromMember = result.get(fromId);
+        Member toMember = result.get(toId);
+
+        validation(toMember);
+        memberRepository.updateAll(List.of(
+                new Member(fromId, fromMember.getMoney() - money),
+                new Member(toId, toMember.getMoney() + money)));
+    }
 }
@@ -1,11 +1,24 @@
 package hello.jdbc.service;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberLookupResult;
 import hello.jdbc.repository.MemberRepository;
 import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.repository.TransferProcedureRepository;
+import hello.jdbc.repository.ex.MyInsufficientBalanceException;
+import hello.jdbc.service.support.StringLongMap;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * 예외 누수 문제 해결
@@ -13,14 +26,31 @@ import java.sql.SQLException;
  * throws SQLException 제거
  *
  * MemberRepository 인터페이스 사용
+ *
+ * TransferMode로 이체 실행 방식 선택 (기본: READ_MODIFY_WRITE)
  */
 
-public class MemberServiceV4 {
+public class MemberServiceV4 implements TransferService {
 
     private final MemberRepository memberRepository;
+    private final TransferMode defaultMode;
+    private final TransferProcedureRepository transferProcedure;
 
     public MemberServiceV4(MemberRepository memberRepository) {
+        this(memberRepository, TransferMode.READ_MODIFY_WRITE);
+    }
+
+    public MemberServiceV4(MemberRepository memberRepository, TransferMode defaultMode) {
+        this(memberRepository, defaultMode, null);
+    }
+
+    /**
+     * transferProcedure: PROCEDURE 모드에서 사용할 DB 함수 호출 리포지토리
+     */
+    public MemberServiceV4(MemberRepository memberRepository, TransferMode defaultMode, TransferProcedureRepository transferProcedure) {
         this.memberRepository = memberRepository;
+        this.defaultMode = defaultMode;
+        this.transferProcedure = transferProcedure;
     }
 
     /**
@@ -30,9 +60,146 @@ public class MemberServiceV4 {
      * 받는 사람은 현재 잔액에서 (+) 처리한다.
      */
 
+    @Override
     @Transactional
     public void accountTransfer(String fromId, String toId, int money) {
-        bizLogic(fromId, toId, money); //비지니스 로직
+        accountTransfer(fromId, toId, money, defaultMode);
+    }
+
+    /**
+     * 호출 시점에 이체 실행 방식 지정
+     */
+    @Transactional
+    public void accountTransfer(String fromId, String toId, int money, TransferMode mode) {
+        execute(fromId, toId, money, mode);
+    }
+
+    /**
+     * 여러 건 이체를 한 트랜잭션으로 실행, 이체마다 savepoint
+     * 실패한 이체는 자기 savepoint 까지만 롤백하고 나머지는 커밋 -> 결과는 요청 순서대로 TransferOutcome
+     * @Transactional 프록시를 통해 호출해야 한다. (현재 트랜잭션의 TransactionStatus 사용)
+     */
+    @Transactional
+    public List<TransferOutcome> accountTransferAll(List<Transfer> transfers) {
+        return accountTransferAll(transfers, TransactionAspectSupport.currentTransactionStatus());
+    }
+
+    /**
+     * 이미 시작한 트랜잭션(status) 안에서 실행 (ex: TransactionTemplate 콜백)
+     * savepoint 생성, 롤백, 해제는 TransactionStatus의 savepoint API 사용
+     * 이체 실패는 결과로 돌려주고, savepoint 롤백 자체가 실패하면(커넥션 오류 등) 예외 -> 트랜잭션 전체 롤백
+     */
+    public List<TransferOutcome> accountTransferAll(List<Transfer> transfers, TransactionStatus status) {
+        List<TransferOutcome> outcomes = new ArrayList<>(transfers.size());
+
+        for (Transfer transfer : transfers) {
+            Object savepoint = status.createSavepoint();
+            try {
+                TransferMode mode = transfer.getMode() == null ? defaultMode : transfer.getMode();
+                execute(transfer.getFromId(), transfer.getToId(), transfer.getMoney(), mode);
+                status.releaseSavepoint(savepoint);
+                outcomes.add(TransferOutcome.success(transfer));
+            } catch (RuntimeException e) {
+                status.rollbackToSavepoint(savepoint); // 이 이체가 변경한 것만 취소
+                outcomes.add(TransferOutcome.failure(transfer, e));
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * netting: 여러 건 이체를 회원 별 순 증감액으로 합쳐서 배치 update 한 번으로 반영
+     * - 관련 회원 잔액을 findAllById 한 번으로 조회 후 요청 순서대로 이체를 검증 (없는 회원, 이체 규칙, 잔액 부족)
+     *   앞선 이체로 들어온 돈은 뒤의 출금에 쓸 수 있다. 실패한 이체는 잔액 계산에서 빠지고 TransferOutcome으로 알려준다.
+     * - 순 증감액이 0이 아닌 회원만 member_id 순서로 incrementMoneyAll (락 순서 고정)
+     * - 조회 후 다른 트랜잭션이 잔액을 바꿔서 음수가 되거나 회원이 삭제되면 OptimisticLockingFailureException -> 전체 롤백
+     * TransferMode는 사용하지 않는다. (모든 이체를 증감 update로 반영)
+     */
+    @Transactional
+    public List<TransferOutcome> accountTransferNetted(List<Transfer> transfers) {
+        Set<String> memberIds = new LinkedHashSet<>();
+        for (Transfer transfer : transfers) {
+            memberIds.add(transfer.getFromId());
+            memberIds.add(transfer.getToId());
+        }
+
+        MemberLookupResult found = memberRepository.findAllById(memberIds);
+        StringLongMap balances = new StringLongMap(memberIds.size());
+        for (Member member : found.getMembers()) {
+            balances.put(member.getMemberId(), member.getMoney());
+        }
+
+        StringLongMap deltas = new StringLongMap(memberIds.size());
+        List<TransferOutcome> outcomes = new ArrayList<>(transfers.size());
+        for (Transfer transfer : transfers) {
+            RuntimeException failure = checkNettedTransfer(transfer, balances);
+            if (failure != null) {
+                outcomes.add(TransferOutcome.failure(transfer, failure));
+                continue;
+            }
+            balances.addTo(transfer.getFromId(), -transfer.getMoney());
+            balances.addTo(transfer.getToId(), transfer.getMoney());
+            deltas.addTo(transfer.getFromId(), -transfer.getMoney());
+            deltas.addTo(transfer.getToId(), transfer.getMoney());
+            outcomes.add(TransferOutcome.success(transfer));
+        }
+
+        applyDeltas(deltas);
+        return outcomes;
+    }
+
+    /**
+     * 다른 모드와 같은 예외로 실패 원인을 만든다. (던지지 않고 반환)
+     */
+    private RuntimeException checkNettedTransfer(Transfer transfer, StringLongMap balances) {
+        if (!balances.containsKey(transfer.getFromId())) {
+            return new NoSuchElementException("없는 회원 memberId=" + transfer.getFromId());
+        }
+        if (!balances.containsKey(transfer.getToId())) {
+            return new NoSuchElementException("없는 회원 memberId=" + transfer.getToId());
+        }
+        try {
+            validation(new Member(transfer.getToId(), 0));
+        } catch (IllegalStateException e) {
+            return e;
+        }
+        if (balances.get(transfer.getFromId()) < transfer.getMoney()) {
+            return new MyInsufficientBalanceException("잔액 부족 memberId=" + transfer.getFromId());
+        }
+        return null;
+    }
+
+    private void applyDeltas(StringLongMap deltas) {
+        List<String> memberIds = new ArrayList<>(deltas.size());
+        long[] changes = new long[deltas.size()];
+        for (String memberId : deltas.sortedKeys()) {
+            long delta = deltas.get(memberId);
+            if (delta != 0) {
+                changes[memberIds.size()] = delta;
+                memberIds.add(memberId);
+            }
+        }
+        if (memberIds.isEmpty()) {
+            return;
+        }
+
+        int[] counts = memberRepository.incrementMoneyAll(memberIds, Arrays.copyOf(changes, memberIds.size()));
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 1) {
+                throw new OptimisticLockingFailureException("조회 후 잔액 변경 또는 회원 삭제 memberId=" + memberIds.get(i));
+            }
+        }
+    }
+
+    private void execute(String fromId, String toId, int money, TransferMode mode) {
+        switch (mode) {
+            case READ_MODIFY_WRITE -> bizLogic(fromId, toId, money); //비지니스 로직
+            case DELTA -> bizLogicDelta(fromId, toId, money);
+            case BATCHED -> bizLogicBatched(fromId, toId, money);
+            case PROCEDURE -> bizLogicProcedure(fromId, toId, money);
+            case ORDERED_LOCK -> bizLogicOrderedLock(fromId, toId, money);
+            case OPTIMISTIC -> bizLogicOptimistic(fromId, toId, money);
+        }
     }
 
     private void validation(Member toMember) {
@@ -49,4 +216,105 @@ public class MemberServiceV4 {
         validation(toMember);
         memberRepository.update(toId, (toMember.getMoney() + money));
     }
+
+    /**
+     * 조회 1번 + 배치 update 1번
+     * 검증이 update 전에 실행되지만, 실패하면 아무것도 쓰지 않으므로 결과(롤백)는 같다.
+     */
+    private void bizLogicBatched(String fromId, String toId, int money) {
+        MemberLookupResult result = memberRepository.findAllById(List.of(fromId, toId));
+        if (result.hasMissing()) {
+            throw new NoSuchElementException("없는 회원 memberIds=" + result.getMissingIds());
+        }
+        Member fromMember = result.get(fromId);
+        Member toMember = result.get(toId);
+
+        validation(toMember);
+        memberRepository.updateAll(List.of(
+                new Member(fromId, fromMember.getMoney() - money),
+                new Member(toId, toMember.getMoney() + money)));
+    }
+
+    /**
+     * 조회 없이 DB에서 잔액 계산
+     * 조건부 출금 -> 검증 -> 입금 (왕복 2번)
+     * 실패하면 예외 -> 트랜잭션 롤백으로 출금도 취소된다.
+     */
+    private void bizLogicDelta(String fromId, String toId, int money) {
+        if (!memberRepository.debitIfSufficient(fromId, money)) {
+            throw new MyInsufficientBalanceException("잔액 부족 또는 없는 회원 memberId=" + fromId);
+        }
+        validation(new Member(toId, 0));
+        if (!memberRepository.incrementMoney(toId, money)) {
+            throw new NoSuchElementException("없는 회원 memberId=" + toId);
+        }
+    }
+
+    /**
+     * DB 함수 한 번 호출
+     * 함수 결과를 다른 모드와 같은 예외로 변환한다.
+     * SQL 오류는 TransferProcedureRepository가 스프링 데이터 접근 예외로 변환
+     */
+    private void bizLogicProcedure(String fromId, String toId, int money) {
+        if (transferProcedure == null) {
+            throw new IllegalStateException("PROCEDURE 모드는 TransferProcedureRepository가 필요합니다.");
+        }
+
+        switch (transferProcedure.transfer(fromId, toId, money)) {
+            case OK -> {
+            }
+            case FROM_NOT_FOUND -> throw new NoSuchElementException("없는 회원 memberId=" + fromId);
+            case TO_NOT_FOUND -> throw new NoSuchElementException("없는 회원 memberId=" + toId);
+            case INSUFFICIENT_BALANCE -> throw new MyInsufficientBalanceException("잔액 부족 memberId=" + fromId);
+            case RULE_VIOLATION -> throw new IllegalStateException("이체중 예외 발생");
+        }
+    }
+
+    /**
+     * member_id가 작은 회원부터 잠근다. -> 락을 잡는 순서가 항상 같다.
+     * 락을 잡은 후의 값으로 계산 -> 검증 -> update
+     */
+    private void bizLogicOrderedLock(String fromId, String toId, int money) {
+        boolean fromFirst = fromId.compareTo(toId) <= 0;
+        Member firstMember = lock(fromFirst ? fromId : toId);
+        Member secondMember = fromId.equals(toId) ? firstMember : lock(fromFirst ? toId : fromId);
+
+        Member fromMember = fromFirst ? firstMember : secondMember;
+        Member toMember = fromFirst ? secondMember : firstMember;
+
+        int fromMoney = fromMember.getMoney() - money;
+        memberRepository.update(fromId, fromMoney);
+        validation(toMember);
+        int toMoney = fromId.equals(toId) ? fromMoney : toMember.getMoney(); // 자기 자신에게 이체하면 방금 출금한 잔액 기준
+        memberRepository.update(toId, toMoney + money);
+    }
+
+    private Member lock(String memberId) {
+        return memberRepository.findByIdForUpdate(memberId)
+                .orElseThrow(() -> new NoSuchElementException("없는 회원 memberId=" + memberId));
+    }
+
+    /**
+     * 조회한 version 그대로일 때만 update -> 그 사이 다른 이체가 변경했으면 예외(롤백)
+     * 자기 자신에게 이체하면 두 번째 update는 첫 번째 update가 올린 버전 기준
+     */
+    private void bizLogicOptimistic(String fromId, String toId, int money) {
+        Member fromMember = memberRepository.findById(fromId);
+        Member toMember = fromId.equals(toId) ? fromMember : memberRepository.findById(toId);
+
+        int fromMoney = fromMember.getMoney() - money;
+        updateIfVersion(fromId, fromMoney, fromMember.getVersion());
+        validation(toMember);
+        if (fromId.equals(toId)) {
+            updateIfVersion(toId, fromMoney + money, fromMember.getVersion() + 1);
+        } else {
+            updateIfVersion(toId, toMember.getMoney() + money, toMember.getVersion());
+        }
+    }
+
+    private void updateIfVersion(String memberId, int money, long expectedVersion) {
+        if (!memberRepository.updateIfVersion(memberId, money, expectedVersion)) {
+            throw new OptimisticLockingFailureException("동시 수정 충돌 memberId=" + memberId + ", version=" + expectedVersion);
+        }
+    }
 }
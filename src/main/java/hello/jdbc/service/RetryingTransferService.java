@@ -0,0 +1,31 @@
+package hello.jdbc.service;
+
+import hello.jdbc.service.support.RetryExecutor;
+
+/**
+ * 트랜잭션 바깥에서 이체를 재시도
+ * MemberServiceV4(@Transactional 프록시)를 감싸서 시도마다 새 트랜잭션으로 실행한다.
+ *
+ * 재시도 대상은 RetryExecutor가 정한다. (기본: TransientDataAccessException)
+ * -> OPTIMISTIC 모드의 버전 충돌(OptimisticLockingFailureException), 락 타임아웃, 데드락
+ * 잔액 부족, 없는 회원 같은 업무 예외는 재시도하지 않고 그대로 던진다.
+ */
+public class RetryingTransferService implements TransferService {
+
+    private final MemberServiceV4 memberService;
+    private final RetryExecutor retryExecutor;
+
+    public RetryingTransferService(MemberServiceV4 memberService, RetryExecutor retryExecutor) {
+        this.memberService = memberService;
+        this.retryExecutor = retryExecutor;
+    }
+
+    @Override
+    public void accountTransfer(String fromId, String toId, int money) {
+        retryExecutor.run(() -> memberService.accountTransfer(fromId, toId, money));
+    }
+
+    public void accountTransfer(String fromId, String toId, int money, TransferMode mode) {
+        retryExecutor.run(() -> memberService.accountTransfer(fromId, toId, money, mode));
+    }
+}
@@ -0,0 +1,29 @@
+package hello.jdbc.service;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 이체 요청 한 건
+ * mode가 null이면 서비스의 기본 TransferMode로 실행
+ */
+@Getter
+@ToString
+public class Transfer {
+
+    private final String fromId;
+    private final String toId;
+    private final int money;
+    private final TransferMode mode;
+
+    public Transfer(String fromId, String toId, int money) {
+        this(fromId, toId, money, null);
+    }
+
+    public Transfer(String fromId, String toId, int money, TransferMode mode) {
+        this.fromId = fromId;
+        this.toId = toId;
+        this.money = money;
+        this.mode = mode;
+    }
+}
@@ -0,0 +1,252 @@
+package hello.jdbc.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 그룹 커밋 이체 배처
+ * 여러 요청의 이체를 트랜잭션 하나로 묶어서 커밋 -> 커밋(로그 flush) 비용을 나누어 낸다.
+ *
+ * - submit(): 큐에 넣고 CompletableFuture 반환, 큐가 가득 차면 빈 자리가 날 때까지 기다린다. (backpressure)
+ *   기다리는 중이나 넣는 사이에 close() 되면 future를 예외로 완료 -> 처리되지 않고 남는 요청이 없다.
+ * - 워커 스레드 하나가 큐를 비우면서 최대 maxBatchSize 건, 첫 요청 후 최대 maxDelay 까지 모아서 한 트랜잭션으로 실행
+ *   maxDelay가 0이면 기다리지 않고 그 순간 큐에 쌓인 만큼만 묶는다.
+ * - 이체마다 savepoint (MemberServiceV4.accountTransferAll) -> 실패한 이체만 롤백하고 그 요청의 future만 예외로 완료
+ * - future는 커밋이 끝난 후에 완료된다.
+ * - 배치가 롤백되면(콜백 안의 예외) 이체를 하나씩 각자의 트랜잭션으로 다시 실행, netting 배치는 한 건씩 netting으로 실행
+ * - 커밋 중 실패(TransactionSystemException 등)는 반영 여부를 알 수 없다. -> 다시 실행하지 않고 배치의 모든 future를 예외로 완료
+ * - netting=true 면 배치를 회원 별 순 증감액으로 합쳐서 반영 (MemberServiceV4.accountTransferNetted)
+ */
+@Slf4j
+public class TransferBatcher implements AutoCloseable {
+
+    private final MemberServiceV4 memberService;
+    private final TransactionTemplate batchTransaction;
+    private final boolean netting;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<TransferRequest> queue;
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder transfers = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    public TransferBatcher(MemberServiceV4 memberService, PlatformTransactionManager transactionManager,
+                           int maxBatchSize, Duration maxDelay, int queueCapacity) {
+        this(memberService, transactionManager, maxBatchSize, maxDelay, queueCapacity, false);
+    }
+
+    public TransferBatcher(MemberServiceV4 memberService, PlatformTransactionManager transactionManager,
+                           int maxBatchSize, Duration maxDelay, int queueCapacity, boolean netting) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize는 1 이상이어야 합니다. maxBatchSize=" + maxBatchSize);
+        }
+        this.memberService = memberService;
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.netting = netting;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.worker = new Thread(this::runLoop, "transfer-batcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 서비스의 기본 TransferMode로 이체
+     */
+    public CompletableFuture<Void> submit(String fromId, String toId, int money) {
+        return submit(fromId, toId, money, null);
+    }
+
+    public CompletableFuture<Void> submit(String fromId, String toId, int money, TransferMode mode) {
+        if (!running) {
+            throw new IllegalStateException("종료된 TransferBatcher");
+        }
+
+        TransferRequest request = new TransferRequest(new Transfer(fromId, toId, money, mode), new CompletableFuture<>());
+        try {
+            while (!queue.offer(request, 100, TimeUnit.MILLISECONDS)) { // 가득 차면 대기, running 확인 주기
+                if (!running) {
+                    request.result().completeExceptionally(new IllegalStateException("종료된 TransferBatcher"));
+                    return request.result();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.result().completeExceptionally(e);
+            return request.result();
+        }
+
+        //넣는 사이에 close() -> 워커가 이미 끝났을 수 있다. 아직 큐에 있으면 꺼내서 실패 (없으면 워커나 close()가 완료한다.)
+        if (!running && queue.remove(request)) {
+            request.result().completeExceptionally(new IllegalStateException("종료된 TransferBatcher"));
+        }
+        return request.result();
+    }
+
+    /**
+     * 새 요청을 막고, 큐에 남은 요청까지 처리한 후 워커 종료
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // 종료 직전에 들어온 요청
+        List<TransferRequest> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        rest.forEach(request -> request.result().completeExceptionally(new IllegalStateException("종료된 TransferBatcher")));
+    }
+
+    /**
+     * 커밋한 배치 트랜잭션 수
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getTransferCount() {
+        return transfers.sum();
+    }
+
+    /**
+     * 배치 트랜잭션이 롤백되어 하나씩 다시 실행한 횟수
+     */
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private void runLoop() {
+        List<TransferRequest> batch = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                TransferRequest first = queue.poll(100, TimeUnit.MILLISECONDS); // running 확인 주기
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                execute(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false; // 큐에서 기다리는 submit()도 멈춘다. 남은 요청은 close()에서 실패 처리
+                batch.forEach(request -> request.result().completeExceptionally(e));
+                return;
+            } catch (Throwable e) {
+                log.error("transfer batch error size={}", batch.size(), e);
+                batch.forEach(request -> request.result().completeExceptionally(e)); // 이미 완료된 future는 무시된다.
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 이미 쌓인 요청을 한 번에 가져오고, 모자라면 maxDelay 까지 기다린다.
+     */
+    private void collect(List<TransferRequest> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelayNanos;
+
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            if (batch.size() >= maxBatchSize) {
+                return;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            TransferRequest next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void execute(List<TransferRequest> batch) {
+        RuntimeException[] failures = new RuntimeException[batch.size()];
+        List<Transfer> requested = batch.stream().map(TransferRequest::transfer).toList();
+        boolean[] rolledBack = {false};
+
+        try {
+            List<TransferOutcome> outcomes = batchTransaction.execute(status -> {
+                try {
+                    return netting ? memberService.accountTransferNetted(requested) : memberService.accountTransferAll(requested, status);
+                } catch (RuntimeException e) {
+                    rolledBack[0] = true; // 콜백 안의 예외 -> TransactionTemplate이 롤백
+                    throw e;
+                }
+            });
+            for (int i = 0; i < outcomes.size(); i++) {
+                failures[i] = outcomes.get(i).getFailure();
+            }
+            batches.increment();
+        } catch (RuntimeException e) {
+            if (!rolledBack[0]) {
+                //커밋 중 실패 -> 반영됐을 수도 있다. 다시 실행하면 두 번 이체될 수 있으므로 배치 전체를 실패로 완료
+                log.error("transfer batch commit failed, outcome unknown size={}", batch.size(), e);
+                Arrays.fill(failures, e);
+            } else {
+                log.warn("transfer batch rolled back, retry one by one size={}", batch.size(), e);
+                fallbacks.increment();
+                for (int i = 0; i < batch.size(); i++) {
+                    failures[i] = transferAlone(batch.get(i));
+                }
+            }
+        }
+
+        transfers.add(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (failures[i] == null) {
+                batch.get(i).result().complete(null);
+            } else {
+                batch.get(i).result().completeExceptionally(failures[i]);
+            }
+        }
+    }
+
+    /**
+     * 배치와 같은 방식(netting 여부)으로 한 건만 실행
+     */
+    private RuntimeException transferAlone(TransferRequest request) {
+        List<Transfer> alone = List.of(request.transfer());
+        try {
+            List<TransferOutcome> outcomes = batchTransaction.execute(status -> netting
+                    ? memberService.accountTransferNetted(alone)
+                    : memberService.accountTransferAll(alone, status));
+            return outcomes.get(0).getFailure();
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private record TransferRequest(Transfer transfer, CompletableFuture<Void> result) {
+    }
+}
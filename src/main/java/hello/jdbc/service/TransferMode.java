@@ -0,0 +1,44 @@
+package hello.jdbc.service;
+
+/**
+ * 이체 실행 방식
+ */
+public enum TransferMode {
+
+    /**
+     * findById 2번 -> 자바에서 잔액 계산 -> update 2번 (기존 방식)
+     */
+    READ_MODIFY_WRITE,
+
+    /**
+     * 잔액 계산을 DB에 맡긴다.
+     * 조건부 출금(money >= ?) -> 검증 -> 입금(money = money + ?), 왕복 2번
+     */
+    DELTA,
+
+    /**
+     * 두 회원을 쿼리 한 번(findAllById)으로 조회 -> 검증 -> update 2건을 JDBC 배치 한 번(updateAll)으로 전송
+     * 왕복 2번, 잔액 계산 방식은 READ_MODIFY_WRITE와 같다.
+     */
+    BATCHED,
+
+    /**
+     * DB 함수(transfer_money) 한 번 호출로 검증, 출금, 입금을 모두 DB 안에서 실행 (왕복 1번)
+     * TransferProcedureRepository가 필요하다.
+     */
+    PROCEDURE,
+
+    /**
+     * 두 회원 row를 member_id 순서로 먼저 잠근 후(select ... for update) 잔액 계산 -> update 2번
+     * 모든 이체가 같은 순서로 락을 잡으므로 A->B, B->A 이체가 동시에 와도 데드락이 나지 않는다.
+     * 잠근 값으로 계산하므로 동시 이체의 변경을 덮어쓰지 않는다.
+     */
+    ORDERED_LOCK,
+
+    /**
+     * 락 없이 조회(version 포함) -> 잔액 계산 -> 버전 비교 update 2번 (updateIfVersion)
+     * 읽은 후 다른 트랜잭션이 먼저 변경했으면 OptimisticLockingFailureException -> 롤백
+     * 충돌이 드문 계좌용, 충돌 시 재시도는 트랜잭션 밖에서 (RetryingTransferService)
+     */
+    OPTIMISTIC
+}
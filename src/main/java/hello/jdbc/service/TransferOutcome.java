@@ -0,0 +1,33 @@
+package hello.jdbc.service;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 여러 건 이체(accountTransferAll)에서 이체 한 건의 결과
+ * 실패한 이체는 savepoint 까지 롤백되고 원인 예외(failure)를 가진다.
+ */
+@Getter
+@ToString
+public class TransferOutcome {
+
+    private final Transfer transfer;
+    private final RuntimeException failure;
+
+    private TransferOutcome(Transfer transfer, RuntimeException failure) {
+        this.transfer = transfer;
+        this.failure = failure;
+    }
+
+    public static TransferOutcome success(Transfer transfer) {
+        return new TransferOutcome(transfer, null);
+    }
+
+    public static TransferOutcome failure(Transfer transfer, RuntimeException failure) {
+        return new TransferOutcome(transfer, failure);
+    }
+
+    public boolean isSuccess() {
+        return failure == null;
+    }
+}
@@ -0,0 +1,14 @@
+package hello.jdbc.service;
+
+/**
+ * 이체 실행 엔진 선택용 인터페이스
+ * - MemberServiceV4: DB 트랜잭션 안에서 이체 (@Transactional 프록시로 사용), TransferMode로 방식 선택
+ * - LedgerEngine: 단일 쓰기 스레드 메모리 원장
+ * - LockingTransferService, RetryingTransferService: MemberServiceV4를 감싼다.
+ *
+ * 실패: 없는 회원 -> NoSuchElementException, 받는 회원이 "ex" -> IllegalStateException
+ */
+public interface TransferService {
+
+    void accountTransfer(String fromId, String toId, int money);
+}
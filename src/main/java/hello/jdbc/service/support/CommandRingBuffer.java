@@ -0,0 +1,105 @@
+package hello.jdbc.service.support;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 여러 생산자, 소비자 하나인 링 버퍼 (LMAX Disruptor 방식)
+ * 슬롯 객체를 미리 만들어 두고 재사용 -> 요청마다 큐 노드를 할당하지 않는다.
+ *
+ * 생산자
+ *   long seq = ring.next();        // 슬롯 예약, 가득 차면 소비자가 비울 때까지 대기
+ *   ring.get(seq).set(...);        // 슬롯 채우기
+ *   ring.publish(seq);             // 소비자에게 공개
+ * 소비자 (스레드 하나)
+ *   long available = ring.availableUpTo(next);  // next부터 연속으로 공개된 마지막 sequence
+ *   ... get(next ~ available) 처리 ...
+ *   ring.release(available);       // 슬롯 반납 -> 생산자가 다시 사용
+ *
+ * 슬롯 별 공개 sequence를 따로 두므로 생산자끼리 공개 순서를 기다리지 않는다. (소비자는 빈 칸에서 멈춘다.)
+ */
+public class CommandRingBuffer<T> {
+
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLongArray published; // 슬롯에 마지막으로 공개된 sequence
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile long consumed = -1;
+
+    /**
+     * @param capacity 2의 제곱수로 올림
+     */
+    public CommandRingBuffer(int capacity, Supplier<T> factory) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new Object[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = factory.get();
+            published.set(i, -1);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * 다음 슬롯 예약, 소비자가 capacity 만큼 뒤처져 있으면 대기 (backpressure)
+     */
+    public long next() {
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - slots.length;
+        while (wrapPoint > consumed) {
+            LockSupport.parkNanos(1_000);
+        }
+        return sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(long sequence) {
+        return (T) slots[index(sequence)];
+    }
+
+    public void publish(long sequence) {
+        published.set(index(sequence), sequence);
+    }
+
+    /**
+     * @return next부터 연속으로 공개된 마지막 sequence, 공개된 것이 없으면 next - 1
+     */
+    public long availableUpTo(long next) {
+        long sequence = next;
+        while (published.get(index(sequence)) == sequence) {
+            sequence++;
+        }
+        return sequence - 1;
+    }
+
+    /**
+     * sequence 까지 처리 완료 -> 슬롯 반납
+     */
+    public void release(long sequence) {
+        consumed = sequence;
+    }
+
+    /**
+     * 마지막으로 예약된 sequence (아직 공개 전일 수 있다.)
+     */
+    public long getClaimed() {
+        return claimed.get();
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * 예약됐지만 아직 처리되지 않은 슬롯 수
+     */
+    public long getBacklog() {
+        return claimed.get() - consumed;
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & mask;
+    }
+}
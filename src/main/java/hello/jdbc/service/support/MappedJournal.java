@@ -0,0 +1,214 @@
+package hello.jdbc.service.support;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 이체 기록용 memory-mapped append-only 저널
+ * 파일(ledger-{첫 sequence}.journal)을 fileSize 만큼 매핑해서 메모리 쓰기로 기록, force()로 디스크에 내린다.
+ *
+ * - 기록: [길이 4byte][sequence 8byte][fromId 길이 2byte][fromId][toId 길이 2byte][toId][money 4byte][crc32 4byte]
+ *   길이 0은 기록의 끝 (매핑한 파일은 0으로 채워져 있다.)
+ * - append()는 쓰기 스레드 하나에서만 호출한다. 파일이 가득 차면 다음 파일로 넘어간다.
+ * - force(): 마지막 force() 이후 기록한 범위만 디스크에 내린다. -> 여러 건을 모아서 한 번 (그룹 커밋)
+ * - truncate(sequence): sequence 까지만 들어있는 파일 삭제 (스냅샷 저장 후, 다른 스레드에서 호출 가능)
+ * - replay(): 잘렸거나 crc가 맞지 않는 기록에서 멈춘다. -> force()가 끝나지 않은 기록은 호출자가 성공을 받지 못했다.
+ */
+public class MappedJournal implements AutoCloseable {
+
+    private static final String PREFIX = "ledger-";
+    private static final String SUFFIX = ".journal";
+    private static final int HEADER_BYTES = Integer.BYTES;
+    private static final int FIXED_BYTES = Long.BYTES + Short.BYTES + Short.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final int fileSize;
+    private final List<JournalFile> files = new CopyOnWriteArrayList<>();
+
+    private volatile JournalFile current;
+    private int forcedPosition;
+
+    /**
+     * @param firstSequence 새로 만들 파일의 첫 sequence (재시작 시 replay()가 돌려준 마지막 sequence + 1)
+     */
+    public MappedJournal(Path directory, int fileSize, long firstSequence) {
+        this.directory = directory;
+        this.fileSize = fileSize;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        list(directory).forEach(path -> files.add(new JournalFile(firstSequenceOf(path), path, null)));
+        this.current = open(firstSequence);
+    }
+
+    public void append(long sequence, String fromId, String toId, int money) {
+        byte[] from = fromId.getBytes(StandardCharsets.UTF_8);
+        byte[] to = toId.getBytes(StandardCharsets.UTF_8);
+        int length = FIXED_BYTES + from.length + to.length;
+        if (HEADER_BYTES + length > fileSize - HEADER_BYTES) {
+            throw new IllegalArgumentException("기록이 저널 파일보다 큽니다. length=" + length + ", fileSize=" + fileSize);
+        }
+
+        MappedByteBuffer buffer = current.buffer;
+        if (buffer.remaining() < HEADER_BYTES + length + HEADER_BYTES) { // 끝 표시(0) 자리를 남긴다.
+            force();
+            current = open(sequence);
+            buffer = current.buffer;
+        }
+
+        int start = buffer.position();
+        buffer.position(start + HEADER_BYTES);
+        buffer.putLong(sequence);
+        buffer.putShort((short) from.length).put(from);
+        buffer.putShort((short) to.length).put(to);
+        buffer.putInt(money);
+        buffer.putInt(crc(buffer, start + HEADER_BYTES, length - Integer.BYTES));
+        buffer.putInt(start, length); // 길이는 마지막에 -> 쓰다 만 기록은 길이 0
+    }
+
+    /**
+     * 마지막 force() 이후 기록한 범위를 디스크에 내린다.
+     */
+    public void force() {
+        MappedByteBuffer buffer = current.buffer;
+        int position = buffer.position();
+        if (position > forcedPosition) {
+            buffer.force(forcedPosition, position - forcedPosition);
+            forcedPosition = position;
+        }
+    }
+
+    /**
+     * sequence 이하 기록만 들어있는 파일 삭제 (현재 파일은 남긴다.)
+     */
+    public void truncate(long sequence) {
+        for (int i = 0; i < files.size() - 1; i++) {
+            JournalFile file = files.get(i);
+            JournalFile next = files.get(i + 1);
+            if (file != current && next.firstSequence <= sequence + 1) {
+                files.remove(file);
+                delete(file.path);
+                i--;
+            }
+        }
+    }
+
+    public int getFileCount() {
+        return files.size();
+    }
+
+    @Override
+    public void close() {
+        force();
+    }
+
+    /**
+     * afterSequence 보다 큰 기록을 순서대로 전달
+     * @return 마지막 기록의 sequence (기록이 없으면 afterSequence)
+     */
+    public static long replay(Path directory, long afterSequence, RecordHandler handler) {
+        long last = afterSequence;
+        for (Path path : list(directory)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (buffer.remaining() >= HEADER_BYTES) {
+                    int start = buffer.position();
+                    int length = buffer.getInt();
+                    if (length < FIXED_BYTES || length > buffer.remaining()) {
+                        break; // 기록의 끝 또는 잘린 기록
+                    }
+                    int expectedCrc = buffer.getInt(start + HEADER_BYTES + length - Integer.BYTES);
+                    if (expectedCrc != crc(buffer, start + HEADER_BYTES, length - Integer.BYTES)) {
+                        break;
+                    }
+                    long sequence = buffer.getLong();
+                    String fromId = readString(buffer);
+                    String toId = readString(buffer);
+                    int money = buffer.getInt();
+                    buffer.getInt(); // crc
+                    if (sequence > last) {
+                        handler.handle(sequence, fromId, toId, money);
+                        last = sequence;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return last;
+    }
+
+    private JournalFile open(long firstSequence) {
+        Path path = directory.resolve(String.format("%s%016d%s", PREFIX, firstSequence, SUFFIX));
+        files.removeIf(file -> file.path.equals(path)); // 기록 전에 멈춘 이전 실행의 파일 -> replay가 읽은 기록이 없으므로 덮어쓴다.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize); // 채널을 닫아도 매핑은 유지된다.
+            JournalFile file = new JournalFile(firstSequence, path, buffer);
+            files.add(file);
+            forcedPosition = 0;
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Path> list(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long firstSequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int crc(MappedByteBuffer buffer, int offset, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer.slice(offset, length));
+        return (int) crc32.getValue();
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface RecordHandler {
+        void handle(long sequence, String fromId, String toId, int money);
+    }
+
+    private record JournalFile(long firstSequence, Path path, MappedByteBuffer buffer) {
+    }
+}
@@ -0,0 +1,67 @@
+package hello.jdbc.service.support;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 재시도 예산 (토큰 버킷)
+ *
+ * - 새 요청마다 ratio 만큼 토큰 적립 (최대 maxTokens)
+ * - 재시도 1번에 토큰 1개 사용, 토큰이 없으면 재시도하지 않는다.
+ * -> 재시도 횟수가 전체 요청의 ratio 비율을 넘지 못한다.
+ *    장애로 모든 요청이 실패해도 재시도가 부하를 몇 배로 키우지 않는다. (retry storm 방지)
+ *
+ * 처음에는 maxTokens 만큼 채워서 시작 -> 요청이 적을 때도 어느 정도는 재시도 가능
+ */
+public class RetryBudget {
+
+    private static final long SCALE = 1000; // 토큰을 1/1000 단위로 관리
+
+    private final long depositPerRequest;
+    private final long maxTokens;
+    private final AtomicLong tokens;
+
+    /**
+     * @param ratio 요청 1건당 적립할 재시도 수 (ex: 0.2 -> 요청의 20%까지 재시도)
+     * @param maxTokens 모아둘 수 있는 최대 재시도 수
+     */
+    public RetryBudget(double ratio, int maxTokens) {
+        if (ratio < 0) {
+            throw new IllegalArgumentException("ratio는 0 이상이어야 합니다. ratio=" + ratio);
+        }
+        if (maxTokens < 0) {
+            throw new IllegalArgumentException("maxTokens는 0 이상이어야 합니다. maxTokens=" + maxTokens);
+        }
+        this.depositPerRequest = Math.round(ratio * SCALE);
+        this.maxTokens = maxTokens * SCALE;
+        this.tokens = new AtomicLong(this.maxTokens);
+    }
+
+    /**
+     * 재시도 예산 제한 없음
+     */
+    public static RetryBudget unlimited() {
+        return new RetryBudget(1, Integer.MAX_VALUE);
+    }
+
+    public void onRequest() {
+        tokens.accumulateAndGet(depositPerRequest, (current, deposit) -> Math.min(maxTokens, current + deposit));
+    }
+
+    public boolean tryAcquireRetry() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    /**
+     * 지금 사용할 수 있는 재시도 수
+     */
+    public long getAvailableRetries() {
+        return tokens.get() / SCALE;
+    }
+}
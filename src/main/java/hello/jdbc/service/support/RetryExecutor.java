@@ -0,0 +1,143 @@
+package hello.jdbc.service.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 일시적인 DB 실패(락 타임아웃, 데드락, 직렬화 실패 ...)를 재시도하는 실행기
+ *
+ * - 재시도 대상: 기본은 TransientDataAccessException (CannotAcquireLockException, PessimisticLockingFailureException 포함)
+ * - 대기 시간: full jitter 지수 백오프 -> random(0, min(maxDelay, baseDelay * 2^재시도횟수))
+ *   동시에 실패한 요청들이 같은 시각에 다시 몰리지 않도록 흩어준다.
+ * - 최대 시도 횟수(maxAttempts) + 재시도 예산(RetryBudget)
+ *
+ * 재시도는 트랜잭션 바깥에서 해야 한다. (실패한 트랜잭션은 이미 롤백 대상)
+ * -> @Transactional 서비스 프록시를 호출하는 쪽에서 사용
+ *    retryExecutor.run(() -> memberService.accountTransfer(fromId, toId, money));
+ * 이미 트랜잭션 안에서 호출되면 재시도하지 않고 한 번만 실행한다.
+ */
+@Slf4j
+public class RetryExecutor {
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final RetryBudget budget;
+    private final Predicate<Throwable> retryable;
+    private final Sleeper sleeper;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+    private final LongAdder gaveUp = new LongAdder();
+
+    public RetryExecutor(int maxAttempts, Duration baseDelay, Duration maxDelay, RetryBudget budget) {
+        this(maxAttempts, baseDelay, maxDelay, budget, e -> e instanceof TransientDataAccessException, Thread::sleep);
+    }
+
+    public RetryExecutor(int maxAttempts, Duration baseDelay, Duration maxDelay, RetryBudget budget,
+                         Predicate<Throwable> retryable, Sleeper sleeper) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts는 1 이상이어야 합니다. maxAttempts=" + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.budget = budget;
+        this.retryable = retryable;
+        this.sleeper = sleeper;
+    }
+
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> T call(Supplier<T> action) {
+        calls.increment();
+        budget.onRequest();
+
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return action.get(); // 바깥 트랜잭션이 있으면 재시도해도 소용없다.
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (RuntimeException e) {
+                if (!retryable.test(e)) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    gaveUp.increment();
+                    throw e;
+                }
+                if (!budget.tryAcquireRetry()) {
+                    budgetExhausted.increment();
+                    throw e;
+                }
+
+                retries.increment();
+                long delayNanos = backoff(attempt);
+                log.debug("retry attempt={} delayMs={} cause={}", attempt, delayNanos / 1_000_000, e.toString());
+                sleep(delayNanos, e);
+            }
+        }
+    }
+
+    /**
+     * full jitter: random(0, min(maxDelay, baseDelay * 2^(attempt-1)))
+     */
+    long backoff(int attempt) {
+        long ceiling = baseDelayNanos << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxDelayNanos) {
+            ceiling = maxDelayNanos;
+        }
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private void sleep(long nanos, RuntimeException cause) {
+        try {
+            sleeper.sleep(nanos / 1_000_000);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw cause; // 인터럽트되면 마지막 실패를 그대로 던진다.
+        }
+    }
+
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * 재시도 예산이 없어서 재시도하지 않은 횟수
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    /**
+     * maxAttempts 까지 모두 실패한 횟수
+     */
+    public long getGaveUpCount() {
+        return gaveUp.sum();
+    }
+
+    @FunctionalInterface
+    public interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+}
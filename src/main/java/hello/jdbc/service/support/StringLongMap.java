@@ -0,0 +1,138 @@
+package hello.jdbc.service.support;
+
+import java.util.Arrays;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * String -> long 해시 맵 (open addressing, linear probing)
+ * Map<String, Long>과 달리 값 박싱, Entry 객체가 없다. -> 배치 netting 처럼 같은 키에 수천 번 더하는 곳에서 할당이 거의 없다.
+ *
+ * - 없는 키의 값은 0
+ * - 삭제는 지원하지 않는다. 다시 쓸 때는 clear() -> 배열을 그대로 재사용
+ * - null 키 불가, 스레드 안전하지 않음
+ */
+public class StringLongMap {
+
+    private String[] keys;
+    private long[] values;
+    private int size;
+    private int mask;
+
+    public StringLongMap() {
+        this(16);
+    }
+
+    public StringLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1; // load factor 0.5 이하
+        this.keys = new String[capacity];
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public long get(String key) {
+        int index = indexOf(key);
+        return keys[index] == null ? 0 : values[index];
+    }
+
+    public boolean containsKey(String key) {
+        return keys[indexOf(key)] != null;
+    }
+
+    public void put(String key, long value) {
+        int index = insert(key);
+        values[index] = value;
+    }
+
+    /**
+     * value += delta, 없는 키면 0에서 시작
+     * @return 더한 후의 값
+     */
+    public long addTo(String key, long delta) {
+        int index = insert(key);
+        return values[index] += delta;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    public void forEach(ObjLongConsumer<String> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * 키를 정렬해서 반환 -> 여러 row를 항상 같은 순서로 변경할 때 사용 (락 순서 고정)
+     */
+    public String[] sortedKeys() {
+        String[] sorted = new String[size];
+        int count = 0;
+        for (String key : keys) {
+            if (key != null) {
+                sorted[count++] = key;
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private int insert(String key) {
+        int index = indexOf(key);
+        if (keys[index] != null) {
+            return index;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+            index = indexOf(key);
+        }
+        keys[index] = key;
+        size++;
+        return index;
+    }
+
+    /**
+     * key가 있는 칸, 없으면 넣을 빈 칸
+     */
+    private int indexOf(String key) {
+        int index = spread(key.hashCode()) & mask;
+        while (keys[index] != null && !keys[index].equals(key)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new String[oldKeys.length * 2];
+        values = new long[oldValues.length * 2];
+        mask = keys.length - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    //비슷한 id("bench1", "bench2" ...)의 해시가 몰리지 않도록 상위 비트를 섞는다.
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,226 @@
+package hello.jdbc.service.support;
+
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * memberId 별 JVM 안의 락 (stripe 방식)
+ * 트랜잭션을 시작하기 전에 잡는다. -> 같은 계좌를 기다리는 스레드가 커넥션, 트랜잭션 없이 JVM 안에서 줄을 선다.
+ *
+ * - memberId 해시로 stripe(공정 ReentrantLock) 선택, 여러 회원이면 stripe 번호 순서로 잡는다. -> 데드락 없음
+ * - 대기 시간이 timeout을 넘으면 잡았던 stripe를 풀고 CannotAcquireLockException (RetryExecutor 재시도 대상)
+ * - 차가운 계좌는 빠른 경로: 관련 stripe 모두 기다리는 스레드 없이 바로 잡히면 대기 시간 측정 없이 진행
+ *   빠른 경로도 락은 잡는다. -> 같은 stripe는 항상 한 스레드만
+ *   바로 잡기도 tryLock(0, ...)으로 공정성을 지킨다. (줄 서 있는 스레드를 새치기하지 않는다.)
+ * - stripe 별 획득, 빠른 경로, 경합(바로 못 잡음), 대기 시간, 타임아웃 횟수
+ *
+ * 같은 JVM 안의 요청끼리만 줄을 세운다. (여러 인스턴스 사이는 DB 락)
+ */
+public class StripedLockManager {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    private final AtomicLongArray acquired;
+    private final AtomicLongArray contended;
+    private final AtomicLongArray waitNanos;
+    private final AtomicLongArray timeouts;
+    private final AtomicLongArray uncontended;
+
+    /**
+     * @param stripeCount 2의 제곱수로 올림
+     */
+    public StripedLockManager(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock(true); // 먼저 온 스레드 먼저 -> 뜨거운 계좌에서 기아 방지
+        }
+        this.mask = size - 1;
+        this.acquired = new AtomicLongArray(size);
+        this.contended = new AtomicLongArray(size);
+        this.waitNanos = new AtomicLongArray(size);
+        this.timeouts = new AtomicLongArray(size);
+        this.uncontended = new AtomicLongArray(size);
+    }
+
+    /**
+     * memberIds의 stripe를 순서대로 잠근다.
+     * try (StripedLockManager.Lock lock = lockManager.lock(List.of(fromId, toId), timeout)) { ... }
+     */
+    public Lock lock(Collection<String> memberIds, Duration timeout) {
+        int[] indexes = memberIds.stream().mapToInt(this::stripeOf).sorted().distinct().toArray();
+
+        //빠른 경로: 모두 바로 잡히면 차가운 계좌
+        int locked = 0;
+        while (locked < indexes.length && tryLockNow(indexes[locked])) {
+            locked++;
+        }
+        if (locked == indexes.length) {
+            for (int index : indexes) {
+                uncontended.incrementAndGet(index);
+            }
+            return new Lock(indexes, true);
+        }
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (int i = locked; i < indexes.length; i++) {
+            if (!tryLock(indexes[i], deadline)) {
+                unlock(indexes, i);
+                throw new CannotAcquireLockException("JVM 락 대기 시간 초과 stripe=" + indexes[i] + ", memberIds=" + memberIds);
+            }
+        }
+        return new Lock(indexes, false);
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    public int stripeOf(String memberId) {
+        int hash = memberId.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    public long getAcquiredCount(int stripe) {
+        return acquired.get(stripe);
+    }
+
+    /**
+     * 바로 잡지 못하고 기다린 횟수
+     */
+    public long getContendedCount(int stripe) {
+        return contended.get(stripe);
+    }
+
+    public long getWaitNanos(int stripe) {
+        return waitNanos.get(stripe);
+    }
+
+    public long getTimeoutCount(int stripe) {
+        return timeouts.get(stripe);
+    }
+
+    /**
+     * 기다리지 않고 빠른 경로로 잡은 횟수
+     */
+    public long getUncontendedCount(int stripe) {
+        return uncontended.get(stripe);
+    }
+
+    /**
+     * 지금 이 stripe를 기다리는 스레드 수 (추정치)
+     */
+    public int getQueueLength(int stripe) {
+        return stripes[stripe].getQueueLength();
+    }
+
+    public long getTotalContendedCount() {
+        return sum(contended);
+    }
+
+    public long getTotalTimeoutCount() {
+        return sum(timeouts);
+    }
+
+    public long getTotalUncontendedCount() {
+        return sum(uncontended);
+    }
+
+    public long getTotalWaitNanos() {
+        return sum(waitNanos);
+    }
+
+    /**
+     * 기다리는 스레드가 없고 비어 있으면 잡는다.
+     * tryLock()은 공정 락에서도 새치기하므로 tryLock(0, ...) 사용
+     */
+    private boolean tryLockNow(int index) {
+        try {
+            if (stripes[index].tryLock(0, TimeUnit.NANOSECONDS)) {
+                acquired.incrementAndGet(index);
+                return true;
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean tryLock(int index, long deadline) {
+        ReentrantLock stripe = stripes[index];
+        contended.incrementAndGet(index);
+        long waitStart = System.nanoTime();
+        try {
+            boolean locked = stripe.tryLock(Math.max(0, deadline - waitStart), TimeUnit.NANOSECONDS);
+            if (locked) {
+                acquired.incrementAndGet(index);
+            } else {
+                timeouts.incrementAndGet(index);
+            }
+            return locked;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waitNanos.addAndGet(index, System.nanoTime() - waitStart);
+        }
+    }
+
+    private void unlock(int[] indexes, int lockedCount) {
+        for (int i = lockedCount - 1; i >= 0; i--) {
+            stripes[indexes[i]].unlock();
+        }
+    }
+
+    private static long sum(AtomicLongArray values) {
+        long sum = 0;
+        for (int i = 0; i < values.length(); i++) {
+            sum += values.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * 잡은 stripe를 역순으로 푼다. 같은 스레드에서 close() 해야 한다.
+     */
+    public final class Lock implements AutoCloseable {
+
+        private final int[] indexes;
+        private final boolean uncontended;
+        private boolean closed;
+
+        private Lock(int[] indexes, boolean uncontended) {
+            this.indexes = indexes;
+            this.uncontended = uncontended;
+        }
+
+        /**
+         * 기다리지 않고 빠른 경로로 잡았으면 true (차가운 계좌)
+         */
+        public boolean isUncontended() {
+            return uncontended;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            unlock(indexes, indexes.length);
+        }
+
+        @Override
+        public String toString() {
+            return "Lock" + Arrays.toString(indexes) + (uncontended ? " uncontended" : "");
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package hello.jdbc.connect;
+
+import hello.jdbc.connect.ReadWriteRoutingDataSource.ConsistencyToken;
+import hello.jdbc.connect.ReadWriteRoutingDataSource.Session;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * H2 메모리 DB 3개: primary, replica 2개
+ * 같은 회원을 DB 마다 다른 금액으로 넣어서 어디서 읽었는지 확인한다. (복제는 없다.)
+ */
+class ReadWriteRoutingDataSourceTest {
+
+    private static final String MEMBER_ID = "memberA";
+    private static final int PRIMARY_MONEY = 10000;
+    private static final int REPLICA1_MONEY = 1000;
+    private static final int REPLICA2_MONEY = 2000;
+
+    private final DataSource primary = memoryDataSource("rw_primary");
+    private final DataSource replica1 = memoryDataSource("rw_replica1");
+    private final DataSource replica2 = memoryDataSource("rw_replica2");
+
+    private ReadWriteRoutingDataSource routingDataSource;
+    private MemberRepositoryV4_2 repository;
+    private TransactionTemplate readWrite;
+    private TransactionTemplate readOnly;
+
+    @BeforeEach
+    void beforeEach() {
+        init(primary, PRIMARY_MONEY);
+        init(replica1, REPLICA1_MONEY);
+        init(replica2, REPLICA2_MONEY);
+
+        routingDataSource = new ReadWriteRoutingDataSource(primary, List.of(replica1, replica2), Duration.ofMillis(200));
+        DataSource dataSource = routingDataSource.lazyProxy();
+        repository = new MemberRepositoryV4_2(dataSource);
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @AfterEach
+    void afterEach() {
+        for (DataSource dataSource : List.of(primary, replica1, replica2)) {
+            new JdbcTemplate(dataSource).execute("drop table member");
+        }
+    }
+
+    @Test
+    @DisplayName("트랜잭션 밖 -> 읽기인지 알 수 없으므로 primary")
+    void outsideTransactionGoesToPrimary() {
+        assertThat(repository.findById(MEMBER_ID).getMoney()).isEqualTo(PRIMARY_MONEY);
+
+        repository.update(MEMBER_ID, 9000);
+        assertThat(moneyOf(primary)).isEqualTo(9000);
+        assertThat(moneyOf(replica1)).isEqualTo(REPLICA1_MONEY);
+        assertThat(moneyOf(replica2)).isEqualTo(REPLICA2_MONEY);
+        assertThat(routingDataSource.getReplicaRouteCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("트랜잭션 밖 readOnly() 범위 -> replica 라운드 로빈")
+    void readOnlyHintOutsideTransaction() {
+        Set<Integer> moneys = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            moneys.add(readOnlyMoney());
+        }
+
+        assertThat(moneys).containsExactlyInAnyOrder(REPLICA1_MONEY, REPLICA2_MONEY);
+    }
+
+    @Test
+    void readOnlyTransaction() {
+        Integer money = readOnly.execute(status -> repository.findById(MEMBER_ID).getMoney());
+
+        assertThat(money).isIn(REPLICA1_MONEY, REPLICA2_MONEY);
+    }
+
+    @Test
+    @DisplayName("읽기-쓰기 트랜잭션 -> readOnly() 범위 안이어도 읽기, 쓰기 모두 primary")
+    void readWriteTransaction() {
+        Session hint = ReadWriteRoutingDataSource.readOnly();
+        Integer money;
+        try {
+            money = readWrite.execute(status -> {
+                repository.update(MEMBER_ID, 9000);
+                return repository.findById(MEMBER_ID).getMoney();
+            });
+        } finally {
+            hint.close();
+        }
+
+        assertThat(money).isEqualTo(9000);
+        assertThat(moneyOf(primary)).isEqualTo(9000);
+        assertThat(moneyOf(replica1)).isEqualTo(REPLICA1_MONEY);
+    }
+
+    @Test
+    @DisplayName("토큰을 가진 세션은 커밋 직후 자기가 쓴 값을 읽는다.")
+    void readYourWrites() throws InterruptedException {
+        ConsistencyToken token = new ConsistencyToken();
+
+        Session session = ReadWriteRoutingDataSource.bind(token);
+        try {
+            readWrite.executeWithoutResult(status -> repository.update(MEMBER_ID, 9000));
+            assertThat(token.hasWritten()).isTrue();
+
+            assertThat(readOnlyMoney()).isEqualTo(9000);
+            Integer readOnlyMoney = readOnly.execute(status -> repository.findById(MEMBER_ID).getMoney());
+            assertThat(readOnlyMoney).isEqualTo(9000);
+        } finally {
+            session.close();
+        }
+        assertThat(routingDataSource.getStickyReadCount()).isEqualTo(2);
+
+        //토큰이 없는 다른 세션 -> replica (아직 복제 전 값)
+        assertThat(readOnlyMoney()).isIn(REPLICA1_MONEY, REPLICA2_MONEY);
+
+        //복제 지연 시간이 지나면 토큰을 가진 세션도 replica
+        Thread.sleep(300);
+        session = ReadWriteRoutingDataSource.bind(token);
+        try {
+            assertThat(readOnlyMoney()).isIn(REPLICA1_MONEY, REPLICA2_MONEY);
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    @DisplayName("트랜잭션 밖 쓰기(auto-commit) 후 readOnly 읽기도 자기가 쓴 값을 읽는다.")
+    void readYourWritesOutsideTransaction() {
+        ConsistencyToken token = new ConsistencyToken();
+
+        Session session = ReadWriteRoutingDataSource.bind(token);
+        try {
+            repository.update(MEMBER_ID, 9000);
+            assertThat(token.hasWritten()).isTrue();
+
+            assertThat(readOnlyMoney()).isEqualTo(9000);
+        } finally {
+            session.close();
+        }
+        assertThat(routingDataSource.getStickyReadCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("롤백된 쓰기는 토큰에 기록하지 않는다.")
+    void rollbackDoesNotMarkToken() {
+        ConsistencyToken token = new ConsistencyToken();
+
+        Session session = ReadWriteRoutingDataSource.bind(token);
+        try {
+            readWrite.executeWithoutResult(status -> {
+                repository.update(MEMBER_ID, 9000);
+                status.setRollbackOnly();
+            });
+
+            assertThat(token.hasWritten()).isFalse();
+            assertThat(readOnlyMoney()).isIn(REPLICA1_MONEY, REPLICA2_MONEY);
+        } finally {
+            session.close();
+        }
+        assertThat(moneyOf(primary)).isEqualTo(PRIMARY_MONEY);
+    }
+
+    //트랜잭션 밖 읽기를 replica로
+    private int readOnlyMoney() {
+        Session hint = ReadWriteRoutingDataSource.readOnly();
+        try {
+            return repository.findById(MEMBER_ID).getMoney();
+        } finally {
+            hint.close();
+        }
+    }
+
+    private static DataSource memoryDataSource(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    private static void init(DataSource dataSource, int money) {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.execute("create table member (member_id varchar(10), money integer not null default 0, version bigint not null default 0, primary key (member_id))");
+        template.update("insert into member(member_id, money) values(?, ?)", MEMBER_ID, money);
+    }
+
+    private static int moneyOf(DataSource dataSource) {
+        return new JdbcTemplate(dataSource).queryForObject("select money from member where member_id = ?", Integer.class, MEMBER_ID);
+    }
+}
@@ -0,0 +1,128 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static hello.jdbc.connect.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterMemberRepositoryTest {
+
+    private static final String MEMBER_A = "bloomA";
+    private static final String MEMBER_B = "bloomB";
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV4_2 dbRepository;
+    private BloomFilterMemberRepository repository;
+
+    private final AtomicInteger dbLookups = new AtomicInteger();
+    private Runnable beforeInsert = () -> {
+    };
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        dbRepository = new MemberRepositoryV4_2(dataSource);
+        dbRepository.save(new Member(MEMBER_A, 10000));
+
+        //DB 조회 횟수 확인용
+        MemberRepository counting = new ForwardingMemberRepository(dbRepository) {
+            @Override
+            public Member findById(String memberId) {
+                dbLookups.incrementAndGet();
+                return super.findById(memberId);
+            }
+
+            @Override
+            public Member save(Member member) {
+                beforeInsert.run();
+                return super.save(member);
+            }
+        };
+        //삭제 후 rebuild는 호출한 스레드에서 바로 실행
+        repository = new BloomFilterMemberRepository(counting, 1000, 0.01, 1, Runnable::run);
+        repository.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void afterEach() {
+        dbRepository.deleteAll(List.of(MEMBER_A, MEMBER_B));
+        dataSource.close();
+    }
+
+    @Test
+    void definiteMiss() {
+        assertThatThrownBy(() -> repository.findById("none"))
+                .isInstanceOf(NoSuchElementException.class);
+
+        assertThat(dbLookups.get()).isZero();
+        assertThat(repository.getDefiniteMissCount()).isEqualTo(1);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(dbLookups.get()).isEqualTo(1);
+    }
+
+    @Test
+    void rememberSaved() {
+        repository.save(new Member(MEMBER_B, 5000));
+
+        assertThat(repository.isDefinitelyAbsent(MEMBER_B)).isFalse();
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(5000);
+
+        MemberLookupResult result = repository.findAllById(List.of(MEMBER_A, MEMBER_B, "none"));
+        assertThat(result.getMembers()).hasSize(2);
+        assertThat(result.getMissingIds()).containsExactly("none");
+    }
+
+    @Test
+    @DisplayName("트랜잭션 밖 저장 도중 rebuild()가 끝나도 새 필터에 남는다.")
+    void saveDuringRebuild() {
+        beforeInsert = repository::rebuild; // insert 전에 스캔 -> 새 필터에는 MEMBER_B가 없다.
+
+        repository.save(new Member(MEMBER_B, 5000));
+
+        assertThat(repository.isDefinitelyAbsent(MEMBER_B)).isFalse();
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(5000);
+    }
+
+    @Test
+    void retryWithDefinitelyAbsentId() {
+        assertThatThrownBy(() -> repository.save(new Member(MEMBER_A, 0)))
+                .isInstanceOf(DuplicateKeyException.class);
+
+        //필터에 확실히 없는 id만 재시도 -> 다시 키 중복이 나지 않는다.
+        Random random = new Random();
+        String retryId;
+        do {
+            retryId = "bloom" + random.nextInt(10000);
+        } while (!repository.isDefinitelyAbsent(retryId));
+
+        repository.save(new Member(retryId, 0));
+        repository.delete(retryId);
+    }
+
+    @Test
+    void rebuildAfterDelete() {
+        long rebuilds = repository.getRebuildCount();
+
+        repository.delete(MEMBER_A);
+
+        assertThat(repository.getRebuildCount()).isEqualTo(rebuilds + 1);
+        assertThat(repository.isDefinitelyAbsent(MEMBER_A)).isTrue();
+        assertThat(repository.getMemoryBytes()).isPositive();
+    }
+}
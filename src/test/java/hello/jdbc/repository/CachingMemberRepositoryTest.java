@@ -0,0 +1,158 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.support.LocalCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static hello.jdbc.connect.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingMemberRepositoryTest {
+
+    private static final String MEMBER_A = "cacheA";
+    private static final String MEMBER_B = "cacheB";
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV4_2 dbRepository;
+    private TransactionTemplate txTemplate;
+
+    private final AtomicLong ticker = new AtomicLong();
+    private LocalCache<String, Member> cache;
+    private CachingMemberRepository repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        dbRepository = new MemberRepositoryV4_2(dataSource);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        //시간은 ticker로 직접 조절, refresh는 호출한 스레드에서 바로 실행
+        cache = new LocalCache<>(100, Duration.ofSeconds(10), Duration.ofSeconds(5), Runnable::run, ticker::get);
+        repository = new CachingMemberRepository(dbRepository, cache);
+
+        dbRepository.saveAll(List.of(new Member(MEMBER_A, 10000), new Member(MEMBER_B, 10000)));
+    }
+
+    @AfterEach
+    void afterEach() {
+        dbRepository.deleteAll(List.of(MEMBER_A, MEMBER_B));
+        dataSource.close();
+    }
+
+    @Test
+    void cacheHit() {
+        Member first = repository.findById(MEMBER_A);
+        first.setMoney(0); //복사본이므로 캐시에 영향 없음
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getLoadCount()).isEqualTo(1);
+
+        MemberLookupResult result = repository.findAllById(List.of(MEMBER_A, MEMBER_B, "none"));
+        assertThat(result.getMembers()).hasSize(2);
+        assertThat(result.getMissingIds()).containsExactly("none");
+    }
+
+    @Test
+    void invalidateWithoutTransaction() {
+        repository.findById(MEMBER_A);
+
+        repository.update(MEMBER_A, 20000);
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(20000);
+    }
+
+    @Test
+    void invalidateAfterCommit() {
+        repository.findById(MEMBER_A);
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.update(MEMBER_A, 20000);
+            //트랜잭션 안에서 변경한 회원은 캐시를 거치지 않는다. -> 자기 변경을 본다.
+            assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(20000);
+            //아직 커밋 전 -> 캐시는 커밋된 값 그대로
+            assertThat(cache.size()).isEqualTo(1);
+        });
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(20000);
+    }
+
+    @Test
+    void rollbackDoesNotLeakIntoCache() {
+        repository.findById(MEMBER_A);
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.update(MEMBER_A, 20000);
+            repository.findById(MEMBER_A);
+            status.setRollbackOnly();
+        });
+
+        long hits = cache.getHitCount();
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(cache.getHitCount()).isEqualTo(hits + 1); //롤백 후에도 캐시 유지
+    }
+
+    @Test
+    @DisplayName("REQUIRES_NEW 안쪽 트랜잭션의 변경은 안쪽 커밋 후 무효화 (바깥 롤백과 무관)")
+    void requiresNewInvalidatesOnItsOwnCommit() {
+        repository.findById(MEMBER_B);
+        TransactionTemplate requiresNew = new TransactionTemplate(txTemplate.getTransactionManager());
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.update(MEMBER_A, 20000);
+            requiresNew.executeWithoutResult(inner -> repository.update(MEMBER_B, 20000));
+            //바깥 트랜잭션의 변경 목록은 그대로
+            assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(20000);
+            status.setRollbackOnly();
+        });
+
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(20000);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void refreshAheadAndExpire() {
+        repository.findById(MEMBER_A);
+        dbRepository.update(MEMBER_A, 20000); //캐시를 거치지 않은 변경
+
+        //refreshAfter 경과 -> 기존 값 반환, 백그라운드 갱신
+        ticker.set(Duration.ofSeconds(6).toNanos());
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(cache.getRefreshCount()).isEqualTo(1);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(20000);
+
+        //ttl 경과 -> 만료 후 다시 로딩
+        ticker.set(Duration.ofSeconds(20).toNanos());
+        long loads = cache.getLoadCount();
+        repository.findById(MEMBER_A);
+        assertThat(cache.getLoadCount()).isEqualTo(loads + 1);
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() {
+        LocalCache<String, Member> smallCache = new LocalCache<>(1, Duration.ofMinutes(1), null);
+        CachingMemberRepository smallRepository = new CachingMemberRepository(dbRepository, smallCache);
+
+        smallRepository.findById(MEMBER_A);
+        smallRepository.findById(MEMBER_B);
+
+        assertThat(smallCache.size()).isEqualTo(1);
+        assertThat(smallCache.getEvictionCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,166 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static hello.jdbc.connect.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemberRepositoryV4_2Test {
+
+    private static final List<String> MEMBER_IDS = List.of("batchA", "batchB", "batchC");
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV4_2 repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        repository = new MemberRepositoryV4_2(dataSource);
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.deleteAll(MEMBER_IDS);
+        dataSource.close();
+    }
+
+    @Test
+    void batch() {
+        //saveAll: batchSize 2 -> 2건, 1건 두 번에 나누어 실행
+        List<Member> members = List.of(new Member("batchA", 1000), new Member("batchB", 2000), new Member("batchC", 3000));
+        int[] saveCounts = repository.saveAll(members, 2);
+        assertThat(saveCounts).containsExactly(1, 1, 1);
+        assertThat(repository.findById("batchC").getMoney()).isEqualTo(3000);
+
+        //updateAll: 없는 회원은 update count 0
+        int[] updateCounts = repository.updateAll(List.of(new Member("batchA", 5000), new Member("none", 5000)), 2);
+        assertThat(updateCounts).containsExactly(1, 0);
+        assertThat(repository.findById("batchA").getMoney()).isEqualTo(5000);
+
+        //deleteAll
+        int[] deleteCounts = repository.deleteAll(MEMBER_IDS);
+        assertThat(deleteCounts).containsExactly(1, 1, 1);
+        assertThatThrownBy(() -> repository.findById("batchA"))
+                .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void batchDuplicateKey() {
+        List<Member> members = List.of(new Member("batchA", 1000), new Member("batchA", 2000));
+
+        //SQLExceptionTranslator -> 스프링 예외로 변환
+        assertThatThrownBy(() -> repository.saveAll(members))
+                .isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void findAllById() {
+        repository.saveAll(List.of(new Member("batchA", 1000), new Member("batchB", 2000)));
+
+        MemberLookupResult result = repository.findAllById(List.of("batchB", "batchA", "none", "batchA"));
+
+        assertThat(result.getMembers()).extracting(Member::getMemberId).containsExactly("batchB", "batchA");
+        assertThat(result.get("batchA").getMoney()).isEqualTo(1000);
+        assertThat(result.getMissingIds()).containsExactly("none");
+    }
+
+    @Test
+    void findAllByIdTempTable() {
+        //TEMP_TABLE_THRESHOLD 초과 -> 임시 테이블 + join
+        List<Member> members = IntStream.range(0, MemberBulkLookup.TEMP_TABLE_THRESHOLD + 1)
+                .mapToObj(i -> new Member("bulk" + i, i))
+                .toList();
+        List<String> memberIds = members.stream().map(Member::getMemberId).toList();
+        repository.saveAll(members);
+
+        try {
+            List<String> requestIds = new ArrayList<>(memberIds);
+            requestIds.add("none");
+
+            MemberLookupResult result = repository.findAllById(requestIds);
+
+            assertThat(result.getMembers()).hasSize(members.size());
+            assertThat(result.get("bulk10").getMoney()).isEqualTo(10);
+            assertThat(result.getMissingIds()).containsExactly("none");
+        } finally {
+            repository.deleteAll(memberIds);
+        }
+    }
+
+    @Test
+    void streamAll() {
+        repository.saveAll(List.of(new Member("batchA", 1000), new Member("batchB", 2000), new Member("batchC", 3000)));
+
+        try (Stream<Member> members = repository.streamAll(2)) {
+            assertThat(members.filter(member -> MEMBER_IDS.contains(member.getMemberId())).mapToInt(Member::getMoney).sum())
+                    .isEqualTo(6000);
+        }
+
+        List<String> scanned = new ArrayList<>();
+        repository.scanAll(2, member -> scanned.add(member.getMemberId()));
+        assertThat(scanned).containsAll(MEMBER_IDS);
+    }
+
+    @Test
+    void streamAllInTransaction() {
+        repository.saveAll(List.of(new Member("batchA", 1000)));
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        //트랜잭션 커넥션으로 스트림 -> close() 해도 트랜잭션 커넥션은 유지
+        txTemplate.executeWithoutResult(status -> {
+            repository.update("batchA", 5000);
+            try (Stream<Member> members = repository.streamAll()) {
+                assertThat(members.filter(member -> member.getMemberId().equals("batchA")).findFirst().orElseThrow().getMoney())
+                        .isEqualTo(5000);
+            }
+            repository.update("batchA", 7000);
+        });
+
+        assertThat(repository.findById("batchA").getMoney()).isEqualTo(7000);
+    }
+
+    @Test
+    void findPageAfter() {
+        repository.saveAll(List.of(new Member("batchC", 3000), new Member("batchA", 1000), new Member("batchB", 2000)));
+
+        //member_id 순서로 2건씩
+        List<Member> firstPage = repository.findPageAfter("batch", 2);
+        assertThat(firstPage).extracting(Member::getMemberId).containsExactly("batchA", "batchB");
+
+        List<Member> secondPage = repository.findPageAfter(firstPage.get(firstPage.size() - 1).getMemberId(), 2);
+        assertThat(secondPage).extracting(Member::getMemberId).startsWith("batchC");
+
+        assertThat(repository.findPageAfter(null, 1)).hasSize(1);
+    }
+
+    @Test
+    void findByIdOptional() {
+        repository.save(new Member("batchA", 1000));
+
+        assertThat(repository.findByIdOptional("batchA")).contains(new Member("batchA", 1000));
+        assertThat(repository.findMoney("batchA")).hasValue(1000);
+
+        //없는 회원 -> 예외 없이 empty
+        assertThat(repository.findByIdOptional("none")).isEmpty();
+        assertThat(repository.findMoney("none")).isEmpty();
+    }
+}
@@ -0,0 +1,197 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static hello.jdbc.connect.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemberRepositoryV5Test {
+
+    private static final List<String> MEMBER_IDS = List.of("batch5A", "batch5B", "batch5C");
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV5 repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        repository = new MemberRepositoryV5(dataSource);
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.deleteAll(MEMBER_IDS);
+        dataSource.close();
+    }
+
+    @Test
+    void batch() {
+        //saveAll: batchSize 2 -> 2건, 1건 두 번에 나누어 실행
+        List<Member> members = List.of(new Member("batch5A", 1000), new Member("batch5B", 2000), new Member("batch5C", 3000));
+        int[] saveCounts = repository.saveAll(members, 2);
+        assertThat(saveCounts).containsExactly(1, 1, 1);
+        assertThat(repository.findById("batch5C").getMoney()).isEqualTo(3000);
+
+        //updateAll: 없는 회원은 update count 0
+        int[] updateCounts = repository.updateAll(List.of(new Member("batch5A", 5000), new Member("none", 5000)), 2);
+        assertThat(updateCounts).containsExactly(1, 0);
+        assertThat(repository.findById("batch5A").getMoney()).isEqualTo(5000);
+
+        //deleteAll
+        int[] deleteCounts = repository.deleteAll(MEMBER_IDS);
+        assertThat(deleteCounts).containsExactly(1, 1, 1);
+        assertThatThrownBy(() -> repository.findById("batch5A"))
+                .isInstanceOf(EmptyResultDataAccessException.class);
+    }
+
+    @Test
+    void batchDuplicateKey() {
+        List<Member> members = List.of(new Member("batch5A", 1000), new Member("batch5A", 2000));
+
+        //JdbcTemplate 예외 변환
+        assertThatThrownBy(() -> repository.saveAll(members))
+                .isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void findAllById() {
+        repository.saveAll(List.of(new Member("batch5A", 1000), new Member("batch5B", 2000)));
+
+        MemberLookupResult result = repository.findAllById(List.of("batch5B", "batch5A", "none", "batch5A"));
+
+        assertThat(result.getMembers()).extracting(Member::getMemberId).containsExactly("batch5B", "batch5A");
+        assertThat(result.get("batch5A").getMoney()).isEqualTo(1000);
+        assertThat(result.getMissingIds()).containsExactly("none");
+    }
+
+    @Test
+    void findAllByIdTempTable() {
+        //TEMP_TABLE_THRESHOLD 초과 -> 임시 테이블 + join
+        List<Member> members = IntStream.range(0, MemberBulkLookup.TEMP_TABLE_THRESHOLD + 1)
+                .mapToObj(i -> new Member("bulk5_" + i, i))
+                .toList();
+        List<String> memberIds = members.stream().map(Member::getMemberId).toList();
+        repository.saveAll(members);
+
+        try {
+            List<String> requestIds = new ArrayList<>(memberIds);
+            requestIds.add("none");
+
+            MemberLookupResult result = repository.findAllById(requestIds);
+
+            assertThat(result.getMembers()).hasSize(members.size());
+            assertThat(result.get("bulk5_10").getMoney()).isEqualTo(10);
+            assertThat(result.getMissingIds()).containsExactly("none");
+        } finally {
+            repository.deleteAll(memberIds);
+        }
+    }
+
+    @Test
+    void streamAll() {
+        repository.saveAll(List.of(new Member("batch5A", 1000), new Member("batch5B", 2000), new Member("batch5C", 3000)));
+
+        try (Stream<Member> members = repository.streamAll(2)) {
+            assertThat(members.filter(member -> MEMBER_IDS.contains(member.getMemberId())).mapToInt(Member::getMoney).sum())
+                    .isEqualTo(6000);
+        }
+
+        List<String> scanned = new ArrayList<>();
+        repository.scanAll(2, member -> scanned.add(member.getMemberId()));
+        assertThat(scanned).containsAll(MEMBER_IDS);
+    }
+
+    @Test
+    void streamAllInTransaction() {
+        repository.saveAll(List.of(new Member("batch5A", 1000)));
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        //트랜잭션 커넥션으로 스트림 -> close() 해도 트랜잭션 커넥션은 유지
+        txTemplate.executeWithoutResult(status -> {
+            repository.update("batch5A", 5000);
+            try (Stream<Member> members = repository.streamAll()) {
+                assertThat(members.filter(member -> member.getMemberId().equals("batch5A")).findFirst().orElseThrow().getMoney())
+                        .isEqualTo(5000);
+            }
+            repository.update("batch5A", 7000);
+        });
+
+        assertThat(repository.findById("batch5A").getMoney()).isEqualTo(7000);
+    }
+
+    @Test
+    void findPageAfter() {
+        repository.saveAll(List.of(new Member("batch5C", 3000), new Member("batch5A", 1000), new Member("batch5B", 2000)));
+
+        //member_id 순서로 2건씩
+        List<Member> firstPage = repository.findPageAfter("batch5", 2);
+        assertThat(firstPage).extracting(Member::getMemberId).containsExactly("batch5A", "batch5B");
+
+        List<Member> secondPage = repository.findPageAfter(firstPage.get(firstPage.size() - 1).getMemberId(), 2);
+        assertThat(secondPage).extracting(Member::getMemberId).startsWith("batch5C");
+
+        assertThat(repository.findPageAfter(null, 1)).hasSize(1);
+    }
+
+    @Test
+    void findByIdOptional() {
+        repository.save(new Member("batch5A", 1000));
+
+        assertThat(repository.findByIdOptional("batch5A")).contains(new Member("batch5A", 1000));
+        assertThat(repository.findMoney("batch5A")).hasValue(1000);
+
+        //없는 회원 -> 예외 없이 empty
+        assertThat(repository.findByIdOptional("none")).isEmpty();
+        assertThat(repository.findMoney("none")).isEmpty();
+    }
+
+    @Test
+    void updateIfVersion() {
+        repository.save(new Member("batch5A", 1000));
+        Member member = repository.findById("batch5A");
+        assertThat(member.getVersion()).isZero();
+
+        //읽은 버전 그대로면 변경 + version 1 증가
+        assertThat(repository.updateIfVersion("batch5A", 2000, member.getVersion())).isTrue();
+        assertThat(repository.findById("batch5A")).isEqualTo(new Member("batch5A", 2000, 1));
+
+        //이미 바뀐 버전 -> 변경 없음
+        assertThat(repository.updateIfVersion("batch5A", 3000, member.getVersion())).isFalse();
+        assertThat(repository.findById("batch5A").getMoney()).isEqualTo(2000);
+
+        //다른 update도 버전을 올린다.
+        repository.incrementMoney("batch5A", 100);
+        assertThat(repository.findByIdOptional("batch5A")).contains(new Member("batch5A", 2100, 2));
+    }
+
+    @Test
+    void incrementMoneyAll() {
+        repository.saveAll(List.of(new Member("batch5A", 1000), new Member("batch5B", 1000)));
+
+        //batch5A: 잔액 부족 -> 변경 없음, 없는 회원 -> 0, batchSize 2 -> 2건, 1건
+        int[] counts = repository.incrementMoneyAll(List.of("batch5A", "batch5B", "none"), new long[]{-2000, 500, 100}, 2);
+
+        assertThat(counts).containsExactly(0, 1, 0);
+        assertThat(repository.findById("batch5A")).isEqualTo(new Member("batch5A", 1000, 0));
+        assertThat(repository.findById("batch5B")).isEqualTo(new Member("batch5B", 1500, 1));
+    }
+}
@@ -0,0 +1,151 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.service.MemberServiceV4;
+import hello.jdbc.service.TransferMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static hello.jdbc.connect.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardedBalanceMemberRepositoryTest {
+
+    private static final String MEMBER_HOT = "shardHot";
+    private static final String MEMBER_A = "shardA";
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV5 dbRepository;
+    private ShardedBalanceMemberRepository repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        dbRepository = new MemberRepositoryV5(dataSource);
+        repository = new ShardedBalanceMemberRepository(dbRepository, dataSource);
+        repository.afterPropertiesSet();
+
+        repository.save(new Member(MEMBER_HOT, 10000));
+        repository.save(new Member(MEMBER_A, 100000));
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.deleteAll(List.of(MEMBER_HOT, MEMBER_A));
+        dataSource.close();
+    }
+
+    @Test
+    void creditsSpreadOverShards() {
+        repository.promote(MEMBER_HOT, 4);
+
+        for (int i = 0; i < 100; i++) {
+            repository.incrementMoney(MEMBER_HOT, 10);
+        }
+
+        assertThat(repository.getShardCount(MEMBER_HOT)).isEqualTo(4);
+        assertThat(repository.getShardWriteCount()).isPositive();
+        assertThat(dbRepository.findById(MEMBER_HOT).getMoney()).isLessThan(11000); // member row에 다 가지 않았다.
+        assertThat(repository.findById(MEMBER_HOT).getMoney()).isEqualTo(11000);
+        assertThat(repository.findMoney(MEMBER_HOT)).hasValue(11000);
+        assertThat(repository.findAllById(List.of(MEMBER_HOT)).getMembers().get(0).getMoney()).isEqualTo(11000);
+    }
+
+    @Test
+    void debitAcrossShards() {
+        repository.promote(MEMBER_HOT, 4);
+        for (int i = 0; i < 100; i++) {
+            repository.incrementMoney(MEMBER_HOT, 100);
+        }
+
+        //어느 shard도 혼자 감당할 수 없는 금액 -> 모든 shard에서 나누어 출금
+        assertThat(repository.debitIfSufficient(MEMBER_HOT, 19000)).isTrue();
+        assertThat(repository.getDrainCount()).isEqualTo(1);
+        assertThat(repository.findById(MEMBER_HOT).getMoney()).isEqualTo(1000);
+
+        assertThat(repository.debitIfSufficient(MEMBER_HOT, 1001)).isFalse(); // 잔액 부족
+        assertThat(repository.findById(MEMBER_HOT).getMoney()).isEqualTo(1000);
+    }
+
+    @Test
+    void versionCoversShards() {
+        repository.promote(MEMBER_HOT, 4);
+        long version = repository.findById(MEMBER_HOT).getVersion();
+
+        repository.incrementMoney(MEMBER_HOT, 500); // 어느 shard에 가도 버전이 오른다.
+        assertThat(repository.updateIfVersion(MEMBER_HOT, 7000, version)).isFalse();
+
+        Member member = repository.findById(MEMBER_HOT);
+        assertThat(repository.updateIfVersion(MEMBER_HOT, 7000, member.getVersion())).isTrue();
+        assertThat(repository.findById(MEMBER_HOT).getMoney()).isEqualTo(7000);
+        assertThat(repository.findById(MEMBER_HOT).getVersion()).isGreaterThan(member.getVersion());
+    }
+
+    @Test
+    void demote() {
+        repository.promote(MEMBER_HOT, 4);
+        for (int i = 0; i < 20; i++) {
+            repository.incrementMoney(MEMBER_HOT, 50);
+        }
+        long version = repository.findById(MEMBER_HOT).getVersion();
+
+        repository.demote(MEMBER_HOT);
+
+        assertThat(repository.isSharded(MEMBER_HOT)).isFalse();
+        assertThat(dbRepository.findById(MEMBER_HOT).getMoney()).isEqualTo(11000);
+        assertThat(repository.findById(MEMBER_HOT).getVersion()).isGreaterThan(version);
+    }
+
+    @Test
+    void concurrentTransfersToHotAccount() throws Exception {
+        repository.promote(MEMBER_HOT, 8);
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        ProxyFactory proxyFactory = new ProxyFactory(new MemberServiceV4(repository, TransferMode.DELTA));
+        proxyFactory.setProxyTargetClass(true);
+        TransactionInterceptor transactionInterceptor = new TransactionInterceptor();
+        transactionInterceptor.setTransactionManager(transactionManager);
+        transactionInterceptor.setTransactionAttributeSource(new AnnotationTransactionAttributeSource());
+        proxyFactory.addAdvice(transactionInterceptor);
+        MemberServiceV4 memberService = (MemberServiceV4) proxyFactory.getProxy();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int n = i;
+                results.add(executor.submit(() -> {
+                    if (n == 100) {
+                        repository.demote(MEMBER_HOT); // 이체 도중 온라인 전환
+                    }
+                    memberService.accountTransfer(MEMBER_A, MEMBER_HOT, 10);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(98000);
+        assertThat(repository.findById(MEMBER_HOT).getMoney()).isEqualTo(12000);
+    }
+}
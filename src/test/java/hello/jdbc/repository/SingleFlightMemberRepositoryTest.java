@@ -0,0 +1,126 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static hello.jdbc.connect.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightMemberRepositoryTest {
+
+    private static final String MEMBER_A = "flightA";
+    private static final int THREADS = 16;
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV4_2 dbRepository;
+    private ExecutorService executor;
+
+    //leader의 DB 조회를 latch로 붙잡아 둔다.
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger dbCalls = new AtomicInteger();
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        dbRepository = new MemberRepositoryV4_2(dataSource);
+        dbRepository.save(new Member(MEMBER_A, 10000));
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void afterEach() {
+        executor.shutdownNow();
+        dbRepository.delete(MEMBER_A);
+        dataSource.close();
+    }
+
+    @Test
+    void coalesceConcurrentFindById() throws Exception {
+        SingleFlightMemberRepository repository = new SingleFlightMemberRepository(blockingRepository());
+
+        List<Future<Member>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> repository.findById(MEMBER_A)));
+        }
+        awaitWaiters(repository);
+        release.countDown();
+
+        for (Future<Member> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS).getMoney()).isEqualTo(10000);
+        }
+        assertThat(dbCalls.get()).isEqualTo(1);
+        assertThat(repository.getCoalescedCount()).isEqualTo(THREADS - 1);
+        assertThat(repository.getInFlightCount()).isZero();
+    }
+
+    @Test
+    void shareException() throws Exception {
+        SingleFlightMemberRepository repository = new SingleFlightMemberRepository(blockingRepository());
+
+        List<Future<Member>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> repository.findById("none")));
+        }
+        awaitWaiters(repository);
+        release.countDown();
+
+        for (Future<Member> result : results) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(NoSuchElementException.class);
+        }
+        assertThat(dbCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void notCacheAfterCompletion() {
+        release.countDown();
+        SingleFlightMemberRepository repository = new SingleFlightMemberRepository(blockingRepository());
+
+        repository.findById(MEMBER_A);
+        repository.findById(MEMBER_A);
+
+        assertThat(dbCalls.get()).isEqualTo(2);
+        assertThat(repository.getCoalescedCount()).isZero();
+    }
+
+    private MemberRepository blockingRepository() {
+        return new ForwardingMemberRepository(dbRepository) {
+            @Override
+            public Member findById(String memberId) {
+                dbCalls.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.findById(memberId);
+            }
+        };
+    }
+
+    //leader 1개 + 나머지는 모두 합류할 때까지 대기
+    private void awaitWaiters(SingleFlightMemberRepository repository) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (repository.getCoalescedCount() < THREADS - 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.support.CreditJournal;
+import hello.jdbc.service.MemberServiceV4;
+import hello.jdbc.service.TransferMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static hello.jdbc.connect.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WriteBehindMemberRepositoryTest {
+
+    private static final String MEMBER_REWARD = "wbReward";
+    private static final String MEMBER_A = "wbA";
+    private static final String MEMBER_GHOST = "wbGhost"; // write-behind 대상이지만 member 테이블에 없다.
+
+    @TempDir
+    Path journalDirectory;
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV5 dbRepository;
+    private WriteBehindMemberRepository repository;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        dbRepository = new MemberRepositoryV5(dataSource);
+        dbRepository.save(new Member(MEMBER_REWARD, 10000));
+        dbRepository.save(new Member(MEMBER_A, 100000));
+
+        repository = open();
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.close();
+        dbRepository.deleteAll(List.of(MEMBER_REWARD, MEMBER_A));
+        dataSource.close();
+    }
+
+    @Test
+    void creditsAreBufferedAndMergedOnRead() {
+        for (int i = 0; i < 100; i++) {
+            repository.incrementMoney(MEMBER_REWARD, 10);
+        }
+
+        assertThat(dbRepository.findById(MEMBER_REWARD).getMoney()).isEqualTo(10000); // 아직 DB에 가지 않았다.
+        assertThat(repository.findById(MEMBER_REWARD).getMoney()).isEqualTo(11000);
+        assertThat(repository.findMoney(MEMBER_REWARD)).hasValue(11000);
+        assertThat(repository.getPending(MEMBER_REWARD)).isEqualTo(1000);
+
+        repository.flush();
+
+        assertThat(dbRepository.findById(MEMBER_REWARD).getMoney()).isEqualTo(11000);
+        assertThat(repository.findById(MEMBER_REWARD).getMoney()).isEqualTo(11000);
+        assertThat(repository.getPending(MEMBER_REWARD)).isZero();
+        assertThat(repository.getFlushedRowCount()).isEqualTo(1); // 100번 입금 -> update 1번
+    }
+
+    @Test
+    void recoverAfterCrash() {
+        for (int i = 0; i < 10; i++) {
+            repository.incrementMoney(MEMBER_REWARD, 100);
+        }
+
+        //close() 없이 새 인스턴스 -> 크래시 후 재시작
+        WriteBehindMemberRepository restarted = open();
+        assertThat(dbRepository.findById(MEMBER_REWARD).getMoney()).isEqualTo(11000);
+
+        //이미 반영한 세그먼트는 다시 반영하지 않는다.
+        restarted.close();
+        open().close();
+        assertThat(dbRepository.findById(MEMBER_REWARD).getMoney()).isEqualTo(11000);
+        repository = open();
+    }
+
+    @Test
+    void rolledBackCreditIsNotApplied() {
+        transactionTemplate.executeWithoutResult(status -> {
+            repository.incrementMoney(MEMBER_REWARD, 500);
+            status.setRollbackOnly();
+        });
+        transactionTemplate.executeWithoutResult(status -> repository.incrementMoney(MEMBER_REWARD, 300));
+        assertThat(repository.findById(MEMBER_REWARD).getMoney()).isEqualTo(10300);
+
+        //크래시 후 재시작 -> 커밋된 트랜잭션의 입금만
+        WriteBehindMemberRepository restarted = open();
+        assertThat(dbRepository.findById(MEMBER_REWARD).getMoney()).isEqualTo(10300);
+        restarted.close();
+        repository = open();
+    }
+
+    @Test
+    @DisplayName("저널 fsync 후 DB 커밋 전에 실패 -> 재시작해도 입금이 살아나지 않는다.")
+    void creditJournaledButNotCommitted() {
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            repository.incrementMoney(MEMBER_REWARD, 500);
+            //write-behind 기록(beforeCommit) 다음에 실패 -> 롤백
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    throw new IllegalStateException("commit failed");
+                }
+            });
+        })).isInstanceOf(IllegalStateException.class);
+
+        Path segment = CreditJournal.list(journalDirectory).get(0);
+        assertThat(CreditJournal.replay(segment, txId -> true)).containsKey(MEMBER_REWARD); // 저널에는 남아 있다.
+        assertThat(repository.getPending(MEMBER_REWARD)).isZero();
+
+        WriteBehindMemberRepository restarted = open();
+        assertThat(dbRepository.findById(MEMBER_REWARD).getMoney()).isEqualTo(10000);
+        restarted.close();
+        repository = open();
+    }
+
+    @Test
+    @DisplayName("REQUIRES_NEW 안쪽 트랜잭션의 입금은 바깥 트랜잭션과 따로 커밋된다.")
+    void requiresNewCredit() {
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            repository.incrementMoney(MEMBER_REWARD, 100);
+            requiresNew.executeWithoutResult(inner -> repository.incrementMoney(MEMBER_REWARD, 50));
+            status.setRollbackOnly();
+        });
+
+        assertThat(repository.getPending(MEMBER_REWARD)).isEqualTo(50);
+        repository.flush();
+        assertThat(dbRepository.findById(MEMBER_REWARD).getMoney()).isEqualTo(10050);
+    }
+
+    @Test
+    @DisplayName("잠근 뒤에 들어온 입금은 update로 덮어쓰지 않는다.")
+    void updateKeepsPendingCredits() throws Exception {
+        repository.incrementMoney(MEMBER_REWARD, 700);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                assertThat(repository.findByIdForUpdate(MEMBER_REWARD)).get().extracting(Member::getMoney).isEqualTo(10700);
+                awaitQuietly(executor.submit(() -> repository.incrementMoney(MEMBER_REWARD, 200))); // 다른 스레드의 입금
+
+                assertThat(repository.findById(MEMBER_REWARD).getMoney()).isEqualTo(10700); // 잠근 시점 기준
+                repository.update(MEMBER_REWARD, 5000);
+                assertThat(repository.findById(MEMBER_REWARD).getMoney()).isEqualTo(5000);
+            });
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(repository.findById(MEMBER_REWARD).getMoney()).isEqualTo(5200);
+        repository.flush();
+        assertThat(dbRepository.findById(MEMBER_REWARD).getMoney()).isEqualTo(5200);
+    }
+
+    @Test
+    @DisplayName("잠그지 않은 update -> 쓰기 전에 잠그고 그때의 대기 입금을 뺀다.")
+    void updateWithoutLock() {
+        repository.incrementMoney(MEMBER_REWARD, 700);
+
+        repository.update(MEMBER_REWARD, 5000);
+        assertThat(repository.findById(MEMBER_REWARD).getMoney()).isEqualTo(5000);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Member member = repository.findById(MEMBER_REWARD);
+            repository.update(MEMBER_REWARD, member.getMoney() - 100);
+        });
+        assertThat(repository.findById(MEMBER_REWARD).getMoney()).isEqualTo(4900);
+
+        repository.flush();
+        assertThat(dbRepository.findById(MEMBER_REWARD).getMoney()).isEqualTo(4900);
+    }
+
+    @Test
+    @DisplayName("MemberServiceV4 기본 모드(READ_MODIFY_WRITE), BATCHED로 대상 계좌 이체")
+    void absoluteTransferModes() {
+        repository.incrementMoney(MEMBER_REWARD, 500); // 대기 입금이 있는 상태
+        MemberServiceV4 memberService = transactional(new MemberServiceV4(repository));
+
+        memberService.accountTransfer(MEMBER_A, MEMBER_REWARD, 1000);
+        memberService.accountTransfer(MEMBER_REWARD, MEMBER_A, 300);
+        memberService.accountTransfer(MEMBER_A, MEMBER_REWARD, 200, TransferMode.BATCHED);
+
+        assertThat(repository.findById(MEMBER_REWARD).getMoney()).isEqualTo(11400);
+        repository.flush();
+        assertThat(dbRepository.findById(MEMBER_REWARD).getMoney()).isEqualTo(11400);
+        assertThat(dbRepository.findById(MEMBER_A).getMoney()).isEqualTo(99100);
+    }
+
+    @Test
+    @DisplayName("커밋 결과를 모르고 확인도 실패 -> flush 때 커밋 표시로 확인해서 반영")
+    void commitOutcomeUnknown() {
+        //커밋은 됐지만 응답 전에 커넥션이 끊긴 상황
+        DataSourceTransactionManager lostAck = new DataSourceTransactionManager(dataSource) {
+            @Override
+            protected void doCommit(DefaultTransactionStatus status) {
+                super.doCommit(status);
+                ConnectionHolder holder = (ConnectionHolder) TransactionSynchronizationManager.getResource(dataSource);
+                try {
+                    holder.getConnection().close();
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+                throw new TransactionSystemException("commit ack lost");
+            }
+        };
+
+        assertThatThrownBy(() -> new TransactionTemplate(lostAck).executeWithoutResult(status -> repository.incrementMoney(MEMBER_REWARD, 500)))
+                .isInstanceOf(TransactionSystemException.class);
+        assertThat(repository.getPending(MEMBER_REWARD)).isZero(); // 아직 모른다.
+
+        repository.flush();
+        assertThat(dbRepository.findById(MEMBER_REWARD).getMoney()).isEqualTo(10500);
+
+        //이미 반영 -> 재시작해도 다시 반영하지 않는다.
+        WriteBehindMemberRepository restarted = open();
+        assertThat(dbRepository.findById(MEMBER_REWARD).getMoney()).isEqualTo(10500);
+        restarted.close();
+    }
+
+    @Test
+    @DisplayName("조회 후 입금이 들어오면 version이 바뀐다.")
+    void updateIfVersionDetectsCredit() {
+        Member member = repository.findById(MEMBER_REWARD);
+        repository.incrementMoney(MEMBER_REWARD, 300);
+
+        assertThat(repository.updateIfVersion(MEMBER_REWARD, member.getMoney() - 100, member.getVersion())).isFalse();
+
+        Member reread = repository.findById(MEMBER_REWARD);
+        assertThat(reread.getVersion()).isEqualTo(member.getVersion() + 1);
+        assertThat(repository.updateIfVersion(MEMBER_REWARD, reread.getMoney() - 100, reread.getVersion())).isTrue();
+        assertThat(repository.findById(MEMBER_REWARD).getVersion()).isEqualTo(reread.getVersion() + 1);
+
+        //flush 전후로 version, 잔액이 같다.
+        Member beforeFlush = repository.findById(MEMBER_REWARD);
+        repository.flush();
+        assertThat(repository.findById(MEMBER_REWARD)).isEqualTo(beforeFlush);
+        assertThat(beforeFlush.getMoney()).isEqualTo(10200);
+    }
+
+    @Test
+    void creditToMissingMember() {
+        assertThat(repository.incrementMoney(MEMBER_GHOST, 100)).isFalse();
+
+        MemberServiceV4 memberService = transactional(new MemberServiceV4(repository, TransferMode.DELTA));
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_GHOST, 100))
+                .isInstanceOf(NoSuchElementException.class);
+        assertThat(dbRepository.findById(MEMBER_A).getMoney()).isEqualTo(100000); // 출금도 롤백
+        assertThat(repository.getPending(MEMBER_GHOST)).isZero();
+    }
+
+    @Test
+    void flushOnThreshold() throws InterruptedException {
+        repository.close();
+        repository = open(10);
+
+        for (int i = 0; i < 20; i++) {
+            repository.incrementMoney(MEMBER_REWARD, 1);
+        }
+
+        for (int i = 0; i < 100 && repository.getFlushCount() == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(repository.getFlushCount()).isPositive();
+    }
+
+    @Test
+    void concurrentTransfers() throws Exception {
+        repository.close();
+        repository = open(10);
+
+        MemberServiceV4 memberService = transactional(new MemberServiceV4(repository, TransferMode.DELTA));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int n = i;
+                results.add(executor.submit(() -> {
+                    if (n % 50 == 0) {
+                        repository.flush(); // 이체 도중 flush
+                    }
+                    memberService.accountTransfer(MEMBER_A, MEMBER_REWARD, 10);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(repository.findById(MEMBER_REWARD).getMoney()).isEqualTo(12000);
+        repository.close();
+        assertThat(dbRepository.findById(MEMBER_A).getMoney()).isEqualTo(98000);
+        assertThat(dbRepository.findById(MEMBER_REWARD).getMoney()).isEqualTo(12000);
+        repository = open();
+    }
+
+    private MemberServiceV4 transactional(MemberServiceV4 target) {
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        TransactionInterceptor transactionInterceptor = new TransactionInterceptor();
+        transactionInterceptor.setTransactionManager(transactionTemplate.getTransactionManager());
+        transactionInterceptor.setTransactionAttributeSource(new AnnotationTransactionAttributeSource());
+        proxyFactory.addAdvice(transactionInterceptor);
+        return (MemberServiceV4) proxyFactory.getProxy();
+    }
+
+    private static void awaitQuietly(Future<?> future) {
+        try {
+            future.get();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private WriteBehindMemberRepository open() {
+        return open(1_000_000);
+    }
+
+    //flushInterval은 길게 -> 테스트가 정한 시점에만 flush
+    private WriteBehindMemberRepository open(int flushThreshold) {
+        WriteBehindMemberRepository opened = new WriteBehindMemberRepository(dbRepository, dataSource, Set.of(MEMBER_REWARD, MEMBER_GHOST),
+                journalDirectory, Duration.ofHours(1), flushThreshold);
+        opened.afterPropertiesSet();
+        return opened;
+    }
+}
@@ -0,0 +1,77 @@
+package hello.jdbc.repository.support;
+
+import hello.jdbc.repository.ex.StacklessDuplicateKeyException;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrecomputedSQLExceptionTranslatorTest {
+
+    private final PrecomputedSQLExceptionTranslator translator = PrecomputedSQLExceptionTranslator.forDatabase("H2");
+
+    @Test
+    void sameAsSpringTranslator() {
+        SQLErrorCodeSQLExceptionTranslator springTranslator = new SQLErrorCodeSQLExceptionTranslator("H2");
+
+        //중복 키, 문법 오류, 무결성, 락 타임아웃, 표에 없는 코드(SQLState로 변환)
+        for (int errorCode : new int[]{23505, 42102, 23502, 50200, 90000}) {
+            SQLException ex = new SQLException("error " + errorCode, "08001", errorCode);
+
+            DataAccessException expected = springTranslator.translate("task", "sql", ex);
+            DataAccessException actual = translator.translate("task", "sql", ex);
+
+            assertThat(actual).isInstanceOf(expected.getClass());
+            assertThat(actual.getMessage()).isEqualTo(expected.getMessage());
+            assertThat(actual.getCause()).isSameAs(ex);
+        }
+    }
+
+    @Test
+    void translate() {
+        assertThat(translator.translate("save", "sql", new SQLException("dup", "23505", 23505)))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThat(translator.translate("find", "sql", new SQLException("table", "42S02", 42102)))
+                .isInstanceOf(BadSqlGrammarException.class);
+        assertThat(translator.translate("save", "sql", new SQLException("null", "23502", 23502)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(translator.translate("update", "sql", new SQLException("lock", "HYT00", 50200)))
+                .isInstanceOf(CannotAcquireLockException.class);
+    }
+
+    @Test
+    void uncategorized() {
+        //스프링 translator는 null을 반환하는 경우 -> 그대로 throw할 수 있도록 UncategorizedSQLException
+        assertThat(translator.translate("task", "sql", new SQLException("unknown", "HY000", 90000)))
+                .isInstanceOf(UncategorizedSQLException.class);
+    }
+
+    @Test
+    void batchUpdateNextException() {
+        BatchUpdateException batchEx = new BatchUpdateException("batch", new int[0]);
+        batchEx.setNextException(new SQLException("dup", "23505", 23505));
+
+        assertThat(translator.translate("saveAll", "sql", batchEx))
+                .isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void stacklessExpected() {
+        PrecomputedSQLExceptionTranslator stackless = translator.stacklessExpected();
+
+        DataAccessException ex = stackless.translate("save", "sql", new SQLException("dup", "23505", 23505));
+
+        assertThat(ex).isInstanceOf(StacklessDuplicateKeyException.class);
+        assertThat(ex.getStackTrace()).isEmpty();
+        assertThat(ex.getCause()).isInstanceOf(SQLException.class);
+    }
+}
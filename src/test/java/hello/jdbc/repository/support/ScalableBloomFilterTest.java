@@ -0,0 +1,68 @@
+package hello.jdbc.repository.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScalableBloomFilterTest {
+
+    @Test
+    void noFalseNegative() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+
+        for (int i = 0; i < 1000; i++) {
+            filter.put("member" + i);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(filter.mightContain("member" + i)).isTrue();
+        }
+        assertThat(filter.getStageCount()).isEqualTo(1);
+    }
+
+    @Test
+    void falsePositiveRate() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("member" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+
+        //용량을 넘어도 단계가 늘어나서 목표 오탐률 근처를 유지
+        assertThat(filter.getStageCount()).isGreaterThan(1);
+        assertThat(falsePositives / 100_000.0).isLessThan(0.02);
+        assertThat(filter.getExpectedFpp()).isLessThan(0.02);
+    }
+
+    @Test
+    void concurrentPut() throws InterruptedException {
+        ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    filter.put("t" + thread + "-" + i);
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        for (int t = 0; t < 8; t++) {
+            for (int i = 0; i < 5000; i++) {
+                assertThat(filter.mightContain("t" + t + "-" + i)).isTrue();
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package hello.jdbc.repository.support;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static hello.jdbc.connect.ConnectionConst.*;
+import static hello.jdbc.repository.support.StatementCache.DEFAULT_MAX_STATEMENTS_PER_CONNECTION;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatementCacheTest {
+
+    private static final String MEMBER_ID = "cacheA";
+
+    private HikariDataSource dataSource;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        dataSource.setMaximumPoolSize(1); // 항상 같은 물리 커넥션
+    }
+
+    @AfterEach
+    void afterEach() {
+        new MemberRepositoryV4_2(dataSource).delete(MEMBER_ID);
+        dataSource.close();
+    }
+
+    @Test
+    void reuseStatement() {
+        StatementCache statementCache = new StatementCache();
+        MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource, statementCache);
+
+        repository.save(new Member(MEMBER_ID, 10000));
+        repository.findById(MEMBER_ID);
+        repository.findById(MEMBER_ID); // 커넥션을 풀에 반납했다가 다시 빌려도 Statement 재사용
+        repository.update(MEMBER_ID, 20000);
+
+        assertThat(repository.findById(MEMBER_ID).getMoney()).isEqualTo(20000);
+        assertThat(statementCache.getHitCount()).isEqualTo(2);
+        assertThat(statementCache.getMissCount()).isEqualTo(3);
+        assertThat(statementCache.getCachedConnectionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void reuseStatementInTransaction() {
+        StatementCache statementCache = new StatementCache();
+        MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource, statementCache);
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        repository.save(new Member(MEMBER_ID, 10000));
+
+        //물리 커넥션으로 만든 Statement도 같은 트랜잭션에 참여 -> 롤백된다.
+        txTemplate.executeWithoutResult(status -> {
+            repository.update(MEMBER_ID, 20000);
+            status.setRollbackOnly();
+        });
+
+        assertThat(repository.findById(MEMBER_ID).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() {
+        StatementCache statementCache = new StatementCache(1);
+        MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource, statementCache);
+
+        repository.save(new Member(MEMBER_ID, 10000));
+        repository.findById(MEMBER_ID);
+
+        assertThat(statementCache.getEvictionCount()).isEqualTo(1);
+        assertThat(repository.findById(MEMBER_ID).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void boundCachedConnections() throws SQLException {
+        dataSource.setMaximumPoolSize(3);
+        StatementCache statementCache = new StatementCache(DEFAULT_MAX_STATEMENTS_PER_CONNECTION, 2);
+
+        try (Connection con1 = dataSource.getConnection(); Connection con2 = dataSource.getConnection(); Connection con3 = dataSource.getConnection()) {
+            PreparedStatement first = statementCache.prepare(con1, "select 1");
+            statementCache.release(first);
+            statementCache.release(statementCache.prepare(con2, "select 1"));
+
+            //세 번째 커넥션 -> 가장 오래 안 쓴 con1의 캐시를 닫는다.
+            PreparedStatement third = statementCache.prepare(con3, "select 1");
+            statementCache.release(third);
+
+            assertThat(statementCache.getCachedConnectionCount()).isEqualTo(2);
+            assertThat(statementCache.getConnectionEvictionCount()).isEqualTo(1);
+            assertThat(first.isClosed()).isTrue();
+            assertThat(third.isClosed()).isFalse();
+
+            //버린 커넥션도 계속 사용할 수 있다. (다시 캐시된다.)
+            statementCache.release(statementCache.prepare(con1, "select 1"));
+            assertThat(statementCache.getCachedConnectionCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void invalidateClosedConnection() {
+        StatementCache statementCache = new StatementCache();
+        MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource, statementCache);
+        repository.save(new Member(MEMBER_ID, 10000));
+
+        //풀에서 물리 커넥션 제거 -> 새 커넥션이 들어올 때 닫힌 커넥션의 캐시를 버린다.
+        dataSource.getHikariPoolMXBean().softEvictConnections();
+
+        assertThat(repository.findById(MEMBER_ID).getMoney()).isEqualTo(10000);
+        assertThat(statementCache.getCachedConnectionCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,213 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.repository.ex.MyInsufficientBalanceException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static hello.jdbc.connect.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LedgerEngineTest {
+
+    private static final String MEMBER_A = "ledgerA";
+    private static final String MEMBER_B = "ledgerB";
+    private static final String MEMBER_EX = "ex";
+
+    @TempDir
+    Path journalDirectory;
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV5 repository;
+    private LedgerEngine engine;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        repository = new MemberRepositoryV5(dataSource);
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+        repository.save(new Member(MEMBER_EX, 10000));
+    }
+
+    @AfterEach
+    void afterEach() {
+        if (engine != null) {
+            engine.close();
+        }
+        repository.deleteAll(List.of(MEMBER_A, MEMBER_B, MEMBER_EX));
+        dataSource.close();
+    }
+
+    @Test
+    void accountTransfer() {
+        engine = start(LedgerEngine.DEFAULT_JOURNAL_FILE_SIZE);
+
+        engine.accountTransfer(MEMBER_A, MEMBER_B, 2000);
+
+        assertThat(engine.getBalance(MEMBER_A)).isEqualTo(8000);
+        assertThat(engine.getBalance(MEMBER_B)).isEqualTo(12000);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000); // 아직 저장 전
+
+        engine.persist();
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("MemberServiceV4 기본 모드와 같은 검증 규칙, 순서")
+    void validation() {
+        engine = start(LedgerEngine.DEFAULT_JOURNAL_FILE_SIZE);
+
+        assertThatThrownBy(() -> engine.accountTransfer(MEMBER_A, MEMBER_EX, 2000))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> engine.accountTransfer(MEMBER_A, "ledgerX", 2000))
+                .isInstanceOf(NoSuchElementException.class);
+        assertThatThrownBy(() -> engine.accountTransfer("ledgerX", MEMBER_B, 2000))
+                .isInstanceOf(NoSuchElementException.class);
+        assertThatThrownBy(() -> engine.accountTransfer(MEMBER_A, MEMBER_B, 10001))
+                .isInstanceOf(MyInsufficientBalanceException.class);
+        assertThatThrownBy(() -> engine.accountTransfer("ledgerX", MEMBER_EX, 2000)) // 없는 회원을 먼저 확인
+                .isInstanceOf(NoSuchElementException.class);
+
+        assertThat(engine.getRejectedCount()).isEqualTo(5);
+        assertThat(engine.getBalance(MEMBER_A)).isEqualTo(10000);
+        assertThat(engine.getBalance(MEMBER_B)).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("저장 없이 멈춘 후 재시작 -> 스냅샷(member 테이블) + 저널 재적용")
+    void recoverFromJournal() {
+        engine = start(256); // 작은 저널 파일 -> 여러 파일로 나뉜다.
+        for (int i = 0; i < 10; i++) {
+            engine.accountTransfer(MEMBER_A, MEMBER_B, 100);
+        }
+        engine.persist(); // 체크포인트 10
+        for (int i = 0; i < 20; i++) {
+            engine.accountTransfer(MEMBER_B, MEMBER_A, 10);
+        }
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(9000);
+
+        //close() 없이 새 엔진 -> 크래시 후 재시작
+        LedgerEngine restarted = start(256);
+        assertThat(restarted.getBalance(MEMBER_A)).isEqualTo(9200);
+        assertThat(restarted.getBalance(MEMBER_B)).isEqualTo(10800);
+
+        restarted.close();
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(9200);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(10800);
+        engine = null;
+    }
+
+    @Test
+    void concurrentTransfers() throws Exception {
+        engine = start(4096);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        boolean forward = ThreadLocalRandom.current().nextBoolean();
+                        try {
+                            engine.accountTransfer(forward ? MEMBER_A : MEMBER_B, forward ? MEMBER_B : MEMBER_A, 7);
+                        } catch (MyInsufficientBalanceException e) {
+                            //한쪽으로 몰리면 잔액 부족
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(engine.getTransferCount() + engine.getRejectedCount()).isEqualTo(8000);
+        assertThat(engine.getBatchCount()).isLessThanOrEqualTo(engine.getTransferCount() + engine.getRejectedCount());
+        assertThat(engine.getBalance(MEMBER_A) + engine.getBalance(MEMBER_B)).isEqualTo(20000);
+
+        engine.close();
+        engine = null;
+        assertThat(repository.findById(MEMBER_A).getMoney() + repository.findById(MEMBER_B).getMoney()).isEqualTo(20000);
+    }
+
+    @Test
+    void rejectAfterClose() {
+        LedgerEngine closed = start(LedgerEngine.DEFAULT_JOURNAL_FILE_SIZE);
+        closed.close();
+
+        assertThatThrownBy(() -> closed.accountTransfer(MEMBER_A, MEMBER_B, 10))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @DisplayName("저널 기록 실패 -> 이미 받은 요청, 슬롯을 기다리던 요청 모두 실패로 응답")
+    void journalFailureFailsPendingRequests() throws Exception {
+        //ledgerA -> ledgerB 기록은 저널 파일(40 byte)보다 크다. ex -> ledgerA는 들어간다.
+        LedgerEngine failing = new LedgerEngine(repository, dataSource, journalDirectory, 4, Duration.ofHours(1), 40);
+        failing.afterPropertiesSet();
+        failing.accountTransfer(MEMBER_EX, MEMBER_A, 10);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<CompletableFuture<Void>>>> producers = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                producers.add(executor.submit(() -> {
+                    List<CompletableFuture<Void>> results = new ArrayList<>();
+                    for (int j = 0; j < 100; j++) {
+                        try {
+                            results.add(failing.submit(MEMBER_A, MEMBER_B, 1)); // 링(4칸)이 차면 next()에서 대기
+                        } catch (IllegalStateException e) {
+                            results.add(CompletableFuture.failedFuture(e)); // 중지 후 요청은 바로 거절
+                        }
+                    }
+                    return results;
+                }));
+            }
+            for (Future<List<CompletableFuture<Void>>> producer : producers) {
+                for (CompletableFuture<Void> result : producer.get(10, TimeUnit.SECONDS)) {
+                    assertThatThrownBy(() -> result.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(RuntimeException.class);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        //저장하지 않고 저널은 닫는다.
+        assertThatThrownBy(failing::close).isInstanceOf(IllegalStateException.class);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+    }
+
+    //persistInterval은 길게 -> 테스트가 정한 시점에만 저장
+    private LedgerEngine start(int journalFileSize) {
+        LedgerEngine started = new LedgerEngine(repository, dataSource, journalDirectory, 1024, Duration.ofHours(1), journalFileSize);
+        started.afterPropertiesSet();
+        return started;
+    }
+}
@@ -120,4 +120,35 @@ class MemberServiceV3_3Test {
         assertThat(findMemberA.getMoney()).isEqualTo(10000);
         assertThat(findMemberEx.getMoney()).isEqualTo(10000);
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("정상 이체 - 배치")
+    void accountTransferBatched() throws SQLException {
+        //given
+        repositoryV3.save(new Member(MEMBER_A, 10000));
+        repositoryV3.save(new Member(MEMBER_B, 10000));
+
+        //when
+        memberServiceV3_3.accountTransferBatched(MEMBER_A, MEMBER_B, 2000);
+
+        //then
+        assertThat(repositoryV3.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(repositoryV3.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("이체중 예외 발생 - 배치")
+    void accountTransferBatchedEx() throws SQLException {
+        //given
+        repositoryV3.save(new Member(MEMBER_A, 10000));
+        repositoryV3.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberServiceV3_3.accountTransferBatched(MEMBER_A, MEMBER_EX, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then
+        assertThat(repositoryV3.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(repositoryV3.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+}
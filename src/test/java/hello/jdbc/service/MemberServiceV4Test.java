@@ -5,6 +5,11 @@ import hello.jdbc.repository.MemberRepository;
 import hello.jdbc.repository.MemberRepositoryV4_1;
 import hello.jdbc.repository.MemberRepositoryV4_2;
 import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.repository.TransferProcedureRepository;
+import hello.jdbc.repository.ex.MyInsufficientBalanceException;
+import hello.jdbc.service.support.RetryBudget;
+import hello.jdbc.service.support.RetryExecutor;
+import hello.jdbc.service.support.StripedLockManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.AfterEach;
@@ -17,6 +22,14 @@ import org.springframework.context.annotation.Bean;
 
 import javax.sql.DataSource;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -60,9 +73,14 @@ class MemberServiceV4Test {
             return new MemberRepositoryV5(dataSource);
         }
 
+        @Bean
+        TransferProcedureRepository transferProcedureRepository() {
+            return new TransferProcedureRepository(dataSource);
+        }
+
         @Bean
         MemberServiceV4 memberServiceV4() {
-            return new MemberServiceV4(memberRepository());
+            return new MemberServiceV4(memberRepository(), TransferMode.READ_MODIFY_WRITE, transferProcedureRepository());
         }
 
     }
@@ -115,4 +133,355 @@ class MemberServiceV4Test {
         assertThat(findMemberA.getMoney()).isEqualTo(10000);
         assertThat(findMemberEx.getMoney()).isEqualTo(10000);
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("정상 이체 - DELTA")
+    void accountTransferDelta() {
+        //given
+        Member memberA = new Member(MEMBER_A, 10000);
+        Member memberB = new Member(MEMBER_B, 10000);
+        repository.save(memberA);
+        repository.save(memberB);
+
+        //when
+        memberService.accountTransfer(memberA.getMemberId(), memberB.getMemberId(), 2000, TransferMode.DELTA);
+
+        //then
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("이체중 예외 발생 - DELTA")
+    void accountTransferDeltaEx() {
+        //given
+        Member memberA = new Member(MEMBER_A, 10000);
+        Member memberEx = new Member(MEMBER_EX, 10000);
+        repository.save(memberA);
+        repository.save(memberEx);
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransfer(memberA.getMemberId(), memberEx.getMemberId(), 2000, TransferMode.DELTA))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then: 출금도 롤백
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(repository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("잔액 부족 - DELTA")
+    void accountTransferDeltaInsufficientBalance() {
+        //given
+        Member memberA = new Member(MEMBER_A, 1000);
+        Member memberB = new Member(MEMBER_B, 10000);
+        repository.save(memberA);
+        repository.save(memberB);
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransfer(memberA.getMemberId(), memberB.getMemberId(), 2000, TransferMode.DELTA))
+                .isInstanceOf(MyInsufficientBalanceException.class);
+
+        //then
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(1000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("정상 이체 - BATCHED")
+    void accountTransferBatched() {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000, TransferMode.BATCHED);
+
+        //then
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("이체중 예외 발생 - BATCHED")
+    void accountTransferBatchedEx() {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_EX, 2000, TransferMode.BATCHED))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(repository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("정상 이체 - PROCEDURE")
+    void accountTransferProcedure() {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000, TransferMode.PROCEDURE);
+
+        //then
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("이체중 예외 발생 - PROCEDURE")
+    void accountTransferProcedureEx() {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_EX, 2000, TransferMode.PROCEDURE))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000, TransferMode.PROCEDURE))
+                .isInstanceOf(NoSuchElementException.class);
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_EX, 20000, TransferMode.PROCEDURE))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(repository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("잔액 부족 - PROCEDURE")
+    void accountTransferProcedureInsufficientBalance() {
+        //given
+        repository.save(new Member(MEMBER_A, 1000));
+        repository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000, TransferMode.PROCEDURE))
+                .isInstanceOf(MyInsufficientBalanceException.class);
+
+        //then
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(1000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("정상 이체 - ORDERED_LOCK")
+    void accountTransferOrderedLock() {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+
+        //when (B -> A: 락은 A, B 순서)
+        memberService.accountTransfer(MEMBER_B, MEMBER_A, 2000, TransferMode.ORDERED_LOCK);
+
+        //then
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(12000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(8000);
+    }
+
+    @Test
+    @DisplayName("이체중 예외 발생 - ORDERED_LOCK")
+    void accountTransferOrderedLockEx() {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_EX, 2000, TransferMode.ORDERED_LOCK))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000, TransferMode.ORDERED_LOCK))
+                .isInstanceOf(NoSuchElementException.class);
+
+        //then
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(repository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("반대 방향 동시 이체 - ORDERED_LOCK")
+    void accountTransferOrderedLockConcurrent() throws Exception {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+        RetryExecutor retryExecutor = new RetryExecutor(5, Duration.ofMillis(5), Duration.ofMillis(50), new RetryBudget(0.5, 10));
+
+        //when: A->B, B->A 를 동시에 50번씩
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> aToB = executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    retryExecutor.run(() -> memberService.accountTransfer(MEMBER_A, MEMBER_B, 100, TransferMode.ORDERED_LOCK));
+                }
+            });
+            Future<?> bToA = executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    retryExecutor.run(() -> memberService.accountTransfer(MEMBER_B, MEMBER_A, 100, TransferMode.ORDERED_LOCK));
+                }
+            });
+            aToB.get(30, TimeUnit.SECONDS);
+            bToA.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //then: 데드락 없이 모두 성공, 잃어버린 변경 없음
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("정상 이체 - OPTIMISTIC")
+    void accountTransferOptimistic() {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+
+        //when
+        memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000, TransferMode.OPTIMISTIC);
+
+        //then: 잔액 변경 + 버전 증가
+        assertThat(repository.findById(MEMBER_A)).isEqualTo(new Member(MEMBER_A, 8000, 1));
+        assertThat(repository.findById(MEMBER_B)).isEqualTo(new Member(MEMBER_B, 12000, 1));
+    }
+
+    @Test
+    @DisplayName("이체중 예외 발생 - OPTIMISTIC")
+    void accountTransferOptimisticEx() {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_EX, 2000, TransferMode.OPTIMISTIC))
+                .isInstanceOf(IllegalStateException.class);
+
+        //then: 출금, 버전 증가 모두 롤백
+        assertThat(repository.findById(MEMBER_A)).isEqualTo(new Member(MEMBER_A, 10000, 0));
+        assertThat(repository.findById(MEMBER_EX)).isEqualTo(new Member(MEMBER_EX, 10000, 0));
+    }
+
+    @Test
+    @DisplayName("동시 이체 충돌 재시도 - OPTIMISTIC")
+    void accountTransferOptimisticConcurrent() throws Exception {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+        RetryExecutor retryExecutor = new RetryExecutor(20, Duration.ofMillis(1), Duration.ofMillis(20), RetryBudget.unlimited());
+        RetryingTransferService transferService = new RetryingTransferService(memberService, retryExecutor);
+
+        //when: 4개 스레드가 A->B 로 25번씩
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        transferService.accountTransfer(MEMBER_A, MEMBER_B, 10, TransferMode.OPTIMISTIC);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //then: 충돌한 이체는 재시도 -> 잃어버린 변경 없음, 성공한 이체 수만큼 버전 증가
+        assertThat(repository.findById(MEMBER_A)).isEqualTo(new Member(MEMBER_A, 9000, 100));
+        assertThat(repository.findById(MEMBER_B)).isEqualTo(new Member(MEMBER_B, 11000, 100));
+    }
+
+    @Test
+    @DisplayName("여러 건 이체 - 실패한 이체만 savepoint 롤백")
+    void accountTransferAll() {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+        repository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        List<TransferOutcome> outcomes = memberService.accountTransferAll(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_A, MEMBER_EX, 1000), // 검증 실패 -> 출금까지 롤백
+                new Transfer(MEMBER_B, MEMBER_A, 5000, TransferMode.DELTA),
+                new Transfer(MEMBER_A, "none", 1000, TransferMode.DELTA))); // 없는 회원
+
+        //then
+        assertThat(outcomes).extracting(TransferOutcome::isSuccess).containsExactly(true, false, true, false);
+        assertThat(outcomes.get(1).getFailure()).isInstanceOf(IllegalStateException.class);
+        assertThat(outcomes.get(3).getFailure()).isInstanceOf(NoSuchElementException.class);
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(14000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(6000);
+        assertThat(repository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("netting - 회원 별 순 증감액으로 반영, 실패한 이체는 제외")
+    void accountTransferNetted() {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 0));
+        repository.save(new Member(MEMBER_EX, 10000));
+
+        //when
+        List<TransferOutcome> outcomes = memberService.accountTransferNetted(List.of(
+                new Transfer(MEMBER_B, MEMBER_A, 100), // 잔액 부족 (아직 입금 전)
+                new Transfer(MEMBER_A, MEMBER_B, 3000),
+                new Transfer(MEMBER_B, MEMBER_A, 1000), // 앞의 입금으로 출금 가능
+                new Transfer(MEMBER_A, MEMBER_EX, 1000), // 이체 규칙 위반
+                new Transfer(MEMBER_A, "none", 1000), // 없는 회원
+                new Transfer(MEMBER_A, MEMBER_B, 3000)));
+
+        //then
+        assertThat(outcomes).extracting(TransferOutcome::isSuccess).containsExactly(false, true, true, false, false, true);
+        assertThat(outcomes.get(0).getFailure()).isInstanceOf(MyInsufficientBalanceException.class);
+        assertThat(outcomes.get(3).getFailure()).isInstanceOf(IllegalStateException.class);
+        assertThat(outcomes.get(4).getFailure()).isInstanceOf(NoSuchElementException.class);
+
+        //update는 회원 별 한 번 (version 1 증가)
+        assertThat(repository.findById(MEMBER_A)).isEqualTo(new Member(MEMBER_A, 5000, 1));
+        assertThat(repository.findById(MEMBER_B)).isEqualTo(new Member(MEMBER_B, 5000, 1));
+        assertThat(repository.findById(MEMBER_EX)).isEqualTo(new Member(MEMBER_EX, 10000, 0));
+    }
+
+    @Test
+    @DisplayName("JVM 계좌 락을 먼저 잡고 이체")
+    void accountTransferWithStripedLock() throws Exception {
+        //given
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+        StripedLockManager lockManager = new StripedLockManager(64);
+        LockingTransferService transferService = new LockingTransferService(memberService, lockManager, Duration.ofSeconds(5));
+
+        //when: 4개 스레드가 A<->B 로 25번씩
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                boolean aToB = t % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        transferService.accountTransfer(aToB ? MEMBER_A : MEMBER_B, aToB ? MEMBER_B : MEMBER_A, 100, TransferMode.DELTA);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //then
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+        assertThat(lockManager.getTotalTimeoutCount()).isZero();
+    }
+}
@@ -0,0 +1,254 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static hello.jdbc.connect.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TransferBatcherTest {
+
+    private static final String MEMBER_A = "batcherA";
+    private static final String MEMBER_B = "batcherB";
+    private static final String MEMBER_EX = "ex";
+
+    private HikariDataSource dataSource;
+    private MemberRepositoryV5 repository;
+    private PlatformTransactionManager transactionManager;
+    private MemberServiceV4 memberService;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        repository = new MemberRepositoryV5(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+
+        memberService = transactional(new MemberServiceV4(repository));
+
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.deleteAll(List.of(MEMBER_A, MEMBER_B, MEMBER_EX));
+        dataSource.close();
+    }
+
+    @Test
+    @DisplayName("여러 요청을 한 트랜잭션으로 커밋")
+    void groupCommit() throws Exception {
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+
+        try (TransferBatcher batcher = new TransferBatcher(memberService, transactionManager, 50, Duration.ofMillis(50), 1000)) {
+            for (int i = 0; i < 100; i++) {
+                results.add(batcher.submit(MEMBER_A, MEMBER_B, 10));
+            }
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+            assertThat(batcher.getTransferCount()).isEqualTo(100);
+            assertThat(batcher.getBatchCount()).isLessThan(100);
+            assertThat(batcher.getFallbackCount()).isZero();
+        }
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(9000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(11000);
+    }
+
+    @Test
+    @DisplayName("실패한 이체만 롤백, 나머지는 같은 배치에서 커밋")
+    void failureIsolatedBySavepoint() throws Exception {
+        repository.save(new Member(MEMBER_EX, 10000));
+
+        try (TransferBatcher batcher = new TransferBatcher(memberService, transactionManager, 3, Duration.ofSeconds(1), 10)) {
+            CompletableFuture<Void> first = batcher.submit(MEMBER_A, MEMBER_B, 1000);
+            CompletableFuture<Void> failed = batcher.submit(MEMBER_A, MEMBER_EX, 1000);
+            CompletableFuture<Void> third = batcher.submit(MEMBER_B, MEMBER_A, 500);
+
+            first.get(10, TimeUnit.SECONDS);
+            third.get(10, TimeUnit.SECONDS);
+            assertThatThrownBy(() -> failed.get(10, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(IllegalStateException.class);
+            assertThat(batcher.getBatchCount()).isEqualTo(1);
+        }
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(9500);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(10500);
+        assertThat(repository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("netting 배치")
+    void netting() throws Exception {
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+
+        try (TransferBatcher batcher = new TransferBatcher(memberService, transactionManager, 100, Duration.ofMillis(50), 1000, true)) {
+            for (int i = 0; i < 100; i++) {
+                results.add(i % 2 == 0 ? batcher.submit(MEMBER_A, MEMBER_B, 30) : batcher.submit(MEMBER_B, MEMBER_A, 10));
+            }
+            results.add(batcher.submit(MEMBER_A, MEMBER_EX, 10)); // 없는 회원
+
+            for (int i = 0; i < 100; i++) {
+                results.get(i).get(10, TimeUnit.SECONDS);
+            }
+            assertThatThrownBy(() -> results.get(100).get(10, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(NoSuchElementException.class);
+            assertThat(batcher.getFallbackCount()).isZero();
+        }
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(9000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(11000);
+    }
+
+    @Test
+    @DisplayName("netting 배치가 롤백되면 한 건씩 netting으로 다시 실행")
+    void nettingFallback() throws Exception {
+        List<Integer> nettedSizes = new CopyOnWriteArrayList<>();
+        MemberServiceV4 failingBatch = transactional(new MemberServiceV4(repository) {
+            @Override
+            public List<TransferOutcome> accountTransferNetted(List<Transfer> transfers) {
+                nettedSizes.add(transfers.size());
+                if (transfers.size() > 1) {
+                    throw new OptimisticLockingFailureException("batch conflict");
+                }
+                return super.accountTransferNetted(transfers);
+            }
+        });
+
+        try (TransferBatcher batcher = new TransferBatcher(failingBatch, transactionManager, 3, Duration.ofSeconds(1), 10, true)) {
+            CompletableFuture<Void> first = batcher.submit(MEMBER_A, MEMBER_B, 1000);
+            CompletableFuture<Void> second = batcher.submit(MEMBER_B, MEMBER_A, 500);
+            CompletableFuture<Void> missing = batcher.submit(MEMBER_A, MEMBER_EX, 10);
+
+            first.get(10, TimeUnit.SECONDS);
+            second.get(10, TimeUnit.SECONDS);
+            assertThatThrownBy(() -> missing.get(10, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(NoSuchElementException.class);
+            assertThat(batcher.getFallbackCount()).isEqualTo(1);
+        }
+
+        assertThat(nettedSizes).containsExactly(3, 1, 1, 1);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(9500);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(10500);
+    }
+
+    @Test
+    @DisplayName("커밋 중 실패 -> 다시 실행하지 않고 배치 전체 실패")
+    void commitFailureIsNotRetried() {
+        //커밋은 됐지만 응답을 받지 못한 상황
+        PlatformTransactionManager lostAck = new DataSourceTransactionManager(dataSource) {
+            @Override
+            protected void doCommit(DefaultTransactionStatus status) {
+                super.doCommit(status);
+                throw new TransactionSystemException("commit ack lost");
+            }
+        };
+
+        try (TransferBatcher batcher = new TransferBatcher(memberService, lostAck, 2, Duration.ofSeconds(1), 10)) {
+            CompletableFuture<Void> first = batcher.submit(MEMBER_A, MEMBER_B, 1000);
+            CompletableFuture<Void> second = batcher.submit(MEMBER_A, MEMBER_B, 1000);
+
+            assertThatThrownBy(() -> first.get(10, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(TransactionSystemException.class);
+            assertThatThrownBy(() -> second.get(10, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(TransactionSystemException.class);
+            assertThat(batcher.getFallbackCount()).isZero();
+        }
+
+        //한 번만 반영
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("요청 도중 close() -> 모든 future가 완료된다.")
+    void closeWhileSubmitting() throws Exception {
+        TransferBatcher batcher = new TransferBatcher(memberService, transactionManager, 10, Duration.ZERO, 2); // 작은 큐 -> submit()이 기다린다.
+        List<CompletableFuture<Void>> results = new CopyOnWriteArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> producers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                producers.add(executor.submit(() -> {
+                    for (int j = 0; j < 2000; j++) {
+                        try {
+                            results.add(batcher.submit(MEMBER_A, MEMBER_B, 1));
+                        } catch (IllegalStateException e) {
+                            return; // 종료 후 요청 거부
+                        }
+                    }
+                }));
+            }
+            Thread.sleep(100);
+            batcher.close();
+            for (Future<?> producer : producers) {
+                producer.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        int completed = 0;
+        for (CompletableFuture<Void> result : results) {
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                completed++;
+            } catch (ExecutionException e) {
+                assertThat(e).hasCauseInstanceOf(IllegalStateException.class);
+            }
+        }
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000 - completed);
+    }
+
+    @Test
+    @DisplayName("종료 후 요청 거부")
+    void rejectAfterClose() {
+        TransferBatcher batcher = new TransferBatcher(memberService, transactionManager, 10, Duration.ZERO, 10);
+        batcher.close();
+
+        assertThatThrownBy(() -> batcher.submit(MEMBER_A, MEMBER_B, 10))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    //@Transactional 프록시 -> 배치 트랜잭션에 참여
+    private MemberServiceV4 transactional(MemberServiceV4 target) {
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        TransactionInterceptor transactionInterceptor = new TransactionInterceptor();
+        transactionInterceptor.setTransactionManager(transactionManager);
+        transactionInterceptor.setTransactionAttributeSource(new AnnotationTransactionAttributeSource());
+        proxyFactory.addAdvice(transactionInterceptor);
+        return (MemberServiceV4) proxyFactory.getProxy();
+    }
+}
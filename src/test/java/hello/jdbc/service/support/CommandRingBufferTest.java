@@ -0,0 +1,84 @@
+package hello.jdbc.service.support;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CommandRingBufferTest {
+
+    @Test
+    void publishAndConsume() {
+        CommandRingBuffer<AtomicLong> ring = new CommandRingBuffer<>(4, AtomicLong::new);
+
+        for (int i = 0; i < 3; i++) {
+            long seq = ring.next();
+            ring.get(seq).set(i * 10);
+            ring.publish(seq);
+        }
+
+        assertThat(ring.availableUpTo(0)).isEqualTo(2);
+        assertThat(ring.get(1).get()).isEqualTo(10);
+        ring.release(2);
+        assertThat(ring.availableUpTo(3)).isEqualTo(2); // 공개된 것 없음
+        assertThat(ring.getBacklog()).isZero();
+    }
+
+    @Test
+    @DisplayName("앞 슬롯이 공개되기 전에는 뒤 슬롯도 소비하지 않는다")
+    void stopAtGap() {
+        CommandRingBuffer<AtomicLong> ring = new CommandRingBuffer<>(4, AtomicLong::new);
+        long first = ring.next();
+        long second = ring.next();
+
+        ring.publish(second);
+        assertThat(ring.availableUpTo(0)).isEqualTo(-1);
+
+        ring.publish(first);
+        assertThat(ring.availableUpTo(0)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("여러 생산자, 작은 버퍼 -> 유실, 중복 없음")
+    void multipleProducers() throws InterruptedException {
+        CommandRingBuffer<AtomicLong> ring = new CommandRingBuffer<>(8, AtomicLong::new);
+        int producers = 4;
+        int perProducer = 10_000;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    long seq = ring.next(); // 가득 차면 대기
+                    ring.get(seq).set(1);
+                    ring.publish(seq);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        long consumed = 0;
+        long next = 0;
+        while (consumed < (long) producers * perProducer) {
+            long available = ring.availableUpTo(next);
+            for (long seq = next; seq <= available; seq++) {
+                consumed += ring.get(seq).getAndSet(0);
+            }
+            if (available >= next) {
+                ring.release(available);
+                next = available + 1;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(consumed).isEqualTo((long) producers * perProducer);
+        assertThat(next).isEqualTo((long) producers * perProducer);
+    }
+}
@@ -0,0 +1,96 @@
+package hello.jdbc.service.support;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryExecutorTest {
+
+    private final List<Long> sleeps = new ArrayList<>();
+
+    @Test
+    void retryTransientFailure() {
+        RetryExecutor executor = executor(5, RetryBudget.unlimited());
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = executor.call(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new CannotAcquireLockException("lock timeout");
+            }
+            return "ok";
+        });
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(executor.getRetryCount()).isEqualTo(2);
+        assertThat(sleeps).hasSize(2);
+    }
+
+    @Test
+    void notRetryNonTransient() {
+        RetryExecutor executor = executor(5, RetryBudget.unlimited());
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> executor.run(() -> {
+            attempts.incrementAndGet();
+            throw new DuplicateKeyException("dup");
+        })).isInstanceOf(DuplicateKeyException.class);
+
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    void giveUpAfterMaxAttempts() {
+        RetryExecutor executor = executor(3, RetryBudget.unlimited());
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> executor.run(() -> {
+            attempts.incrementAndGet();
+            throw new CannotAcquireLockException("lock timeout");
+        })).isInstanceOf(CannotAcquireLockException.class);
+
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(executor.getGaveUpCount()).isEqualTo(1);
+    }
+
+    @Test
+    void retryBudget() {
+        //예산 1번 + 요청마다 0 적립 -> 두 번째 요청부터 재시도 없음
+        RetryExecutor executor = executor(5, new RetryBudget(0, 1));
+        AtomicInteger attempts = new AtomicInteger();
+        Runnable alwaysFail = () -> {
+            attempts.incrementAndGet();
+            throw new CannotAcquireLockException("lock timeout");
+        };
+
+        assertThatThrownBy(() -> executor.run(alwaysFail)).isInstanceOf(CannotAcquireLockException.class);
+        assertThat(attempts.get()).isEqualTo(2);
+
+        assertThatThrownBy(() -> executor.run(alwaysFail)).isInstanceOf(CannotAcquireLockException.class);
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(executor.getBudgetExhaustedCount()).isEqualTo(2);
+    }
+
+    @Test
+    void jitteredExponentialBackoff() {
+        RetryExecutor executor = executor(10, RetryBudget.unlimited());
+
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            long ceiling = Math.min(Duration.ofMillis(100).toNanos(), Duration.ofMillis(10).toNanos() << (attempt - 1));
+            assertThat(executor.backoff(attempt)).isBetween(0L, ceiling);
+        }
+    }
+
+    private RetryExecutor executor(int maxAttempts, RetryBudget budget) {
+        return new RetryExecutor(maxAttempts, Duration.ofMillis(10), Duration.ofMillis(100), budget,
+                e -> e instanceof CannotAcquireLockException, sleeps::add);
+    }
+}
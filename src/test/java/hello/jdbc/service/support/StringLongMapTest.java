@@ -0,0 +1,61 @@
+package hello.jdbc.service.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StringLongMapTest {
+
+    @Test
+    void addTo() {
+        StringLongMap map = new StringLongMap();
+
+        assertThat(map.get("memberA")).isZero();
+        assertThat(map.containsKey("memberA")).isFalse();
+
+        assertThat(map.addTo("memberA", 1000)).isEqualTo(1000);
+        assertThat(map.addTo("memberA", -300)).isEqualTo(700);
+        map.put("memberB", 5);
+
+        assertThat(map.get("memberA")).isEqualTo(700);
+        assertThat(map.get("memberB")).isEqualTo(5);
+        assertThat(map.containsKey("memberA")).isTrue();
+        assertThat(map.size()).isEqualTo(2);
+    }
+
+    @Test
+    void resize() {
+        StringLongMap map = new StringLongMap(2);
+        Map<String, Long> expected = new HashMap<>();
+
+        //같은 키에 여러 번 더하기 + 크기 증가
+        for (int i = 0; i < 10_000; i++) {
+            String key = "m" + (i % 3000);
+            map.addTo(key, i);
+            expected.merge(key, (long) i, Long::sum);
+        }
+
+        assertThat(map.size()).isEqualTo(3000);
+        Map<String, Long> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    void sortedKeysAndClear() {
+        StringLongMap map = new StringLongMap();
+        map.addTo("memberC", 1);
+        map.addTo("memberA", 1);
+        map.addTo("memberB", 1);
+
+        assertThat(map.sortedKeys()).containsExactly("memberA", "memberB", "memberC");
+
+        map.clear();
+        assertThat(map.isEmpty()).isTrue();
+        assertThat(map.get("memberA")).isZero();
+        assertThat(map.sortedKeys()).isEmpty();
+    }
+}
@@ -0,0 +1,157 @@
+package hello.jdbc.service.support;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StripedLockManagerTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Test
+    @DisplayName("차가운 계좌 빠른 경로도 락을 잡는다.")
+    void coldAccountFastPath() throws Exception {
+        StripedLockManager lockManager = new StripedLockManager(16);
+
+        try (StripedLockManager.Lock lock = lockManager.lock(List.of("memberA", "memberB"), TIMEOUT)) {
+            assertThat(lock.isUncontended()).isTrue();
+
+            //같은 스레드 -> 재진입
+            try (StripedLockManager.Lock second = lockManager.lock(List.of("memberA"), TIMEOUT)) {
+                assertThat(second.isUncontended()).isTrue();
+            }
+
+            //다른 스레드는 잡지 못한다.
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<?> other = executor.submit(() -> lockManager.lock(List.of("memberA"), Duration.ofMillis(50)).close());
+                assertThatThrownBy(other::get).hasCauseInstanceOf(CannotAcquireLockException.class);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        assertThat(lockManager.getUncontendedCount(lockManager.stripeOf("memberA"))).isEqualTo(2);
+    }
+
+    @Test
+    void mutualExclusionOnHotAccount() throws Exception {
+        StripedLockManager lockManager = new StripedLockManager(16);
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger maxInside = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        //반대 방향 순서로 요청해도 stripe 순서로 잡는다. -> 데드락 없음
+                        List<String> memberIds = thread % 2 == 0 ? List.of("hot", "member" + i) : List.of("member" + i, "hot");
+                        StripedLockManager.Lock lock = lockManager.lock(memberIds, TIMEOUT);
+                        try {
+                            maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                            Thread.onSpinWait();
+                            inside.decrementAndGet();
+                        } finally {
+                            lock.close();
+                        }
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //빠른 경로, 기다린 경로 모두 동시에 들어가지 않는다.
+        assertThat(maxInside.get()).isEqualTo(1);
+        int hot = lockManager.stripeOf("hot");
+        assertThat(lockManager.getAcquiredCount(hot)).isEqualTo(1600);
+        assertThat(lockManager.getUncontendedCount(hot) + lockManager.getContendedCount(hot)).isEqualTo(1600);
+    }
+
+    @Test
+    @DisplayName("줄 서 있는 스레드를 새치기하지 않는다. (공정 락)")
+    void noBarging() throws Exception {
+        StripedLockManager lockManager = new StripedLockManager(16);
+        int stripe = lockManager.stripeOf("memberA");
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch waiterAcquired = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> holdLock(lockManager, holding, release));
+        Thread waiter = new Thread(() -> holdLock(lockManager, waiterAcquired, done));
+        holder.start();
+        holding.await(5, TimeUnit.SECONDS);
+        waiter.start();
+        while (lockManager.getQueueLength(stripe) == 0) {
+            Thread.onSpinWait();
+        }
+
+        //holder가 풀자마자 요청 -> 먼저 기다린 waiter 차례
+        release.countDown();
+        assertThatThrownBy(() -> lockManager.lock(List.of("memberA"), Duration.ofMillis(50)))
+                .isInstanceOf(CannotAcquireLockException.class);
+        assertThat(waiterAcquired.await(5, TimeUnit.SECONDS)).isTrue();
+
+        done.countDown();
+        holder.join();
+        waiter.join();
+    }
+
+    @Test
+    void lockTimeout() throws Exception {
+        StripedLockManager lockManager = new StripedLockManager(16);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> holdLock(lockManager, holding, done));
+        holder.start();
+        holding.await(5, TimeUnit.SECONDS);
+
+        assertThatThrownBy(() -> lockManager.lock(List.of("memberB", "memberA"), Duration.ofMillis(50)))
+                .isInstanceOf(CannotAcquireLockException.class);
+
+        int stripe = lockManager.stripeOf("memberA");
+        assertThat(lockManager.getTimeoutCount(stripe)).isEqualTo(1);
+        assertThat(lockManager.getContendedCount(stripe)).isEqualTo(1);
+        assertThat(lockManager.getWaitNanos(stripe)).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(40)); // 빠른 경로 시도 후부터 측정
+
+        done.countDown();
+        holder.join();
+
+        //타임아웃 때 잡았던 memberB stripe도 풀려 있다.
+        try (StripedLockManager.Lock lock = lockManager.lock(List.of("memberB"), TIMEOUT)) {
+            assertThat(lock.isUncontended()).isTrue();
+        }
+    }
+
+    //memberA 락을 잡고 acquired 알림 -> release 까지 잡고 있는다.
+    private static void holdLock(StripedLockManager lockManager, CountDownLatch acquired, CountDownLatch release) {
+        StripedLockManager.Lock lock = lockManager.lock(List.of("memberA"), TIMEOUT);
+        try {
+            acquired.countDown();
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.close();
+        }
+    }
+}